@@ -1,10 +1,11 @@
 package ca.on.oicr.gsi.vidarr.cardea;
 
-import ca.on.oicr.gsi.cache.KeyValueCache;
-import ca.on.oicr.gsi.cache.SimpleRecord;
 import ca.on.oicr.gsi.vidarr.BasicType;
+import ca.on.oicr.gsi.vidarr.HttpBulkhead;
+import ca.on.oicr.gsi.vidarr.HttpBulkheadSettings;
 import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
 import ca.on.oicr.gsi.vidarr.PriorityInput;
+import ca.on.oicr.gsi.vidarr.RefreshingCache;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -19,20 +20,25 @@ import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
-import java.util.function.Supplier;
+import java.util.concurrent.CompletableFuture;
 
 public class CardeaCasePriorityInput implements PriorityInput {
 
+  private static final HttpBulkhead BULKHEAD =
+      HttpBulkhead.create("cardea", 10, 5, Duration.ofMinutes(1));
   private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
   private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new Jdk8Module());
+  private HttpBulkheadSettings bulkhead;
   private int defaultPriority;
+  private int maxCacheSize = 10_000;
   private int ttl = 60;
   private String baseUrl, casesUrl;
-  private KeyValueCache<String, Optional<Integer>> values;
+  private RefreshingCache<String, Optional<Integer>> values;
 
   static final Counter CARDEA_CASE_ID_UNKNOWN =
       Counter.build(
@@ -43,13 +49,51 @@ public class CardeaCasePriorityInput implements PriorityInput {
 
   @Override
   public int compute(String workflowName, String workflowVersion, Instant created, JsonNode input) {
-    return values.get(input.asText()).orElse(defaultPriority);
+    return values.get(input.asText()).flatMap(value -> value).orElse(defaultPriority);
+  }
+
+  private CompletableFuture<Optional<Integer>> fetch(String caseId) {
+    if (null == caseId || caseId.isBlank()) {
+      return CompletableFuture.completedFuture(Optional.of(defaultPriority));
+    }
+    String fullUrl = new StringBuilder(casesUrl)
+        .append(URLEncoder.encode(caseId, StandardCharsets.UTF_8)
+            .replace("+", "%20"))
+        .append("/priority").toString();
+    return BULKHEAD
+        .send(
+            HTTP_CLIENT,
+            HttpRequest.newBuilder(
+                    URI.create(fullUrl))
+                .header("Content-type", "application/json")
+                .GET()
+                .build(),
+            new JsonBodyHandler<>(MAPPER, new TypeReference<Optional<Integer>>() {
+            }))
+        .thenApply(
+            response -> {
+              if (response.statusCode() == 404) {
+                System.err.printf("%s: caseId=\"%s\" not found at %s\n", Level.WARNING, caseId,
+                    baseUrl);
+                CARDEA_CASE_ID_UNKNOWN.labels(baseUrl).inc();
+                return Optional.of(defaultPriority);
+              }
+              return response.body().get();
+            });
+  }
+
+  public HttpBulkheadSettings getBulkhead() {
+    return bulkhead;
   }
 
   public int getDefaultPriority() {
     return defaultPriority;
   }
 
+  public int getMaxCacheSize() {
+    return maxCacheSize;
+  }
+
   public int getTtl() {
     return ttl;
   }
@@ -68,15 +112,30 @@ public class CardeaCasePriorityInput implements PriorityInput {
     return BasicType.STRING;
   }
 
+  @Override
+  public CompletableFuture<?> prefetch(List<JsonNode> inputs) {
+    // Cardea has no bulk endpoint, so this starts a request for each case; the bulkhead limits how
+    // many are sent at once
+    return values.prefetch(inputs.stream().map(JsonNode::asText).toList());
+  }
+
   private void reset(HttpServerExchange exchange) {
     exchange.setStatusCode(StatusCodes.NO_CONTENT);
     values.invalidateAll();
   }
 
+  public void setBulkhead(HttpBulkheadSettings bulkhead) {
+    this.bulkhead = bulkhead;
+  }
+
   public void setDefaultPriority(int defaultPriority) {
     this.defaultPriority = defaultPriority;
   }
 
+  public void setMaxCacheSize(int maxCacheSize) {
+    this.maxCacheSize = maxCacheSize;
+  }
+
   public void setTtl(int ttl) {
     this.ttl = ttl;
   }
@@ -88,34 +147,13 @@ public class CardeaCasePriorityInput implements PriorityInput {
 
   @Override
   public void startup(String resourceName, String inputName) {
+    BULKHEAD.configure(baseUrl, bulkhead);
     values =
-        new KeyValueCache<>(resourceName + " " + inputName, ttl, SimpleRecord::new) {
-          @Override
-          protected Optional<Integer> fetch(String caseId, Instant lastUpdated) throws Exception {
-            if (null == caseId || caseId.isBlank()) {
-              return Optional.of(defaultPriority);
-            }
-            String fullUrl = new StringBuilder(casesUrl)
-                .append(URLEncoder.encode(caseId, StandardCharsets.UTF_8)
-                    .replace("+", "%20"))
-                .append("/priority").toString();
-            HttpResponse<Supplier<Optional<Integer>>> response = HTTP_CLIENT
-                .send(
-                    HttpRequest.newBuilder(
-                            URI.create(fullUrl))
-                        .header("Content-type", "application/json")
-                        .GET()
-                        .build(),
-                    new JsonBodyHandler<>(MAPPER, new TypeReference<>() {
-                    }));
-            if (response.statusCode() == 404) {
-              System.err.printf("%s: caseId=\"%s\" not found at %s\n", Level.WARNING, caseId,
-                  baseUrl);
-              CARDEA_CASE_ID_UNKNOWN.labels(baseUrl).inc();
-              return Optional.of(defaultPriority);
-            }
-            return response.body().get();
-          }
-        };
+        new RefreshingCache<>(
+            resourceName + " " + inputName,
+            Duration.ofMinutes(ttl),
+            maxCacheSize,
+            this::fetch,
+            null);
   }
 }
\ No newline at end of file
@@ -5,7 +5,6 @@ import io.undertow.server.HttpHandler;
 import java.time.Instant;
 import java.util.Optional;
 import java.util.OptionalInt;
-import java.util.SortedSet;
 
 public abstract class BaseInFlightCollectingPriorityScorer implements PriorityScorer {
 
@@ -47,23 +46,21 @@ public abstract class BaseInFlightCollectingPriorityScorer implements PrioritySc
     if (score == Integer.MAX_VALUE) {
       score--;
     }
-    SortedSet<WorkflowRunScore> active = get(workflowName, workflowVersion);
+    final ScoreIndex<WorkflowRunScore> active = get(workflowName, workflowVersion);
     final int limit = getLimit(workflowName, workflowVersion, maxInFlight, workflowMaxInFlight);
     synchronized (active) {
       final int finalScore = score;
       preprocessActive(limit);
       final boolean runningRoom =
-          active.stream().filter(e -> e.currentPriority() > finalScore).count() < limit;
-      final Optional<WorkflowRunScore> existing = active.stream()
-          .filter(e -> e.vidarrId().equals(vidarrId)).findFirst();
+          active.countPrefix(e -> e.currentPriority() > finalScore) < limit;
+      final Optional<WorkflowRunScore> existing = active.get(vidarrId);
       if (existing.isPresent()) {
         final int existingPriority = existing.get().currentPriority();
         if (existingPriority == Integer.MAX_VALUE) {
           return true;
         } else if (existingPriority == score) {
           if (runningRoom) {
-            active.remove(existing.get());
-            active.add(
+            active.put(
                 new WorkflowRunScore(workflowName, workflowVersion, vidarrId, Integer.MAX_VALUE,
                     score));
             postprocessActive();
@@ -72,18 +69,15 @@ public abstract class BaseInFlightCollectingPriorityScorer implements PrioritySc
             postprocessActive();
             return false;
           }
-        } else {
-          active.remove(existing.get());
         }
       }
       final WorkflowRunScore wfrScore = new WorkflowRunScore(workflowName, workflowVersion,
           vidarrId, score, score);
-      active.add(wfrScore);
+      active.put(wfrScore);
       // Checking that an existing record was present ensures that we don't allow first-come low
       // currentPriority jobs to take all the tokens
       if (existing.isPresent() && runningRoom) {
-        active.remove(wfrScore);
-        active.add(new WorkflowRunScore(workflowName, workflowVersion, vidarrId, Integer.MAX_VALUE,
+        active.put(new WorkflowRunScore(workflowName, workflowVersion, vidarrId, Integer.MAX_VALUE,
             score));
         postprocessActive();
         return true;
@@ -94,7 +88,7 @@ public abstract class BaseInFlightCollectingPriorityScorer implements PrioritySc
     }
   }
 
-  protected abstract SortedSet<WorkflowRunScore> get(String workflowName, String workflowVersion);
+  protected abstract ScoreIndex<WorkflowRunScore> get(String workflowName, String workflowVersion);
 
   protected abstract int getLimit(
       String workflowName,
@@ -117,32 +111,29 @@ public abstract class BaseInFlightCollectingPriorityScorer implements PrioritySc
 
   @Override
   public final void recover(String workflowName, String workflowVersion, String vidarrId) {
-    final SortedSet<WorkflowRunScore> active = get(workflowName, workflowVersion);
+    final ScoreIndex<WorkflowRunScore> active = get(workflowName, workflowVersion);
     synchronized (active) {
-      active.removeIf(a -> a.vidarrId().equals(vidarrId));
-      active.add(new WorkflowRunScore(workflowName, workflowVersion, vidarrId, Integer.MAX_VALUE,
+      active.put(new WorkflowRunScore(workflowName, workflowVersion, vidarrId, Integer.MAX_VALUE,
           Integer.MAX_VALUE));
     }
   }
 
   @Override
   public final void complete(String workflowName, String workflowVersion, String vidarrId) {
-    final SortedSet<WorkflowRunScore> active = get(workflowName, workflowVersion);
+    final ScoreIndex<WorkflowRunScore> active = get(workflowName, workflowVersion);
     synchronized (active) {
-      active.removeIf(a -> a.vidarrId().equals(vidarrId));
+      active.remove(vidarrId);
     }
   }
 
   @Override
   public final void putItBack(String workflowName, String workflowVersion, String vidarrId) {
-    final SortedSet<WorkflowRunScore> active = get(workflowName, workflowVersion);
+    final ScoreIndex<WorkflowRunScore> active = get(workflowName, workflowVersion);
     synchronized (active) {
-      Optional<WorkflowRunScore> wfrScoreMaybe = active.stream()
-          .filter(a -> a.vidarrId().equals(vidarrId)).findFirst();
+      Optional<WorkflowRunScore> wfrScoreMaybe = active.get(vidarrId);
       if (wfrScoreMaybe.isPresent()) {
         WorkflowRunScore wfrScore = wfrScoreMaybe.get();
-        active.remove(wfrScore);
-        active.add(new WorkflowRunScore(workflowName, workflowVersion, vidarrId,
+        active.put(new WorkflowRunScore(workflowName, workflowVersion, vidarrId,
             wfrScore.originalPriority(),
             wfrScore.originalPriority()));
       } // else do nothing - but this shouldn't happen
@@ -49,17 +49,80 @@ public abstract class BaseProcessor<
     return new TerminalOperationControlFlow<>(operation, handler);
   }
 
+  /**
+   * Called after a file has been moved to a new location and its path updated
+   *
+   * <p>Implementations that cache file metadata should discard it.
+   */
+  protected void filesReprovisioned() {}
+
   @Override
   public abstract void inTransaction(Consumer<TX> transaction);
 
+  /**
+   * Performs an operation in a transaction on behalf of a single operation
+   *
+   * <p>Implementations may allow transactions for operations belonging to different workflow runs
+   * to proceed concurrently; by default, this is the same as {@link #inTransaction(Consumer)}.
+   *
+   * @param operation the operation that the transaction modifies
+   * @param transaction a callback to perform in a transaction
+   */
+  public void inTransaction(PO operation, Consumer<TX> transaction) {
+    inTransaction(transaction);
+  }
+
+  /**
+   * Performs an operation in a transaction on behalf of a single workflow run
+   *
+   * <p>Implementations may allow transactions for different workflow runs to proceed
+   * concurrently; by default, this is the same as {@link #inTransaction(Consumer)}.
+   *
+   * @param workflow the workflow run that the transaction modifies
+   * @param transaction a callback to perform in a transaction
+   */
+  public void inTransaction(W workflow, Consumer<TX> transaction) {
+    inTransaction(transaction);
+  }
+
+  /**
+   * Create a transaction manager for plugins that will perform all transactions on behalf of a
+   * single operation
+   *
+   * @param operation the operation that will be modified
+   */
+  final TransactionManager<TX> transactionManager(PO operation) {
+    return new TransactionManager<>() {
+      @Override
+      public void inTransaction(Consumer<TX> transaction) {
+        BaseProcessor.this.inTransaction(operation, transaction);
+      }
+
+      @Override
+      public void scheduleTask(Runnable task) {
+        BaseProcessor.this.scheduleTask(task);
+      }
+
+      @Override
+      public void scheduleTask(long delay, TimeUnit units, Runnable task) {
+        BaseProcessor.this.scheduleTask(delay, units, task);
+      }
+    };
+  }
+
+  /**
+   * Run a task that may block on the database, network, or other processes
+   *
+   * <p>Plugin callbacks and transactions may block, so they are run in the blocking lane.
+   */
   @Override
   public final void scheduleTask(Runnable task) {
-    executor.execute(task);
+    lanes.blocking().execute(task);
   }
 
   @Override
   public final void scheduleTask(long delay, TimeUnit units, Runnable task) {
-    executor.schedule(task, delay, units);
+    lanes.schedule(lanes.blocking(), task, delay, units);
   }
 
   private interface PhaseManager<W, R, N, PO> {
@@ -108,6 +171,7 @@ public abstract class BaseProcessor<
       }
       finished = true;
       inTransaction(
+          operation,
           transaction -> {
             operation.status(OperationStatus.FAILED, transaction);
             operation.error(error, transaction);
@@ -123,6 +187,7 @@ public abstract class BaseProcessor<
       }
       finished = true;
       inTransaction(
+          operation,
           transaction -> {
             operation.status(OperationStatus.SUCCEEDED, transaction);
             operation.recoveryState(handler.serialize(output), transaction);
@@ -223,6 +288,7 @@ public abstract class BaseProcessor<
 
     public void release(Boolean result) {
       inTransaction(
+          activeWorkflow,
           transaction -> {
             if (!result) {
               ok = false;
@@ -359,6 +425,7 @@ public abstract class BaseProcessor<
         public void failed() {
           if (size.decrementAndGet() == 0) {
             inTransaction(
+                activeWorkflow,
                 transaction ->
                     activeWorkflow.phase(Phase.FAILED, Collections.emptyList(), transaction));
           }
@@ -373,6 +440,7 @@ public abstract class BaseProcessor<
         public void succeeded(JsonMutation result) {
           semaphore.acquireUninterruptibly();
           inTransaction(
+              activeWorkflow,
               transaction -> {
                 final List<ObjectNode> inputs = activeWorkflow.realInputs();
                 for (final ObjectNode input : inputs) {
@@ -442,6 +510,7 @@ public abstract class BaseProcessor<
         public void failed() {
           final List<ObjectNode> realInputs = activeWorkflow.realInputs();
           inTransaction(
+              activeWorkflow,
               tx -> {
                 final int index = activeWorkflow.realInputTryNext(tx);
                 if (index < realInputs.size()) {
@@ -480,6 +549,7 @@ public abstract class BaseProcessor<
         public void succeeded(Result<JsonNode> result) {
           if (result.output() == null) {
             inTransaction(
+                activeWorkflow,
                 transaction -> {
                   operation.status(OperationStatus.FAILED, transaction);
                   operation.recoveryState(
@@ -488,6 +558,7 @@ public abstract class BaseProcessor<
             return;
           }
           inTransaction(
+              activeWorkflow,
               transaction -> {
                 result.cleanupState().ifPresent(c -> workflow().cleanup(c, transaction));
                 workflow().runUrl(result.workflowRunUrl(), transaction);
@@ -613,6 +684,7 @@ public abstract class BaseProcessor<
         @Override
         public void succeeded(ProvisionData result) {
           inTransaction(
+              activeWorkflow,
               transaction -> {
                 result
                     .result()
@@ -701,7 +773,7 @@ public abstract class BaseProcessor<
 
         @Override
         public void succeeded(Void result) {
-          inTransaction(activeWorkflow::succeeded);
+          inTransaction(activeWorkflow, activeWorkflow::succeeded);
         }
       };
     }
@@ -788,6 +860,7 @@ public abstract class BaseProcessor<
         @Override
         public void succeeded(ProvisionData result) {
           inTransaction(
+              activeWorkflow,
               transaction -> {
                 result
                     .result()
@@ -813,6 +886,7 @@ public abstract class BaseProcessor<
                   activeWorkflow.succeeded(originalCompleted, transaction);
                 }
               });
+          filesReprovisioned();
         }
       };
     }
@@ -928,14 +1002,18 @@ public abstract class BaseProcessor<
             .flatMap(Function.identity()));
   }
 
-  private final ScheduledExecutorService executor;
+  private final ExecutionLanes lanes;
+
+  protected BaseProcessor(ExecutionLanes lanes) {
+    this.lanes = lanes;
+  }
 
   protected BaseProcessor(ScheduledExecutorService executor) {
-    this.executor = executor;
+    this(ExecutionLanes.shared(executor));
   }
 
-  protected final ScheduledExecutorService executor() {
-    return executor;
+  protected final ExecutionLanes lanes() {
+    return lanes;
   }
 
   protected abstract ObjectMapper mapper();
@@ -949,7 +1027,7 @@ public abstract class BaseProcessor<
     switch (workflow.phase()) {
       case WAITING_FOR_RESOURCES:
       case INITIALIZING:
-        inTransaction(transaction -> start(target, definition, workflow, transaction));
+        inTransaction(workflow, transaction -> start(target, definition, workflow, transaction));
         break;
       case PREFLIGHT:
         final Phase1Preflight p1 =
@@ -974,6 +1052,7 @@ public abstract class BaseProcessor<
         final Phase2ProvisionIn p2 = new Phase2ProvisionIn(target, activeOperations.size(), definition, workflow);
         if (activeOperations.stream().allMatch(o -> o.status().equals(OperationStatus.SUCCEEDED))) {
           inTransaction(
+              workflow,
               transaction -> {
                 startNextPhase(p2, List.of(TaskStarter.launch(p2.definition(), p2.activeWorkflow,
                     target.engine(), p2.activeWorkflow.realInputs().get(0))), transaction);
@@ -1002,6 +1081,7 @@ public abstract class BaseProcessor<
         final Phase3Run p3 = new Phase3Run(target, definition, activeOperations.size(), workflow);
         if (activeOperations.stream().allMatch(o -> o.status().equals(OperationStatus.SUCCEEDED))) {
           inTransaction(
+              workflow,
               transaction -> {
                 // if cleanup state is not null, do cleanup
                 JsonNode recovery = activeOperations.get(0).recoveryState();
@@ -1074,6 +1154,7 @@ public abstract class BaseProcessor<
         if (activeOperations.stream().allMatch(o -> o.status().equals(OperationStatus.SUCCEEDED))) {
           // SUCCEEDED means we've already created the file entries in the db, so all that's left to do is clean up
           inTransaction(
+              workflow,
               transaction -> {
                 final JsonNode cleanup = workflow.cleanup();
                 if (cleanup == null) {
@@ -1120,7 +1201,7 @@ public abstract class BaseProcessor<
       case CLEANUP:
         final Phase5Cleanup p5 = new Phase5Cleanup(definition, workflow);
         if (activeOperations.stream().allMatch(o -> o.status().equals(OperationStatus.SUCCEEDED))) {
-          inTransaction(workflow::succeeded);
+          inTransaction(workflow, workflow::succeeded);
         } else {
           for (final PO operation : activeOperations) {
             TaskStarter.of("", target.engine().cleanup().recover(operation.recoveryState()))
@@ -1141,6 +1222,7 @@ public abstract class BaseProcessor<
         if (activeOperations.stream().allMatch(o -> o.status().equals(OperationStatus.SUCCEEDED))) {
           // SUCCEEDED means we've already created the file entries in the db, so all that's left to do is clean up
           inTransaction(
+              workflow,
               transaction -> {
                 final JsonNode cleanup = workflow.cleanup();
                 if (cleanup == null) {
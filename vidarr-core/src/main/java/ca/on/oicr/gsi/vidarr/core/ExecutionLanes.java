@@ -0,0 +1,174 @@
+package ca.on.oicr.gsi.vidarr.core;
+
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executors Vidarr uses to run work, separated by the kind of work
+ *
+ * <p>There are three lanes:
+ *
+ * <ul>
+ *   <li>a timer, which only waits for delays to expire and then hands the task to another lane
+ *   <li>a blocking lane, for work that waits on the database, HTTP requests, or processes; it
+ *       runs on virtual threads, but only as many tasks as there are database connections run at
+ *       once, so a burst of work waits its turn rather than timing out waiting for a connection
+ *   <li>a CPU lane, a bounded pool for work that only computes
+ * </ul>
+ *
+ * <p>Keeping these apart means that a burst of slow blocking work cannot delay timers or starve
+ * computation, and vice versa.
+ */
+public final class ExecutionLanes {
+  private static final class Lane implements Executor {
+    private final Executor delegate;
+    private final Semaphore limit;
+    private final String name;
+
+    private Lane(String name, Executor delegate, Semaphore limit) {
+      this.name = name;
+      this.delegate = delegate;
+      this.limit = limit;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      final long queued = System.nanoTime();
+      queueDepth.labels(name).inc();
+      delegate.execute(
+          () -> {
+            if (limit != null) {
+              limit.acquireUninterruptibly();
+            }
+            try {
+              queueDepth.labels(name).dec();
+              taskLatency.labels(name).observe((System.nanoTime() - queued) / 1e9);
+              task.run();
+            } finally {
+              if (limit != null) {
+                limit.release();
+              }
+            }
+          });
+    }
+  }
+
+  private static final Gauge queueDepth =
+      Gauge.build(
+              "vidarr_executor_queued_tasks",
+              "The number of tasks waiting to start in each execution lane")
+          .labelNames("lane")
+          .register();
+  private static final Histogram taskLatency =
+      Histogram.build(
+              "vidarr_executor_task_latency",
+              "The time, in seconds, between when a task was due to start and when it started in"
+                  + " each execution lane")
+          .labelNames("lane")
+          .register();
+
+  /**
+   * Create separate lanes
+   *
+   * @param cpuThreads the number of threads in the CPU lane
+   * @param blockingTasks the maximum number of tasks that can run at once in the blocking lane;
+   *     this should be the size of the database connection pool
+   * @return the new lanes; blocking work runs on virtual threads
+   */
+  public static ExecutionLanes create(int cpuThreads, int blockingTasks) {
+    return new ExecutionLanes(
+        Executors.newSingleThreadScheduledExecutor(),
+        Executors.newVirtualThreadPerTaskExecutor(),
+        new Semaphore(blockingTasks),
+        Executors.newFixedThreadPool(cpuThreads));
+  }
+
+  /**
+   * Run every lane on the same executor
+   *
+   * <p>This is meant for short-lived tools where isolating work is not important.
+   *
+   * @param executor the executor to use for all work
+   * @return lanes that share the executor
+   */
+  public static ExecutionLanes shared(ScheduledExecutorService executor) {
+    return new ExecutionLanes(executor, executor, null, executor);
+  }
+
+  private final Lane blocking;
+  private final Lane cpu;
+  private final ScheduledExecutorService timer;
+
+  private ExecutionLanes(
+      ScheduledExecutorService timer, Executor blocking, Semaphore blockingLimit, Executor cpu) {
+    this.timer = timer;
+    this.blocking = new Lane("blocking", blocking, blockingLimit);
+    this.cpu = new Lane("cpu", cpu, null);
+  }
+
+  /**
+   * The lane for work that waits on the database, network, or other processes
+   *
+   * @return the executor for the lane
+   */
+  public Executor blocking() {
+    return blocking;
+  }
+
+  /**
+   * The lane for work that only computes
+   *
+   * @return the executor for the lane
+   */
+  public Executor cpu() {
+    return cpu;
+  }
+
+  /**
+   * Run a task repeatedly with a fixed delay between the end of one run and the start of the next
+   *
+   * @param lane the lane to run the task in
+   * @param task the task to run
+   * @param delay the delay before the first run and between runs
+   * @param units the units of the delay
+   */
+  public void repeat(Executor lane, Runnable task, long delay, TimeUnit units) {
+    schedule(
+        lane,
+        () -> {
+          try {
+            task.run();
+          } finally {
+            repeat(lane, task, delay, units);
+          }
+        },
+        delay,
+        units);
+  }
+
+  /**
+   * Run a task after a delay
+   *
+   * @param lane the lane to run the task in once the delay has passed
+   * @param task the task to run
+   * @param delay the delay before running
+   * @param units the units of the delay
+   */
+  public void schedule(Executor lane, Runnable task, long delay, TimeUnit units) {
+    final long due = System.nanoTime() + units.toNanos(delay);
+    queueDepth.labels("timer").inc();
+    timer.schedule(
+        () -> {
+          queueDepth.labels("timer").dec();
+          taskLatency.labels("timer").observe(Math.max(0, System.nanoTime() - due) / 1e9);
+          lane.execute(task);
+        },
+        delay,
+        units);
+  }
+}
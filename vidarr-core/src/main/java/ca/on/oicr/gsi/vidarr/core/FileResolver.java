@@ -1,5 +1,6 @@
 package ca.on.oicr.gsi.vidarr.core;
 
+import java.util.Collection;
 import java.util.Optional;
 
 /** A service that can determine file information for previously created Vidarr files */
@@ -11,4 +12,16 @@ public interface FileResolver {
    * @return the file metadata, if it is available
    */
   Optional<FileMetadata> pathForId(String id);
+
+  /**
+   * Look up many Vidarr IDs ahead of time
+   *
+   * <p>Resolvers that contact other servers can fetch all the IDs at once so that later calls to
+   * {@link #pathForId(String)} are fast.
+   *
+   * @param ids the Vidarr IDs that will be needed; IDs that are not files can be ignored
+   */
+  default void prefetch(Collection<String> ids) {
+    // Do nothing
+  }
 }
@@ -2,19 +2,17 @@ package ca.on.oicr.gsi.vidarr.core;
 
 import java.util.Map;
 import java.util.OptionalInt;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 public final class InFlightCollectingByWorkflowPriorityScorer
     extends BaseInFlightCollectingPriorityScorer {
 
-  private final Map<String, SortedSet<WorkflowRunScore>> active = new ConcurrentHashMap<>();
+  private final Map<String, ScoreIndex<WorkflowRunScore>> active = new ConcurrentHashMap<>();
   private boolean useCustom;
 
   @Override
-  protected SortedSet<WorkflowRunScore> get(String workflowName, String workflowVersion) {
-    return active.computeIfAbsent(workflowName, k -> new TreeSet<>());
+  protected ScoreIndex<WorkflowRunScore> get(String workflowName, String workflowVersion) {
+    return active.computeIfAbsent(workflowName, k -> new ScoreIndex<>(WorkflowRunScore::vidarrId));
   }
 
   @Override
@@ -3,20 +3,20 @@ package ca.on.oicr.gsi.vidarr.core;
 import ca.on.oicr.gsi.Pair;
 import java.util.Map;
 import java.util.OptionalInt;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 public final class InFlightCollectingByWorkflowVersionPriorityScorer
     extends BaseInFlightCollectingPriorityScorer {
 
-  private final Map<Pair<String, String>, SortedSet<WorkflowRunScore>> active =
+  private final Map<Pair<String, String>, ScoreIndex<WorkflowRunScore>> active =
       new ConcurrentHashMap<>();
   private boolean useCustom;
 
   @Override
-  protected SortedSet<WorkflowRunScore> get(String workflowName, String workflowVersion) {
-    return active.computeIfAbsent(new Pair<>(workflowName, workflowVersion), k -> new TreeSet<>());
+  protected ScoreIndex<WorkflowRunScore> get(String workflowName, String workflowVersion) {
+    return active.computeIfAbsent(
+        new Pair<>(workflowName, workflowVersion),
+        k -> new ScoreIndex<>(WorkflowRunScore::vidarrId));
   }
 
   @Override
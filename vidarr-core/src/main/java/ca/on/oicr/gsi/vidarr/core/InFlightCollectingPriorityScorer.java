@@ -1,14 +1,15 @@
 package ca.on.oicr.gsi.vidarr.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.OptionalInt;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 public final class InFlightCollectingPriorityScorer extends BaseInFlightCollectingPriorityScorer {
 
-  private final SortedSet<WorkflowRunScore> active = new TreeSet<>();
+  private final ScoreIndex<WorkflowRunScore> active =
+      new ScoreIndex<>(WorkflowRunScore::vidarrId);
 
   /**
    * The maximum number of workflows which may occupy the global max-in-flight limit before those
@@ -17,7 +18,7 @@ public final class InFlightCollectingPriorityScorer extends BaseInFlightCollecti
   private int hogFactor;
 
   @Override
-  protected SortedSet<WorkflowRunScore> get(String workflowName, String workflowVersion) {
+  protected ScoreIndex<WorkflowRunScore> get(String workflowName, String workflowVersion) {
     return active;
   }
 
@@ -34,16 +35,7 @@ public final class InFlightCollectingPriorityScorer extends BaseInFlightCollecti
   protected void preprocessActive(int limit) {
     if (hogFactor > 0 && active.size() > limit) {
       synchronized (active) {
-        SortedSet<WorkflowRunScore> activeHead = new TreeSet<>();
-
-        // It's so cool how there's seemingly no call to do this with a sorted set
-        int i = 0;
-        while (i < limit) {
-          activeHead.add(active.first());
-          active.remove(active.first());
-          i++;
-        }
-        active.addAll(activeHead);
+        final List<WorkflowRunScore> activeHead = active.stream().limit(limit).toList();
 
         // If everything is inflight, there's no running room. Exit early
         // Alternatively, if nothing is inflight, this is also a waste of time. Exit early
@@ -61,18 +53,16 @@ public final class InFlightCollectingPriorityScorer extends BaseInFlightCollecti
             .collect(Collectors.toSet());
         if (uniqueWorkflows.size() <= hogFactor) {
           // can't manipulate active while iterating over it
-          Set<WorkflowRunScore> toRemove = new TreeSet<>(), toAdd = new TreeSet<>();
+          final List<WorkflowRunScore> toAdd = new ArrayList<>();
           for (WorkflowRunScore score : active) {
             if (uniqueWorkflows.contains(score.workflowName())
                 && score.currentPriority() != Integer.MAX_VALUE) {
-              toRemove.add(score);
               toAdd.add(new WorkflowRunScore(score.workflowName(), score.workflowVersion(),
                   score.vidarrId(), 0,
                   score.originalPriority()));
             }
           }
-          active.removeAll(toRemove);
-          active.addAll(toAdd);
+          toAdd.forEach(active::put);
         }
       }
     }
@@ -80,11 +70,9 @@ public final class InFlightCollectingPriorityScorer extends BaseInFlightCollecti
 
   @Override
   protected void postprocessActive() {
-    // TreeSet implements Cloneable but I can't actually get clone() to work without a million
-    // unsafe casts
     // It doesn't hurt anything to do this with hog factor off, just waste of cycles
     if (hogFactor > 0) {
-      SortedSet<WorkflowRunScore> clonedActive = new TreeSet<>(active);
+      final List<WorkflowRunScore> clonedActive = active.stream().toList();
       for (WorkflowRunScore score : clonedActive) {
         if (score.currentPriority() != Integer.MAX_VALUE) {
           putItBack(score.workflowName(), score.workflowVersion(), score.vidarrId());
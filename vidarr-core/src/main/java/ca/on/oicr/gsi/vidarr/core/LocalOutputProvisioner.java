@@ -1,21 +1,33 @@
 package ca.on.oicr.gsi.vidarr.core;
 
 import static ca.on.oicr.gsi.vidarr.OperationAction.load;
+
 import ca.on.oicr.gsi.Pair;
 import ca.on.oicr.gsi.status.SectionRenderer;
 import ca.on.oicr.gsi.vidarr.BasicType;
 import ca.on.oicr.gsi.vidarr.OperationAction;
+import ca.on.oicr.gsi.vidarr.OperationStep;
 import ca.on.oicr.gsi.vidarr.OutputProvisionFormat;
 import ca.on.oicr.gsi.vidarr.OutputProvisioner;
 import ca.on.oicr.gsi.vidarr.OutputProvisionerProvider;
-import ca.on.oicr.gsi.vidarr.core.LocalOutputProvisioner.ProvisionState;
 import ca.on.oicr.gsi.vidarr.core.LocalOutputProvisioner.PreflightState;
+import ca.on.oicr.gsi.vidarr.core.LocalOutputProvisioner.ProvisionState;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 import java.util.zip.CRC32;
 import javax.xml.stream.XMLStreamException;
@@ -26,25 +38,67 @@ public class LocalOutputProvisioner implements OutputProvisioner<PreflightState,
   public record ProvisionState (String inputFile,
                                JsonNode metadata,
                                String vidarrId){
-    public OutputProvisioner.Result move() throws IOException {
+    public OutputProvisioner.Result move(String checksumType) throws IOException {
       final Path inputPath = Paths.get(inputFile),
           outputPath = Paths.get(metadata.get("outputDirectory").asText()),
           newPath = Files.move(inputPath, outputPath.resolve(inputPath.getFileName()), StandardCopyOption.REPLACE_EXISTING);
-      // Calculate CRC32
-      byte[] data = Files.readAllBytes(newPath);
-      CRC32 crc32 = new CRC32();
-      crc32.update(data);
 
       return Result.file(
           newPath.toString(),
-          Long.toString(crc32.getValue()),
-          "crc32",
+          checksum(newPath, checksumType),
+          checksumType,
           Files.size(newPath),
           "text/plain"
       );
     }
   }
 
+  // Files are read through a reused buffer, so memory use does not depend on file size
+  private static final ThreadLocal<ByteBuffer> BUFFER =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 20));
+
+  /**
+   * Compute the checksum of a file without reading it all into memory
+   *
+   * @param path the file to read
+   * @param checksumType the checksum algorithm: <code>crc32</code>, <code>md5</code>, or
+   *     <code>sha256</code>
+   * @return the checksum; CRC32 is in decimal and the others are in hexadecimal
+   */
+  static String checksum(Path path, String checksumType) throws IOException {
+    final ByteBuffer buffer = BUFFER.get();
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (checksumType.equals("crc32")) {
+        final CRC32 crc32 = new CRC32();
+        while (channel.read(buffer.clear()) >= 0) {
+          crc32.update(buffer.flip());
+        }
+        return Long.toString(crc32.getValue());
+      }
+      final MessageDigest digest = digest(checksumType);
+      while (channel.read(buffer.clear()) >= 0) {
+        digest.update(buffer.flip());
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    }
+  }
+
+  private static MessageDigest digest(String checksumType) {
+    try {
+      return switch (checksumType) {
+        case "md5" -> MessageDigest.getInstance("MD5");
+        case "sha256" -> MessageDigest.getInstance("SHA-256");
+        default -> throw new IllegalArgumentException("Unknown checksum type: " + checksumType);
+      };
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private String checksum = "crc32";
+  private ExecutorService ioPool;
+  private int ioThreads = 4;
+
   public static OutputProvisionerProvider provider() {
     return () -> Stream.of(new Pair<>("local", LocalOutputProvisioner.class));
   }
@@ -57,6 +111,16 @@ public class LocalOutputProvisioner implements OutputProvisioner<PreflightState,
   @Override
   public void configuration(SectionRenderer sectionRenderer) throws XMLStreamException {
     sectionRenderer.line("Local Output Provisioner", "provisions output locally");
+    sectionRenderer.line("Checksum", checksum);
+    sectionRenderer.line("I/O Threads", Integer.toString(ioThreads));
+  }
+
+  public String getChecksum() {
+    return checksum;
+  }
+
+  public int getIoThreads() {
+    return ioThreads;
   }
 
   @Override
@@ -71,8 +135,21 @@ public class LocalOutputProvisioner implements OutputProvisioner<PreflightState,
 
   @Override
   public OperationAction<?, ProvisionState, Result> build() {
-    // Use the ProvisionState to move a file from the inputFile to the outputDirectory
-    return load(ProvisionState.class, ProvisionState::move);
+    // Use the ProvisionState to move a file from the inputFile to the outputDirectory; this happens
+    // on a bounded pool so that files can be moved in parallel without flooding the disk
+    return load(
+            ProvisionState.class,
+            state ->
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      try {
+                        return state.move(checksum);
+                      } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                      }
+                    },
+                    ioPool))
+        .then(OperationStep.future());
   }
 
   @Override
@@ -80,8 +157,24 @@ public class LocalOutputProvisioner implements OutputProvisioner<PreflightState,
     return OperationAction.value(PreflightState.class, true);
   }
 
+  public void setChecksum(String checksum) {
+    this.checksum = checksum;
+  }
+
+  public void setIoThreads(int ioThreads) {
+    this.ioThreads = ioThreads;
+  }
+
   @Override
   public void startup() {
+    if (!checksum.equals("crc32")) {
+      // Fail at startup rather than on the first file
+      digest(checksum);
+    }
+    ioPool =
+        Executors.newFixedThreadPool(
+            Math.max(1, ioThreads),
+            Thread.ofPlatform().daemon().name("local-provision-", 0).factory());
   }
 
   @Override
@@ -15,10 +15,12 @@ import io.undertow.util.Headers;
 import io.undertow.util.PathTemplateMatch;
 import io.undertow.util.StatusCodes;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.BiPredicate;
 
 public final class ManualOverrideConsumableResource implements ConsumableResource {
@@ -27,6 +29,13 @@ public final class ManualOverrideConsumableResource implements ConsumableResourc
   private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new Jdk8Module());
   private final Set<String> allowList = new TreeSet<>();
   private ConsumableResource inner;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void addCapacityListener(Runnable listener) {
+    listeners.add(listener);
+    inner.addCapacityListener(listener);
+  }
 
   private void dumpAllowed(HttpServerExchange exchange) throws JsonProcessingException {
     exchange.setStatusCode(StatusCodes.OK);
@@ -59,6 +68,11 @@ public final class ManualOverrideConsumableResource implements ConsumableResourc
     return inner.isInputFromSubmitterRequired();
   }
 
+  @Override
+  public boolean isTimeDependent() {
+    return inner.isTimeDependent();
+  }
+
   @Override
   public void recover(
       String workflowName,
@@ -101,10 +115,13 @@ public final class ManualOverrideConsumableResource implements ConsumableResourc
     return (exchange) -> {
       final var vidarrId =
           exchange.getAttachment(PathTemplateMatch.ATTACHMENT_KEY).getParameters().get("name");
-      exchange.setStatusCode(
-          operation.test(allowList, vidarrId) ? StatusCodes.OK : StatusCodes.ALREADY_REPORTED);
+      final boolean changed = operation.test(allowList, vidarrId);
+      exchange.setStatusCode(changed ? StatusCodes.OK : StatusCodes.ALREADY_REPORTED);
       exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, 0);
       exchange.getResponseSender().send("");
+      if (changed) {
+        listeners.forEach(Runnable::run);
+      }
     };
   }
 }
@@ -7,19 +7,27 @@ import ca.on.oicr.gsi.vidarr.ConsumableResourceResponse;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 // This is the global one. Per-Workflow is MaxInFlightByWorkflow
 public final class MaxInFlightConsumableResource implements ConsumableResource {
 
   @JsonIgnore private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+  @JsonIgnore private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
   private int maximum;
 
   public MaxInFlightConsumableResource() {}
 
+  @Override
+  public void addCapacityListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
   public int getMaximum() {
     return maximum;
   }
@@ -41,7 +49,9 @@ public final class MaxInFlightConsumableResource implements ConsumableResource {
   @Override
   public void release(
       String workflowName, String workflowVersion, String vidarrId, Optional<JsonNode> input) {
-    inFlight.remove(vidarrId);
+    if (inFlight.remove(vidarrId)) {
+      listeners.forEach(Runnable::run);
+    }
   }
 
   @Override
@@ -75,4 +85,9 @@ public final class MaxInFlightConsumableResource implements ConsumableResource {
   public boolean isInputFromSubmitterRequired() {
     return false;
   }
+
+  @Override
+  public boolean isTimeDependent() {
+    return false;
+  }
 }
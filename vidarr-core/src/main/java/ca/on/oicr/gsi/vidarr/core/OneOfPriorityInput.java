@@ -8,8 +8,11 @@ import com.fasterxml.jackson.databind.node.NullNode;
 import io.undertow.Handlers;
 import io.undertow.server.HttpHandler;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 public final class OneOfPriorityInput implements PriorityInput {
   private int defaultPriority;
@@ -63,6 +66,22 @@ public final class OneOfPriorityInput implements PriorityInput {
             .map(e -> new Pair<>(e.getKey(), e.getValue().inputFromSubmitter())));
   }
 
+  @Override
+  public CompletableFuture<?> prefetch(List<JsonNode> submitted) {
+    return CompletableFuture.allOf(
+        submitted.stream()
+            .filter(input -> input.path("type").isTextual() && input.has("contents"))
+            .collect(
+                Collectors.groupingBy(
+                    input -> input.get("type").asText(),
+                    Collectors.mapping(input -> input.get("contents"), Collectors.toList())))
+            .entrySet()
+            .stream()
+            .filter(entry -> inputs.containsKey(entry.getKey()))
+            .map(entry -> inputs.get(entry.getKey()).prefetch(entry.getValue()))
+            .toArray(CompletableFuture[]::new));
+  }
+
   public void setDefaultPriority(int defaultPriority) {
     this.defaultPriority = defaultPriority;
   }
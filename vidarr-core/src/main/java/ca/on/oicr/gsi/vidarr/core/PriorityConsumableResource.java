@@ -13,10 +13,15 @@ import io.undertow.Handlers;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.PathHandler;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 public final class PriorityConsumableResource implements ConsumableResource {
@@ -24,9 +29,15 @@ public final class PriorityConsumableResource implements ConsumableResource {
   private Integer defaultPriority;
   private PriorityFormula formula;
   private Map<String, PriorityInput> inputs;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
   private String name;
   private PriorityScorer scorer;
 
+  @Override
+  public void addCapacityListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
   @Override
   public Optional<HttpHandler> httpHandler() {
     final PathHandler routes = scorer.httpHandler().map(Handlers::path).orElseGet(Handlers::path);
@@ -50,6 +61,19 @@ public final class PriorityConsumableResource implements ConsumableResource {
     return defaultPriority == null;
   }
 
+  @Override
+  public CompletableFuture<?> prefetch(List<JsonNode> submitted) {
+    final List<CompletableFuture<?>> futures = new ArrayList<>();
+    for (final Entry<String, PriorityInput> entry : inputs.entrySet()) {
+      final List<JsonNode> values =
+          submitted.stream().map(i -> i.get(entry.getKey())).filter(Objects::nonNull).toList();
+      if (!values.isEmpty()) {
+        futures.add(entry.getValue().prefetch(values));
+      }
+    }
+    return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+  }
+
   @Override
   public int priority() {
     return -1000;
@@ -68,6 +92,7 @@ public final class PriorityConsumableResource implements ConsumableResource {
   public void release(
       String workflowName, String workflowVersion, String vidarrId, Optional<JsonNode> input) {
     scorer.complete(workflowName, workflowVersion, vidarrId);
+    listeners.forEach(Runnable::run);
   }
 
   @Override
@@ -1,10 +1,11 @@
 package ca.on.oicr.gsi.vidarr.core;
 
-import ca.on.oicr.gsi.cache.KeyValueCache;
-import ca.on.oicr.gsi.cache.SimpleRecord;
 import ca.on.oicr.gsi.vidarr.BasicType;
+import ca.on.oicr.gsi.vidarr.HttpBulkhead;
+import ca.on.oicr.gsi.vidarr.HttpBulkheadSettings;
 import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
 import ca.on.oicr.gsi.vidarr.PriorityInput;
+import ca.on.oicr.gsi.vidarr.RefreshingCache;
 import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -20,35 +21,97 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public final class RemotePriorityInput implements PriorityInput {
+  private static final HttpBulkhead BULKHEAD =
+      HttpBulkhead.create("remote-priority", 10, 5, Duration.ofMinutes(1));
   private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
 
   // Jdk8Module is a compatibility fix for de/serializing Optionals
   private static final ObjectMapper MAPPER =
       new ObjectMapper().registerModule(new Jdk8Module()).configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+  private HttpBulkheadSettings bulkhead;
+  private String bulkUrl;
   private int defaultPriority;
+  private int maxCacheSize = 10_000;
   private BasicType schema;
   private int ttl = 15;
   private String url;
-  private KeyValueCache<String, Optional<Integer>> values;
+  private RefreshingCache<String, Optional<Integer>> values;
 
   @Override
   public int compute(String workflowName, String workflowVersion, Instant created, JsonNode input) {
     try {
-      return values.get(MAPPER.writeValueAsString(input)).orElse(defaultPriority);
+      return values
+          .get(MAPPER.writeValueAsString(input))
+          .flatMap(value -> value)
+          .orElse(defaultPriority);
     } catch (JacksonException e) {
       e.printStackTrace();
       return defaultPriority;
     }
   }
 
+  private CompletableFuture<Map<String, Optional<Integer>>> fetchAll(Set<String> bodies) {
+    final List<String> keys = new ArrayList<>(bodies);
+    return BULKHEAD
+        .send(
+            HTTP_CLIENT,
+            HttpRequest.newBuilder(URI.create(bulkUrl))
+                .header("Content-type", "application/json")
+                .POST(
+                    BodyPublishers.ofString(
+                        "[" + String.join(",", keys) + "]", StandardCharsets.UTF_8))
+                .build(),
+            new JsonBodyHandler<>(MAPPER, new TypeReference<List<Optional<Integer>>>() {}))
+        .thenApply(
+            response -> {
+              final List<Optional<Integer>> results = response.body().get();
+              final Map<String, Optional<Integer>> output = new HashMap<>();
+              for (int i = 0; i < Math.min(keys.size(), results.size()); i++) {
+                output.put(keys.get(i), results.get(i));
+              }
+              return output;
+            });
+  }
+
+  private CompletableFuture<Optional<Integer>> fetch(String body) {
+    return BULKHEAD
+        .send(
+            HTTP_CLIENT,
+            HttpRequest.newBuilder(URI.create(url))
+                .header("Content-type", "application/json")
+                .POST(BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build(),
+            new JsonBodyHandler<>(MAPPER, new TypeReference<Optional<Integer>>() {}))
+        .thenApply(response -> response.body().get());
+  }
+
+  public HttpBulkheadSettings getBulkhead() {
+    return bulkhead;
+  }
+
+  public String getBulkUrl() {
+    return bulkUrl;
+  }
+
   public int getDefaultPriority() {
     return defaultPriority;
   }
 
+  public int getMaxCacheSize() {
+    return maxCacheSize;
+  }
+
   public BasicType getSchema() {
     return schema;
   }
@@ -71,15 +134,40 @@ public final class RemotePriorityInput implements PriorityInput {
     return BasicType.STRING;
   }
 
+  @Override
+  public CompletableFuture<?> prefetch(List<JsonNode> inputs) {
+    final List<String> bodies = new ArrayList<>();
+    for (final JsonNode input : inputs) {
+      try {
+        bodies.add(MAPPER.writeValueAsString(input));
+      } catch (JacksonException e) {
+        e.printStackTrace();
+      }
+    }
+    return values.prefetch(bodies);
+  }
+
   private void reset(HttpServerExchange exchange) {
     exchange.setStatusCode(StatusCodes.NO_CONTENT);
     values.invalidateAll();
   }
 
+  public void setBulkhead(HttpBulkheadSettings bulkhead) {
+    this.bulkhead = bulkhead;
+  }
+
+  public void setBulkUrl(String bulkUrl) {
+    this.bulkUrl = bulkUrl;
+  }
+
   public void setDefaultPriority(int defaultPriority) {
     this.defaultPriority = defaultPriority;
   }
 
+  public void setMaxCacheSize(int maxCacheSize) {
+    this.maxCacheSize = maxCacheSize;
+  }
+
   public void setSchema(BasicType schema) {
     this.schema = schema;
   }
@@ -94,20 +182,14 @@ public final class RemotePriorityInput implements PriorityInput {
 
   @Override
   public void startup(String resourceName, String inputName) {
+    BULKHEAD.configure(url, bulkhead);
+    BULKHEAD.configure(bulkUrl, bulkhead);
     values =
-        new KeyValueCache<>(resourceName + " " + inputName, ttl, SimpleRecord::new) {
-          @Override
-          protected Optional<Integer> fetch(String body, Instant instant) throws Exception {
-            return HTTP_CLIENT
-                .send(
-                    HttpRequest.newBuilder(URI.create(url))
-                        .header("Content-type", "application/json")
-                        .POST(BodyPublishers.ofString(body, StandardCharsets.UTF_8))
-                        .build(),
-                    new JsonBodyHandler<>(MAPPER, new TypeReference<Optional<Integer>>() {}))
-                .body()
-                .get();
-          }
-        };
+        new RefreshingCache<>(
+            resourceName + " " + inputName,
+            Duration.ofMinutes(ttl),
+            maxCacheSize,
+            this::fetch,
+            bulkUrl == null ? null : this::fetchAll);
   }
 }
@@ -3,12 +3,11 @@ package ca.on.oicr.gsi.vidarr.core;
 import ca.on.oicr.gsi.vidarr.PriorityScorer;
 import io.undertow.server.HttpHandler;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class ResourceOptimizingPriorityScorer implements PriorityScorer {
 
@@ -26,7 +25,9 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
     }
   }
 
-  private final SortedSet<WorkflowRunScore> active = new TreeSet<>();
+  private final ScoreIndex<WorkflowRunScore> active =
+      new ScoreIndex<>(WorkflowRunScore::vidarrId);
+  private final Map<String, ScoreIndex<WorkflowRunScore>> activeByWorkflow = new HashMap<>();
   private boolean useCustom;
   private int globalMaxInFlight, maxInFlightPerWorkflow;
 
@@ -42,8 +43,7 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
 
     synchronized (active) {
       // Check if the record already exists
-      final Optional<WorkflowRunScore> existing = active.stream()
-          .filter(e -> e.vidarrId().equals(vidarrId)).findFirst();
+      final Optional<WorkflowRunScore> existing = active.get(vidarrId);
       if (existing.isPresent()) {
         final int existingOriginalPriority = existing.get().originalPriority();
         final int existingCurrentPriority = existing.get().currentPriority();
@@ -52,8 +52,7 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
         // but still update originalPriority if score has changed, for when we eventually reset
         if (existingCurrentPriority == 0) {
           if (existingOriginalPriority != score) {
-            active.remove(existing.get());
-            active.add(
+            put(
                 new WorkflowRunScore(workflowName, vidarrId, existingCurrentPriority, score));
           }
           return false;
@@ -72,7 +71,7 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
 
         // Your score has changed, so we need to re-evaluate you below.
         else {
-          active.remove(existing.get());
+          remove(vidarrId);
         }
       }
 
@@ -81,7 +80,7 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
       // priority jobs to take all the tokens
       final WorkflowRunScore wfrScore = new WorkflowRunScore(workflowName,
           vidarrId, score, score);
-      active.add(wfrScore);
+      put(wfrScore);
       if (existing.isPresent()) {
         // Now attempt to launch after adding updated wfrScore, this may have changed the queue
         return attemptLaunch(wfrScore, workflowLimit, finalScore);
@@ -94,19 +93,17 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
   private boolean attemptLaunch(WorkflowRunScore workflowRunScore, int workflowMaxInFlight,
       int finalScore) {
     final boolean globalRunningRoom =
-        active.stream().filter(e -> e.currentPriority() > finalScore).count()
-            < globalMaxInFlight;
+        active.countPrefix(e -> e.currentPriority() > finalScore) < globalMaxInFlight;
 
     if (globalRunningRoom) {
       // Check if there is per-workflow max in flight running room
       final boolean workflowRunningRoom =
           getActiveByWorkflow(workflowRunScore.workflowName())
-              .filter(e -> e.currentPriority() > finalScore).count()
+                  .countPrefix(e -> e.currentPriority() > finalScore)
               < workflowMaxInFlight;
       if (workflowRunningRoom) {
         // Both global and per-workflow max in flight have room for you, set to inflight
-        active.remove(workflowRunScore);
-        active.add(
+        put(
             new WorkflowRunScore(workflowRunScore.workflowName(),
                 workflowRunScore.vidarrId(), Integer.MAX_VALUE,
                 finalScore));
@@ -114,18 +111,15 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
         // Recalculate per-workflow inflight after this change. If this workflow has hit its
         // max in flight, set all non-inflight priorities to 0.
         if (getActiveByWorkflow(workflowRunScore.workflowName())
-            .filter(e -> e.currentPriority() == Integer.MAX_VALUE).count()
+            .countPrefix(e -> e.currentPriority() == Integer.MAX_VALUE)
             == workflowMaxInFlight) {
-          SortedSet<WorkflowRunScore> toRemove = new TreeSet<>(), toAdd = new TreeSet<>();
-          getActiveByWorkflow(workflowRunScore.workflowName()).filter(
-              wrs -> wrs.currentPriority() != Integer.MAX_VALUE).forEach(wrs -> {
-            toRemove.add(wrs);
-            toAdd.add(
-                new WorkflowRunScore(wrs.workflowName, wrs.vidarrId, 0,
-                    wrs.originalPriority));
-          });
-          active.removeAll(toRemove);
-          active.addAll(toAdd);
+          final List<WorkflowRunScore> toAdd = getActiveByWorkflow(
+              workflowRunScore.workflowName()).stream()
+              .filter(wrs -> wrs.currentPriority() != Integer.MAX_VALUE)
+              .map(wrs -> new WorkflowRunScore(wrs.workflowName, wrs.vidarrId, 0,
+                  wrs.originalPriority))
+              .toList();
+          toAdd.forEach(this::put);
         }
 
         // Either way, it's in flight now, this resource is passing.
@@ -154,8 +148,7 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
   @Override
   public void recover(String workflowName, String workflowVersion, String vidarrId) {
     synchronized (active) {
-      active.removeIf(a -> a.vidarrId().equals(vidarrId));
-      active.add(new WorkflowRunScore(workflowName, vidarrId, Integer.MAX_VALUE,
+      put(new WorkflowRunScore(workflowName, vidarrId, Integer.MAX_VALUE,
           Integer.MAX_VALUE));
     }
   }
@@ -163,7 +156,7 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
   @Override
   public void complete(String workflowName, String workflowVersion, String vidarrId) {
     synchronized (active) {
-      active.removeIf(a -> a.vidarrId().equals(vidarrId));
+      remove(vidarrId);
       resetWorkflowQueue(workflowName);
     }
   }
@@ -171,12 +164,10 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
   @Override
   public void putItBack(String workflowName, String workflowVersion, String vidarrId) {
     synchronized (active) {
-      Optional<WorkflowRunScore> wfrScoreMaybe = active.stream()
-          .filter(a -> a.vidarrId().equals(vidarrId)).findFirst();
+      Optional<WorkflowRunScore> wfrScoreMaybe = active.get(vidarrId);
       if (wfrScoreMaybe.isPresent()) {
         WorkflowRunScore wfrScore = wfrScoreMaybe.get();
-        active.remove(wfrScore);
-        active.add(new WorkflowRunScore(workflowName, vidarrId,
+        put(new WorkflowRunScore(workflowName, vidarrId,
             wfrScore.originalPriority(),
             wfrScore.originalPriority()));
 
@@ -185,11 +176,11 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
         // If this scorer approved running this job, but some other scorer didn't, we may have
         // set the waiting priorities to 0, reset that only in this case, keep them otherwise
         // so, if we're resetting a job that we put in the running state,
-        if (getActiveByWorkflow(workflowName).anyMatch(wrs -> wrs.equals(
+        if (getActiveByWorkflow(workflowName).get(vidarrId).filter(wrs -> wrs.equals(
             new WorkflowRunScore(workflowName, vidarrId, Integer.MAX_VALUE,
-                wfrScore.originalPriority())))) {
+                wfrScore.originalPriority()))).isPresent()) {
           // and we hit the max in flight (ie the rest of the priorities are 0 or inflight)
-          if (active.stream().filter(wrs -> wrs.workflowName().equals(workflowName)).allMatch(
+          if (getActiveByWorkflow(workflowName).stream().allMatch(
               wrs -> wrs.currentPriority() == 0 || wrs.currentPriority() == Integer.MAX_VALUE)) {
             resetWorkflowQueue(workflowName);
           }
@@ -199,16 +190,12 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
   }
 
   private void resetWorkflowQueue(String workflowName) {
-    SortedSet<WorkflowRunScore> toRemove = new TreeSet<>(), toAdd = new TreeSet<>();
-    getActiveByWorkflow(workflowName).filter(wrs -> wrs.currentPriority() != Integer.MAX_VALUE)
-        .forEach(score -> {
-          toRemove.add(score);
-          toAdd.add(
-              new WorkflowRunScore(score.workflowName(), score.vidarrId(),
-                  score.originalPriority(), score.originalPriority()));
-        });
-    active.removeAll(toRemove);
-    active.addAll(toAdd);
+    final List<WorkflowRunScore> toAdd = getActiveByWorkflow(workflowName).stream()
+        .filter(wrs -> wrs.currentPriority() != Integer.MAX_VALUE)
+        .map(score -> new WorkflowRunScore(score.workflowName(), score.vidarrId(),
+            score.originalPriority(), score.originalPriority()))
+        .toList();
+    toAdd.forEach(this::put);
   }
 
 
@@ -217,9 +204,30 @@ public class ResourceOptimizingPriorityScorer implements PriorityScorer {
     // Do nothing
   }
 
-  private Stream<WorkflowRunScore> getActiveByWorkflow(String workflowName) {
-    return active.stream().filter(
-        s -> s.workflowName.equals(workflowName));
+  private ScoreIndex<WorkflowRunScore> getActiveByWorkflow(String workflowName) {
+    return activeByWorkflow.computeIfAbsent(
+        workflowName, k -> new ScoreIndex<>(WorkflowRunScore::vidarrId));
+  }
+
+  // Both indices must be updated together while holding the lock on active
+  private void put(WorkflowRunScore score) {
+    remove(score.vidarrId());
+    active.put(score);
+    getActiveByWorkflow(score.workflowName()).put(score);
+  }
+
+  private void remove(String vidarrId) {
+    active
+        .remove(vidarrId)
+        .ifPresent(
+            previous -> {
+              final ScoreIndex<WorkflowRunScore> byWorkflow =
+                  activeByWorkflow.get(previous.workflowName());
+              byWorkflow.remove(vidarrId);
+              if (byWorkflow.isEmpty()) {
+                activeByWorkflow.remove(previous.workflowName());
+              }
+            });
   }
 
 
@@ -0,0 +1,272 @@
+package ca.on.oicr.gsi.vidarr.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A sorted collection of workflow run scores that can also be looked up by workflow run
+ * identifier
+ *
+ * <p>Scores are stored in a hash table by identifier and in a randomized balanced search tree that
+ * tracks the size of every subtree. Looking up a score by identifier is constant time, while
+ * adding or removing a score and counting the scores in a prefix of the sorted order are
+ * logarithmic. The ordering of scores must be consistent with the identifier (<i>i.e.</i>, two
+ * scores with different identifiers must not compare as equal).
+ *
+ * <p>This class is not thread-safe; users should synchronize on the instance.
+ *
+ * @param <T> the type of the scores
+ */
+public final class ScoreIndex<T extends Comparable<? super T>> implements Iterable<T> {
+  private static final class Node<T> {
+    private Node<T> left;
+    private Node<T> right;
+    private int size = 1;
+    private final T value;
+    private final int weight = ThreadLocalRandom.current().nextInt();
+
+    private Node(T value) {
+      this.value = value;
+    }
+  }
+
+  private record Split<T>(Node<T> left, Node<T> right) {}
+
+  private final Map<String, T> byId = new HashMap<>();
+  private final Function<T, String> idFunction;
+  private Node<T> root;
+
+  /**
+   * Create a new empty index
+   *
+   * @param idFunction a function to extract the workflow run identifier from a score
+   */
+  public ScoreIndex(Function<T, String> idFunction) {
+    this.idFunction = idFunction;
+  }
+
+  private static <T extends Comparable<? super T>> Node<T> insert(Node<T> node, Node<T> created) {
+    if (node == null) {
+      return created;
+    }
+    if (created.weight > node.weight) {
+      final Split<T> result = split(node, created.value);
+      created.left = result.left();
+      created.right = result.right();
+      update(created);
+      return created;
+    }
+    if (created.value.compareTo(node.value) < 0) {
+      node.left = insert(node.left, created);
+    } else {
+      node.right = insert(node.right, created);
+    }
+    update(node);
+    return node;
+  }
+
+  private static <T> Node<T> merge(Node<T> left, Node<T> right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.weight > right.weight) {
+      left.right = merge(left.right, right);
+      update(left);
+      return left;
+    } else {
+      right.left = merge(left, right.left);
+      update(right);
+      return right;
+    }
+  }
+
+  private static <T extends Comparable<? super T>> Node<T> remove(Node<T> node, T value) {
+    if (node == null) {
+      return null;
+    }
+    final int comparison = value.compareTo(node.value);
+    if (comparison == 0) {
+      return merge(node.left, node.right);
+    }
+    if (comparison < 0) {
+      node.left = remove(node.left, value);
+    } else {
+      node.right = remove(node.right, value);
+    }
+    update(node);
+    return node;
+  }
+
+  private static int size(Node<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  // Splits the tree into the nodes before the value and the rest
+  private static <T extends Comparable<? super T>> Split<T> split(Node<T> node, T value) {
+    if (node == null) {
+      return new Split<>(null, null);
+    }
+    if (node.value.compareTo(value) < 0) {
+      final Split<T> result = split(node.right, value);
+      node.right = result.left();
+      update(node);
+      return new Split<>(node, result.right());
+    } else {
+      final Split<T> result = split(node.left, value);
+      node.left = result.right();
+      update(node);
+      return new Split<>(result.left(), node);
+    }
+  }
+
+  private static void update(Node<?> node) {
+    node.size = 1 + size(node.left) + size(node.right);
+  }
+
+  /**
+   * Count the scores at the start of the sorted order that match a condition
+   *
+   * @param condition a condition that must be true for every score before the first score where
+   *     it is false
+   * @return the number of scores that match
+   */
+  public int countPrefix(Predicate<? super T> condition) {
+    int count = 0;
+    Node<T> node = root;
+    while (node != null) {
+      if (condition.test(node.value)) {
+        count += size(node.left) + 1;
+        node = node.right;
+      } else {
+        node = node.left;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Get the score for a workflow run
+   *
+   * @param id the workflow run identifier
+   * @return the score, if present
+   */
+  public Optional<T> get(String id) {
+    return Optional.ofNullable(byId.get(id));
+  }
+
+  private T higher(T value) {
+    T result = null;
+    Node<T> node = root;
+    while (node != null) {
+      if (node.value.compareTo(value) > 0) {
+        result = node.value;
+        node = node.left;
+      } else {
+        node = node.right;
+      }
+    }
+    return result;
+  }
+
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /**
+   * Iterate over the scores in sorted order
+   *
+   * <p>The index may be modified while iterating; the iterator will continue with the score that
+   * follows the last one returned.
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new Iterator<>() {
+      private T last;
+      private T next = lowest();
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public T next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        next = higher(last);
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        ScoreIndex.this.remove(idFunction.apply(last));
+        last = null;
+      }
+    };
+  }
+
+  private T lowest() {
+    Node<T> node = root;
+    if (node == null) {
+      return null;
+    }
+    while (node.left != null) {
+      node = node.left;
+    }
+    return node.value;
+  }
+
+  /**
+   * Add a score, replacing any existing score for the same workflow run
+   *
+   * @param value the score to add
+   * @return the score that was replaced, if any
+   */
+  public Optional<T> put(T value) {
+    final T previous = byId.put(idFunction.apply(value), value);
+    if (previous != null) {
+      root = remove(root, previous);
+    }
+    root = insert(root, new Node<>(value));
+    return Optional.ofNullable(previous);
+  }
+
+  /**
+   * Remove the score for a workflow run
+   *
+   * @param id the workflow run identifier
+   * @return the score that was removed, if any
+   */
+  public Optional<T> remove(String id) {
+    final T previous = byId.remove(id);
+    if (previous != null) {
+      root = remove(root, previous);
+    }
+    return Optional.ofNullable(previous);
+  }
+
+  public int size() {
+    return size(root);
+  }
+
+  /** Stream the scores in sorted order */
+  public Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+}
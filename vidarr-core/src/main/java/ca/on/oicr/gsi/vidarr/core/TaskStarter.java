@@ -97,6 +97,7 @@ interface TaskStarter<Output> {
         public <TX, PO extends ActiveOperation<TX>> void start(
             BaseProcessor<?, PO, TX> processor, PO operation, TerminalHandler<Void> handler) {
           processor.inTransaction(
+              operation,
               tx -> {
                 operation.status(OperationStatus.FAILED, tx);
                 operation.recoveryState(processor.mapper().valueToTree(e.getMessage()), tx);
@@ -124,7 +125,11 @@ interface TaskStarter<Output> {
       public <TX, PO extends ActiveOperation<TX>> void start(
           BaseProcessor<?, PO, TX> processor, PO operation, TerminalHandler<Output> handler) {
         processor.scheduleTask(
-            () -> launcher.launch(operation, processor, processor.createNext(operation, handler)));
+            () ->
+                launcher.launch(
+                    operation,
+                    processor.transactionManager(operation),
+                    processor.createNext(operation, handler)));
       }
 
       @Override
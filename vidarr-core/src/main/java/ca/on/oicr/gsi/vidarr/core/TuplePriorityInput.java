@@ -6,7 +6,9 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.NullNode;
 import io.undertow.server.HttpHandler;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public final class TuplePriorityInput implements PriorityInput {
 
@@ -21,6 +23,12 @@ public final class TuplePriorityInput implements PriorityInput {
         input.has(0) ? input.get(0) : NullNode.getInstance());
   }
 
+  @Override
+  public CompletableFuture<?> prefetch(List<JsonNode> inputs) {
+    return inner.prefetch(
+        inputs.stream().filter(input -> input.has(0)).map(input -> input.get(0)).toList());
+  }
+
   public PriorityInput getInner() {
     return inner;
   }
@@ -0,0 +1,116 @@
+package ca.on.oicr.gsi.vidarr.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScoreIndexTest {
+  private record Score(String id, int priority) implements Comparable<Score> {
+    // Highest priority first, like the priority scorers; ties are broken by identifier
+    private static final Comparator<Score> ORDER =
+        Comparator.comparingInt(Score::priority).reversed().thenComparing(Score::id);
+
+    @Override
+    public int compareTo(Score other) {
+      return ORDER.compare(this, other);
+    }
+  }
+
+  private static void check(Map<String, Score> expected, ScoreIndex<Score> index) {
+    final List<Score> sorted = new ArrayList<>(expected.values());
+    sorted.sort(null);
+    Assert.assertEquals(sorted.size(), index.size());
+    Assert.assertEquals(sorted.isEmpty(), index.isEmpty());
+    Assert.assertEquals(sorted, index.stream().toList());
+    for (int priority = -1; priority <= 11; priority++) {
+      final int threshold = priority;
+      Assert.assertEquals(
+          sorted.stream().filter(s -> s.priority() > threshold).count(),
+          index.countPrefix(s -> s.priority() > threshold));
+    }
+  }
+
+  private static ScoreIndex<Score> create() {
+    return new ScoreIndex<>(Score::id);
+  }
+
+  @Test
+  public void testDuplicatePrioritiesAreKept() {
+    final ScoreIndex<Score> index = create();
+    index.put(new Score("b", 5));
+    index.put(new Score("a", 5));
+    index.put(new Score("c", 5));
+    Assert.assertEquals(
+        List.of(new Score("a", 5), new Score("b", 5), new Score("c", 5)), index.stream().toList());
+    Assert.assertEquals(3, index.countPrefix(s -> s.priority() >= 5));
+    Assert.assertEquals(Optional.of(new Score("b", 5)), index.remove("b"));
+    Assert.assertEquals(List.of(new Score("a", 5), new Score("c", 5)), index.stream().toList());
+  }
+
+  @Test
+  public void testEmpty() {
+    final ScoreIndex<Score> index = create();
+    Assert.assertTrue(index.isEmpty());
+    Assert.assertEquals(0, index.size());
+    Assert.assertEquals(0, index.countPrefix(s -> true));
+    Assert.assertEquals(Optional.empty(), index.get("a"));
+    Assert.assertEquals(Optional.empty(), index.remove("a"));
+    Assert.assertFalse(index.iterator().hasNext());
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    final ScoreIndex<Score> index = create();
+    for (int i = 0; i < 10; i++) {
+      index.put(new Score("run" + i, i));
+    }
+    final Iterator<Score> iterator = index.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().priority() % 2 == 0) {
+        iterator.remove();
+      }
+    }
+    Assert.assertEquals(List.of(9, 7, 5, 3, 1), index.stream().map(Score::priority).toList());
+    Assert.assertEquals(Optional.empty(), index.get("run4"));
+  }
+
+  @Test
+  public void testPutReplaces() {
+    final ScoreIndex<Score> index = create();
+    Assert.assertEquals(Optional.empty(), index.put(new Score("a", 1)));
+    index.put(new Score("b", 2));
+    Assert.assertEquals(Optional.of(new Score("a", 1)), index.put(new Score("a", 3)));
+    Assert.assertEquals(2, index.size());
+    Assert.assertEquals(Optional.of(new Score("a", 3)), index.get("a"));
+    Assert.assertEquals(List.of(new Score("a", 3), new Score("b", 2)), index.stream().toList());
+  }
+
+  @Test
+  public void testRandomOperationsMatchSortedList() {
+    final Random random = new Random(42);
+    final ScoreIndex<Score> index = create();
+    final Map<String, Score> expected = new HashMap<>();
+    for (int i = 0; i < 5000; i++) {
+      final String id = "run" + random.nextInt(200);
+      if (random.nextInt(3) == 0) {
+        Assert.assertEquals(Optional.ofNullable(expected.remove(id)), index.remove(id));
+      } else {
+        // A small range of priorities, so there are many ties
+        final Score score = new Score(id, random.nextInt(10));
+        Assert.assertEquals(Optional.ofNullable(expected.put(id, score)), index.put(score));
+      }
+      Assert.assertEquals(Optional.ofNullable(expected.get(id)), index.get(id));
+      if (i % 50 == 0) {
+        check(expected, index);
+      }
+    }
+    check(expected, index);
+  }
+}
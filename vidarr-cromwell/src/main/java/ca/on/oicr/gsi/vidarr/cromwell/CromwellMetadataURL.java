@@ -1,6 +1,8 @@
 package ca.on.oicr.gsi.vidarr.cromwell;
 
 import java.net.URI;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Heavily multithreaded Cromwell workflow runs have such a large 'calls' block that requesting it
@@ -10,6 +12,32 @@ import java.net.URI;
  * WorkflowEngine and OutputProvisioner use configuration to control this behaviour.
  */
 final class CromwellMetadataURL {
+  // The keys that WorkflowMetadataResponse reads; Cromwell always includes the workflow ID and, for
+  // each call, the attempt and shard index
+  private static final String CHECK_KEYS =
+      Stream.of("status", "workflowRoot", "failures")
+          .map(key -> "includeKey=" + key)
+          .collect(Collectors.joining("&"));
+  private static final String CHECK_CALL_KEYS =
+      Stream.of("executionStatus", "backend", "jobId", "returnCode", "stderr", "stdout")
+          .map(key -> "&includeKey=" + key)
+          .collect(Collectors.joining());
+
+  /**
+   * Create a URL to fetch only the metadata needed to check on a workflow run
+   *
+   * @param rootUrl the Cromwell server
+   * @param cromwellId the Cromwell workflow ID
+   * @param includeCalls whether to include the summary of each call used for debugging
+   * @return the URL
+   */
+  static URI formatCheckURL(String rootUrl, String cromwellId, boolean includeCalls) {
+    return URI.create(
+        String.format(
+            "%s/api/workflows/v1/%s/metadata?%s%s&expandSubWorkflows=false",
+            rootUrl, cromwellId, CHECK_KEYS, includeCalls ? CHECK_CALL_KEYS : ""));
+  }
+
   protected static URI formatMetadataURL(String rootUrl, String cromwellId, boolean includeCalls) {
     String metadataAPIformat = "%s/api/workflows/v1/%s/metadata";
 
@@ -2,11 +2,13 @@ package ca.on.oicr.gsi.vidarr.cromwell;
 
 import static ca.on.oicr.gsi.vidarr.OperationAction.load;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.log;
+import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.mapping;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.onInnerState;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.poll;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.repeatUntilSuccess;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.subStep;
 import static ca.on.oicr.gsi.vidarr.OperationStep.debugInfo;
+import static ca.on.oicr.gsi.vidarr.OperationStep.future;
 import static ca.on.oicr.gsi.vidarr.OperationStep.getJson;
 import static ca.on.oicr.gsi.vidarr.OperationStep.handleHttpResponseCode;
 import static ca.on.oicr.gsi.vidarr.OperationStep.http;
@@ -15,14 +17,20 @@ import static ca.on.oicr.gsi.vidarr.OperationStep.monitorWhen;
 import static ca.on.oicr.gsi.vidarr.OperationStep.requirePresent;
 import static ca.on.oicr.gsi.vidarr.OperationStep.sleep;
 import static ca.on.oicr.gsi.vidarr.OperationStep.status;
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.BULKHEAD;
 import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.CROMWELL_FAILURES;
 import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.MAPPER;
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.POLL_POLICY;
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.STATUS_POLLER;
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.acknowledgeStatus;
 import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.statusFromCromwell;
 
 import ca.on.oicr.gsi.Pair;
 import ca.on.oicr.gsi.status.SectionRenderer;
 import ca.on.oicr.gsi.vidarr.BasicType;
+import ca.on.oicr.gsi.vidarr.HttpBulkheadSettings;
 import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
+import ca.on.oicr.gsi.vidarr.MultiPartBodyPublisher;
 import ca.on.oicr.gsi.vidarr.OperationAction;
 import ca.on.oicr.gsi.vidarr.OperationStatefulStep;
 import ca.on.oicr.gsi.vidarr.OperationStatefulStep.Child;
@@ -31,13 +39,19 @@ import ca.on.oicr.gsi.vidarr.OperationStep;
 import ca.on.oicr.gsi.vidarr.OutputProvisionFormat;
 import ca.on.oicr.gsi.vidarr.OutputProvisioner;
 import ca.on.oicr.gsi.vidarr.OutputProvisionerProvider;
+import ca.on.oicr.gsi.vidarr.PollSettings;
 import ca.on.oicr.gsi.vidarr.WorkingStatus;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
 import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.http.HttpRequest;
 import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 /**
@@ -85,6 +99,10 @@ public class CromwellOutputProvisioner
     return () -> Stream.of(new Pair<>("cromwell", CromwellOutputProvisioner.class));
   }
 
+  private ProvisionBatcher batcher;
+  private int batchSize;
+  private int batchWindow = 30;
+  private HttpBulkheadSettings bulkhead;
   private int[] chunks;
   private String cromwellUrl;
   private boolean debugCalls;
@@ -94,7 +112,9 @@ public class CromwellOutputProvisioner
   private String inputChecksumField;
   private String inputChecksumTypeField;
   private String checksumTypeField;
+  private Integer maxDebugCalls;
   private String outputPrefixField;
+  private PollSettings poll;
   private String storagePathField;
   private String wdlVersion;
   private ObjectNode workflowOptions = MAPPER.createObjectNode();
@@ -119,6 +139,10 @@ public class CromwellOutputProvisioner
     sectionRenderer.line("Output Parameter for Checksum Type", checksumTypeField);
     sectionRenderer.line("Provision Out WDL Workflow Version", wdlVersion);
     sectionRenderer.link("Cromwell Instance", cromwellUrl, cromwellUrl);
+    if (batchSize > 1) {
+      sectionRenderer.line("Maximum Files per Batch", Integer.toString(batchSize));
+      sectionRenderer.line("Batch Window (seconds)", Integer.toString(batchWindow));
+    }
     if (workflowSource == null) {
       sectionRenderer.link("Provision Out Workflow", workflowUrl, workflowUrl);
     } else {
@@ -127,12 +151,12 @@ public class CromwellOutputProvisioner
   }
 
   private OutputProvisioner.Result extractOutput(
-      Child<RepeatCounter<ProvisionState>, ?> state, WorkflowOutputResponse result) {
+      Child<RepeatCounter<ProvisionState>, ?> state, ObjectNode outputs) {
     return Result.file(
-        result.getOutputs().get(storagePathField).asText(),
-        result.getOutputs().get(checksumField).asText(),
-        result.getOutputs().get(checksumTypeField).asText(),
-        Long.parseLong(result.getOutputs().get(fileSizeField).asText()),
+        outputs.get(storagePathField).asText(),
+        outputs.get(checksumField).asText(),
+        outputs.get(checksumTypeField).asText(),
+        Long.parseLong(outputs.get(fileSizeField).asText()),
         EXTENSION_TO_META_TYPE.stream()
             .filter(p -> state.loadInner(ProvisionState.class).fileName().endsWith(p.first()))
             .findFirst()
@@ -140,6 +164,18 @@ public class CromwellOutputProvisioner
             .orElseThrow());
   }
 
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public int getBatchWindow() {
+    return batchWindow;
+  }
+
+  public HttpBulkheadSettings getBulkhead() {
+    return bulkhead;
+  }
+
   public String getChecksumField() {
     return checksumField;
   }
@@ -176,6 +212,10 @@ public class CromwellOutputProvisioner
     return outputPrefixField;
   }
 
+  public PollSettings getPoll() {
+    return poll;
+  }
+
   public String getStoragePathField() {
     return storagePathField;
   }
@@ -207,36 +247,77 @@ public class CromwellOutputProvisioner
     return new ProvisionState(cromwellUrl, data, metadata, workflowRunId);
   }
 
+  private CompletableFuture<Void> awaitStatusChange(ProvisionStarted state) {
+    // The bulk query only reports the workflow's status, so if the user wants to see the progress
+    // of in-flight calls, the full metadata has to be fetched every time
+    return debugCalls
+        ? CompletableFuture.completedFuture(null)
+        : STATUS_POLLER.awaitChange(state.cromwellServer(), state.cromwellId());
+  }
+
   @Override
   public OperationAction<?, ProvisionState, OutputProvisioner.Result> build() {
-    return load(ProvisionState.class, (state) -> state.buildLaunchRequest(this))
-        .then(http(new JsonBodyHandler<>(MAPPER, WorkflowStatusResponse.class)))
-        .then(
-            log(
-                Level.INFO,
-                (response) ->
-                    String.format("Got response %d on %s", response.statusCode(), cromwellUrl)))
-        .then(monitorWhen(CROMWELL_FAILURES, OperationStep::isHttpNotOk, cromwellUrl))
-        .then(handleHttpResponseCode())
-        .then(repeatUntilSuccess(Duration.ofMinutes(10), 5))
-        .then(getJson())
-        .map(result -> Optional.ofNullable(result.getId()).filter(id -> !id.equals("null")))
-        .then(requirePresent())
+    final OperationAction<RepeatCounter<ProvisionState>, ProvisionState, ProvisionStarted> launch =
+        batcher == null
+            ? load(ProvisionState.class, (state) -> state.buildLaunchRequest(this))
+                .then(http(BULKHEAD, new JsonBodyHandler<>(MAPPER, WorkflowStatusResponse.class)))
+                .then(
+                    log(
+                        Level.INFO,
+                        (response) ->
+                            String.format(
+                                "Got response %d on %s", response.statusCode(), cromwellUrl)))
+                .then(monitorWhen(CROMWELL_FAILURES, OperationStep::isHttpNotOk, cromwellUrl))
+                .then(handleHttpResponseCode())
+                .then(repeatUntilSuccess(Duration.ofMinutes(10), 5))
+                .then(getJson())
+                .map(result -> Optional.ofNullable(result.getId()).filter(id -> !id.equals("null")))
+                .then(requirePresent())
+                .then(mapping(onInnerState(ProvisionState.class, ProvisionState::checkTask)))
+            : load(ProvisionState.class, batcher::submit)
+                .then(future())
+                .then(
+                    log(
+                        Level.INFO,
+                        (launched) ->
+                            String.format(
+                                "Got response %d on %s",
+                                launched.response().statusCode(),
+                                cromwellUrl)))
+                .then(
+                    monitorWhen(
+                        CROMWELL_FAILURES,
+                        launched -> OperationStep.isHttpNotOk(launched.response()),
+                        cromwellUrl))
+                .map(launched -> launched.started(cromwellUrl))
+                .then(repeatUntilSuccess(Duration.ofMinutes(10), 5));
+    return launch
         .then(status(WorkingStatus.QUEUED))
         .then(
             log(
                 Level.INFO,
-                id -> String.format("Started Cromwell provision-out %s on %s", id, cromwellUrl)))
+                started ->
+                    String.format(
+                        "Started Cromwell provision-out %s on %s",
+                        started.cromwellId(), cromwellUrl)))
         .then(sleep(Duration.ofSeconds(30)))
         .then(
             OperationStatefulStep.subStep(
-                onInnerState(ProvisionState.class, ProvisionState::checkTask),
-                load(StateStarted.class, (state) -> state.buildCheckRequest(debugCalls))
-                    .then(http(new JsonBodyHandler<>(MAPPER, WorkflowMetadataResponse.class)))
+                (state, started) -> started,
+                load(ProvisionStarted.class, this::awaitStatusChange)
+                    .then(future())
+                    .reload(state -> state.buildCheckRequest(debugCalls))
+                    .then(http(BULKHEAD, new WorkflowMetadataBodyHandler(maxDebugCalls)))
                     .then(monitorWhen(CROMWELL_FAILURES, OperationStep::isHttpNotOk, cromwellUrl))
                     .then(handleHttpResponseCode())
                     .then(repeatUntilSuccess(Duration.ofMinutes(5), 5))
                     .then(getJson())
+                    .then(
+                        mapping(
+                            onInnerState(
+                                ProvisionStarted.class,
+                                (state, response) ->
+                                    acknowledgeStatus(state.started(), response))))
                     .then(debugInfo(WorkflowMetadataResponse::debugInfo))
                     .then(
                         log(
@@ -244,18 +325,19 @@ public class CromwellOutputProvisioner
                             (state, response) ->
                                 String.format(
                                     "Status of Cromwell provision-out %s on %s: %s",
-                                    state.loadInner(StateStarted.class).cromwellId(),
-                                    state.loadInner(StateStarted.class).cromwellServer(),
+                                    state.loadInner(ProvisionStarted.class).cromwellId(),
+                                    state.loadInner(ProvisionStarted.class).cromwellServer(),
                                     response.getStatus())))
                     .then(status(response -> statusFromCromwell(response.getStatus())))
                     .map(WorkflowMetadataResponse::pollStatus)
-                    .then(poll(Duration.ofMinutes(5)))
+                    .then(poll(POLL_POLICY.configure(poll)))
                     .then(
                         subStep(
-                            (state, input) -> state.loadInner(StateStarted.class),
-                            load(StateStarted.class, StateStarted::buildOutputsRequest)
+                            (state, input) -> state.loadInner(ProvisionStarted.class),
+                            load(ProvisionStarted.class, ProvisionStarted::buildOutputsRequest)
                                 .then(
                                     http(
+                                        BULKHEAD,
                                         new JsonBodyHandler<>(
                                             MAPPER, WorkflowOutputResponse.class)))
                                 .then(
@@ -263,15 +345,58 @@ public class CromwellOutputProvisioner
                                         CROMWELL_FAILURES, OperationStep::isHttpNotOk, cromwellUrl))
                                 .then(handleHttpResponseCode())
                                 .then(repeatUntilSuccess(Duration.ofMinutes(5), 5))
-                                .then(getJson())))))
+                                .then(getJson())
+                                .then(
+                                    mapping(
+                                        onInnerState(
+                                            ProvisionStarted.class,
+                                            ProvisionStarted::selectOutputs)))))))
         .map(this::extractOutput);
   }
 
+  HttpRequest buildLaunchRequest(String cromwellUrl, String vidarrId, Object workflowInputs)
+      throws IOException {
+    final MultiPartBodyPublisher body =
+        new MultiPartBodyPublisher()
+            .addPart(
+                workflowUrl == null ? "workflowSource" : "workflowUrl",
+                workflowUrl == null ? workflowSource : workflowUrl)
+            .addPart("workflowType", "WDL")
+            .addPart("workflowTypeVersion", wdlVersion)
+            .addPart(
+                "labels",
+                MAPPER.writeValueAsString(
+                    vidarrId == null
+                        ? Collections.emptyMap()
+                        : Collections.singletonMap(
+                            "vidarr-id", vidarrId.substring(Math.max(0, vidarrId.length() - 255)))))
+            .addPart("workflowInputs", MAPPER.writeValueAsString(workflowInputs))
+            .addPart("workflowOptions", MAPPER.writeValueAsString(workflowOptions));
+    return HttpRequest.newBuilder()
+        .uri(URI.create(String.format("%s/api/workflows/v1", cromwellUrl)))
+        .timeout(Duration.ofMinutes(1))
+        .header("Content-Type", body.getContentType())
+        .POST(body.build())
+        .build();
+  }
+
   @Override
   public OperationAction<?, PreflightState, Boolean> buildPreflight() {
     return OperationAction.value(PreflightState.class, true);
   }
 
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public void setBatchWindow(int batchWindow) {
+    this.batchWindow = batchWindow;
+  }
+
+  public void setBulkhead(HttpBulkheadSettings bulkhead) {
+    this.bulkhead = bulkhead;
+  }
+
   public void setChecksumField(String checksumField) {
     this.checksumField = checksumField;
   }
@@ -308,10 +433,18 @@ public class CromwellOutputProvisioner
     this.inputChecksumTypeField = inputChecksumTypeField;
   }
 
+  public void setMaxDebugCalls(Integer maxDebugCalls) {
+    this.maxDebugCalls = maxDebugCalls;
+  }
+
   public void setOutputPrefixField(String outputPrefixField) {
     this.outputPrefixField = outputPrefixField;
   }
 
+  public void setPoll(PollSettings poll) {
+    this.poll = poll;
+  }
+
   public void setStoragePathField(String storagePathField) {
     this.storagePathField = storagePathField;
   }
@@ -339,6 +472,14 @@ public class CromwellOutputProvisioner
           "One of workflowUrl or workflowSource must be supplied to Cromwell provision out"
               + " plugin.");
     }
+    if (batchSize > 1) {
+      if (batchWindow < 1) {
+        throw new IllegalArgumentException(
+            "The batch window for Cromwell provision out plugin must be at least 1 second.");
+      }
+      batcher = ProvisionBatcher.create(this);
+    }
+    BULKHEAD.configure(cromwellUrl, bulkhead);
   }
 
   @Override
@@ -3,11 +3,13 @@ package ca.on.oicr.gsi.vidarr.cromwell;
 import static ca.on.oicr.gsi.vidarr.OperationAction.load;
 import static ca.on.oicr.gsi.vidarr.OperationAction.value;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.log;
+import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.mapping;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.onInnerState;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.poll;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.repeatUntilSuccess;
 import static ca.on.oicr.gsi.vidarr.OperationStatefulStep.subStep;
 import static ca.on.oicr.gsi.vidarr.OperationStep.debugInfo;
+import static ca.on.oicr.gsi.vidarr.OperationStep.future;
 import static ca.on.oicr.gsi.vidarr.OperationStep.getJson;
 import static ca.on.oicr.gsi.vidarr.OperationStep.handleHttpResponseCode;
 import static ca.on.oicr.gsi.vidarr.OperationStep.http;
@@ -20,22 +22,33 @@ import static ca.on.oicr.gsi.vidarr.OperationStep.status;
 import ca.on.oicr.gsi.Pair;
 import ca.on.oicr.gsi.status.SectionRenderer;
 import ca.on.oicr.gsi.vidarr.BasicType;
+import ca.on.oicr.gsi.vidarr.BatchPoller;
+import ca.on.oicr.gsi.vidarr.HttpBulkhead;
+import ca.on.oicr.gsi.vidarr.HttpBulkheadSettings;
 import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
 import ca.on.oicr.gsi.vidarr.OperationAction;
 import ca.on.oicr.gsi.vidarr.OperationStep;
+import ca.on.oicr.gsi.vidarr.PollPolicy;
+import ca.on.oicr.gsi.vidarr.PollSettings;
 import ca.on.oicr.gsi.vidarr.WorkflowEngine;
 import ca.on.oicr.gsi.vidarr.WorkflowEngineProvider;
 import ca.on.oicr.gsi.vidarr.WorkflowLanguage;
 import ca.on.oicr.gsi.vidarr.WorkingStatus;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.prometheus.client.Counter;
 import java.lang.System.Logger.Level;
+import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
 import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.xml.stream.XMLStreamException;
@@ -43,6 +56,12 @@ import javax.xml.stream.XMLStreamException;
 /** Run workflows using Cromwell */
 public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstarted, CleanupState> {
 
+  // Requests to each Cromwell server are limited and paused while the server is failing, so that
+  // retries from every operation do not pile onto a server that is already struggling. The limits
+  // are shared by every plugin talking to the same server and can be changed in their
+  // configuration.
+  static final HttpBulkhead BULKHEAD =
+      HttpBulkhead.create("cromwell", 20, 5, Duration.ofMinutes(1));
   private static final int CHECK_DELAY = 1;
   static final HttpClient CLIENT =
       HttpClient.newBuilder()
@@ -63,11 +82,67 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
           .labelNames("target")
           .register();
   static final ObjectMapper MAPPER = new ObjectMapper();
+  // Long-running workflows are checked less often, and jitter keeps workflows launched together
+  // from being checked together; this can be changed in the plugin configuration
+  static final PollPolicy POLL_POLICY =
+      PollPolicy.backoff(Duration.ofMinutes(2), Duration.ofMinutes(20)).withJitter(0.2);
+  static final BatchPoller<String, String, String> STATUS_POLLER =
+      new BatchPoller<>(
+          "cromwell",
+          Duration.ofMinutes(1),
+          Duration.ofHours(1),
+          500,
+          CromwellWorkflowEngine::queryStatuses);
+
+  static WorkflowMetadataResponse acknowledgeStatus(
+      StateStarted state, WorkflowMetadataResponse response) {
+    switch (response.getStatus()) {
+      case "Aborted", "Failed", "Succeeded" -> STATUS_POLLER.forget(
+          state.cromwellServer(), state.cromwellId());
+      default -> STATUS_POLLER.acknowledge(
+          state.cromwellServer(), state.cromwellId(), response.getStatus());
+    }
+    return response;
+  }
 
   public static WorkflowEngineProvider provider() {
     return () -> Stream.of(new Pair<>("cromwell", CromwellWorkflowEngine.class));
   }
 
+  private static CompletableFuture<Map<String, String>> queryStatuses(
+      String cromwellServer, Set<String> cromwellIds) throws JsonProcessingException {
+    final var body = MAPPER.createArrayNode();
+    for (final var cromwellId : cromwellIds) {
+      body.addObject().put("id", cromwellId);
+    }
+    body.addObject().put("includeSubworkflows", "false");
+    return BULKHEAD
+        .send(
+            CLIENT,
+            HttpRequest.newBuilder()
+                .uri(URI.create(String.format("%s/api/workflows/v1/query", cromwellServer)))
+                .timeout(Duration.ofMinutes(1))
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(body)))
+                .build(),
+            new JsonBodyHandler<>(MAPPER, WorkflowQueryResponse.class))
+        .thenApply(
+            response -> {
+              if (OperationStep.isHttpNotOk(response)) {
+                CROMWELL_FAILURES.labels(cromwellServer).inc();
+                throw new IllegalStateException(
+                    String.format(
+                        "Cromwell query on %s returned %d", cromwellServer, response.statusCode()));
+              }
+              return response.body().get().getResults().stream()
+                  .collect(
+                      Collectors.toMap(
+                          WorkflowQueryResponse.Result::getId,
+                          WorkflowQueryResponse.Result::getStatus,
+                          (a, b) -> a));
+            });
+  }
+
   static WorkingStatus statusFromCromwell(String status) {
     return switch (status) {
       case "On Hold" -> WorkingStatus.WAITING;
@@ -77,13 +152,25 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
     };
   }
 
+  private HttpBulkheadSettings bulkhead;
   // TODO Optimally, this would be Optional<Boolean>
   private boolean debugInflightRuns;
   private Map<String, BasicType> engineParameters;
+  private Integer maxDebugCalls;
+  private PollSettings poll;
   private String url;
+  private Map<String, PollSettings> workflowPoll = Map.of();
 
   public CromwellWorkflowEngine() {}
 
+  private CompletableFuture<Void> awaitStatusChange(StateStarted state) {
+    // The bulk query only reports the workflow's status, so if the user wants to see the progress
+    // of in-flight calls, the full metadata has to be fetched every time
+    return debugInflightRuns
+        ? CompletableFuture.completedFuture(null)
+        : STATUS_POLLER.awaitChange(state.cromwellServer(), state.cromwellId());
+  }
+
   @Override
   public OperationAction<?, CleanupState, Void> cleanup() {
     return value(CleanupState.class, null);
@@ -92,6 +179,8 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
   @Override
   public void configuration(SectionRenderer sectionRenderer) throws XMLStreamException {
     sectionRenderer.link("Server", url, url);
+    sectionRenderer.line(
+        "Circuit Breaker", BULKHEAD.isOpen(URI.create(url)) ? "Open (paused)" : "Closed");
   }
 
   @Override
@@ -103,14 +192,26 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
                     fields.entrySet().stream().map(e -> new Pair<>(e.getKey(), e.getValue()))));
   }
 
+  public HttpBulkheadSettings getBulkhead() {
+    return bulkhead;
+  }
+
+  public PollSettings getPoll() {
+    return poll;
+  }
+
   public String getUrl() {
     return url;
   }
 
+  public Map<String, PollSettings> getWorkflowPoll() {
+    return workflowPoll;
+  }
+
   @Override
   public OperationAction<?, StateUnstarted, Result<CleanupState>> build() {
     return load(StateUnstarted.class, StateUnstarted::buildLaunchRequest)
-        .then(http(new JsonBodyHandler<>(MAPPER, WorkflowStatusResponse.class)))
+        .then(http(BULKHEAD, new JsonBodyHandler<>(MAPPER, WorkflowStatusResponse.class)))
         .then(
             log(
                 Level.INFO,
@@ -134,12 +235,18 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
         .then(
             subStep(
                 onInnerState(StateUnstarted.class, StateUnstarted::checkTask),
-                load(StateStarted.class, (state) -> state.buildCheckRequest(debugInflightRuns))
-                    .then(http(new JsonBodyHandler<>(MAPPER, WorkflowMetadataResponse.class)))
+                load(StateStarted.class, this::awaitStatusChange)
+                    .then(future())
+                    .reload(state -> state.buildCheckRequest(debugInflightRuns))
+                    .then(http(BULKHEAD, new WorkflowMetadataBodyHandler(maxDebugCalls)))
                     .then(monitorWhen(CROMWELL_FAILURES, OperationStep::isHttpNotOk, url))
                     .then(handleHttpResponseCode())
                     .then(repeatUntilSuccess(Duration.ofMinutes(5), 5))
                     .then(getJson())
+                    .then(
+                        mapping(
+                            onInnerState(
+                                StateStarted.class, CromwellWorkflowEngine::acknowledgeStatus)))
                     .then(debugInfo(WorkflowMetadataResponse::debugInfo))
                     .then(
                         log(
@@ -152,13 +259,14 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
                                     response.getStatus())))
                     .then(status(response -> statusFromCromwell(response.getStatus())))
                     .map(WorkflowMetadataResponse::pollStatus)
-                    .then(poll(Duration.ofMinutes(5)))
+                    .then(poll(state -> pollPolicy(state.loadInner(StateStarted.class))))
                     .then(
                         subStep(
                             (state, input) -> state.loadInner(StateStarted.class),
                             load(StateStarted.class, StateStarted::buildOutputsRequest)
                                 .then(
                                     http(
+                                        BULKHEAD,
                                         new JsonBodyHandler<>(
                                             MAPPER, WorkflowOutputResponse.class)))
                                 .then(
@@ -176,6 +284,10 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
                                             Optional.empty()))))));
   }
 
+  public void setBulkhead(HttpBulkheadSettings bulkhead) {
+    this.bulkhead = bulkhead;
+  }
+
   public void setDebugInflightRuns(boolean debugInflightRuns) {
     this.debugInflightRuns = debugInflightRuns;
   }
@@ -184,10 +296,28 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
     this.engineParameters = engineParameters;
   }
 
+  public void setMaxDebugCalls(Integer maxDebugCalls) {
+    this.maxDebugCalls = maxDebugCalls;
+  }
+
+  public void setPoll(PollSettings poll) {
+    this.poll = poll;
+  }
+
   public void setUrl(String url) {
     this.url = url;
   }
 
+  public void setWorkflowPoll(Map<String, PollSettings> workflowPoll) {
+    this.workflowPoll = workflowPoll;
+  }
+
+  private PollPolicy pollPolicy(StateStarted state) {
+    return POLL_POLICY
+        .configure(poll)
+        .configure(state.workflowName() == null ? null : workflowPoll.get(state.workflowName()));
+  }
+
   @Override
   public StateUnstarted prepareInput(
       WorkflowLanguage workflowLanguage,
@@ -224,7 +354,7 @@ public final class CromwellWorkflowEngine implements WorkflowEngine<StateUnstart
 
   @Override
   public void startup() {
-    // Always ok
+    BULKHEAD.configure(url, bulkhead);
   }
 
   @Override
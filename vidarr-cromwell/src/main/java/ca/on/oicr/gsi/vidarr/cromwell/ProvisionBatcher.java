@@ -0,0 +1,244 @@
+package ca.on.oicr.gsi.vidarr.cromwell;
+
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.BULKHEAD;
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.CLIENT;
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.CROMWELL_FAILURES;
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.MAPPER;
+
+import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
+import ca.on.oicr.gsi.vidarr.OperationStep;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import io.prometheus.client.Counter;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Collects files to be provisioned out and launches them together as a single Cromwell workflow
+ *
+ * <p>Files are only batched with other files from the same Vidarr workflow run. A batch is launched
+ * once it reaches the maximum size or once the batch window has elapsed since the first file was
+ * added, whichever comes first. Every input field of the batch workflow is an array with one
+ * element per file, in the same order, and the workflow's outputs must be arrays in that order too.
+ *
+ * <p>If a batch of several files can't be launched, each file is relaunched as a batch of its own,
+ * so one bad file, or a transient failure, only affects that file. The response for each file is
+ * handed back to its workflow run, which logs and monitors it like an unbatched launch and
+ * resubmits the file if it failed. If the batch workflow fails once it is running, every file in
+ * it fails; since they all belong to the same workflow run, that is no worse than one file failing.
+ */
+final class ProvisionBatcher {
+  /** Sends a batch of files to Cromwell */
+  interface Launcher {
+    /**
+     * Send a workflow that provisions out a batch of files
+     *
+     * @param batch the files, all from the same workflow run
+     * @return Cromwell's response
+     */
+    CompletableFuture<HttpResponse<Supplier<WorkflowStatusResponse>>> launch(
+        List<ProvisionState> batch) throws Exception;
+  }
+
+  /**
+   * The response from Cromwell for the batch containing a file
+   *
+   * @param response the HTTP response from Cromwell
+   * @param batchIndex the position of the file in the batch
+   */
+  record Launched(HttpResponse<Supplier<WorkflowStatusResponse>> response, int batchIndex) {
+
+    /**
+     * Get the launched workflow
+     *
+     * @param cromwellUrl the Cromwell server the batch was sent to
+     * @return the workflow information for this file
+     * @throws IllegalStateException if Cromwell rejected the batch or did not return an ID
+     */
+    ProvisionStarted started(String cromwellUrl) {
+      if (OperationStep.isHttpNotOk(response)) {
+        throw new IllegalStateException(
+            String.format(
+                "Cromwell provision-out batch on %s returned %d",
+                cromwellUrl, response.statusCode()));
+      }
+      final String id = response.body().get().getId();
+      if (id == null || id.equals("null")) {
+        throw new IllegalStateException(
+            String.format(
+                "Cromwell provision-out batch on %s did not return an ID", cromwellUrl));
+      }
+      return new ProvisionStarted(id, cromwellUrl, batchIndex);
+    }
+  }
+
+  private record Pending(ProvisionState state, CompletableFuture<Launched> future) {}
+
+  private static final Counter batchFiles =
+      Counter.build(
+              "vidarr_cromwell_provision_batch_files",
+              "The number of files launched in batched provision-out workflows")
+          .labelNames("target")
+          .register();
+  private static final Counter batchLaunches =
+      Counter.build(
+              "vidarr_cromwell_provision_batches",
+              "The number of batched provision-out workflows launched")
+          .labelNames("target")
+          .register();
+  private static final Counter batchRetries =
+      Counter.build(
+              "vidarr_cromwell_provision_batch_retries",
+              "The number of batched provision-out workflows that failed to launch and were"
+                  + " relaunched one file at a time")
+          .labelNames("target")
+          .register();
+
+  /**
+   * Create a batcher that launches batches using a provisioner's settings
+   *
+   * @param provisioner the provisioner that owns the batcher
+   * @return the batcher
+   */
+  static ProvisionBatcher create(CromwellOutputProvisioner provisioner) {
+    final String cromwellUrl = provisioner.getCromwellUrl();
+    return new ProvisionBatcher(
+        cromwellUrl,
+        provisioner.getBatchSize(),
+        Duration.ofSeconds(provisioner.getBatchWindow()),
+        batch -> {
+          final ArrayNode files = MAPPER.createArrayNode();
+          final ArrayNode outputPrefixes = MAPPER.createArrayNode();
+          final ArrayNode checksums = MAPPER.createArrayNode();
+          final ArrayNode checksumTypes = MAPPER.createArrayNode();
+          boolean hasChecksums = false;
+          for (final ProvisionState state : batch) {
+            final OutputMetadata outputMetadata = state.outputMetadata();
+            files.add(state.fileName());
+            outputPrefixes.add(state.outputPrefix(provisioner.getChunks()));
+            if (outputMetadata.getFileChecksum() != null
+                && outputMetadata.getFileChecksumType() != null) {
+              hasChecksums = true;
+              checksums.add(outputMetadata.getFileChecksum());
+              checksumTypes.add(outputMetadata.getFileChecksumType());
+            } else {
+              checksums.addNull();
+              checksumTypes.addNull();
+            }
+          }
+          final var workflowInputs = MAPPER.createObjectNode();
+          workflowInputs.set(provisioner.getFileField(), files);
+          workflowInputs.set(provisioner.getOutputPrefixField(), outputPrefixes);
+          if (hasChecksums) {
+            workflowInputs.set(provisioner.getInputChecksumField(), checksums);
+            workflowInputs.set(provisioner.getInputChecksumTypeField(), checksumTypes);
+          }
+          return BULKHEAD.send(
+              CLIENT,
+              provisioner.buildLaunchRequest(
+                  cromwellUrl, batch.get(0).vidarrId(), workflowInputs),
+              new JsonBodyHandler<>(MAPPER, WorkflowStatusResponse.class));
+        });
+  }
+
+  private static boolean failed(
+      HttpResponse<Supplier<WorkflowStatusResponse>> response, Throwable throwable) {
+    if (throwable != null || OperationStep.isHttpNotOk(response)) {
+      return true;
+    }
+    final String id = response.body().get().getId();
+    return id == null || id.equals("null");
+  }
+
+  private final int batchSize;
+  private final Duration batchWindow;
+  private final Launcher launcher;
+  private final Map<String, List<Pending>> pending = new HashMap<>();
+  private final String target;
+
+  ProvisionBatcher(String target, int batchSize, Duration batchWindow, Launcher launcher) {
+    this.target = target;
+    this.batchSize = batchSize;
+    this.batchWindow = batchWindow;
+    this.launcher = launcher;
+  }
+
+  private void launch(List<Pending> batch) {
+    batchLaunches.labels(target).inc();
+    batchFiles.labels(target).inc(batch.size());
+    try {
+      launcher
+          .launch(batch.stream().map(Pending::state).toList())
+          .whenComplete(
+              (response, throwable) -> {
+                // Rejected responses for a single file are counted by the workflow run that owns
+                // it, but exceptions never reach it as a response
+                if (throwable != null
+                    || batch.size() > 1 && OperationStep.isHttpNotOk(response)) {
+                  CROMWELL_FAILURES.labels(target).inc();
+                }
+                if (batch.size() > 1 && failed(response, throwable)) {
+                  batchRetries.labels(target).inc();
+                  for (final Pending item : batch) {
+                    launch(List.of(item));
+                  }
+                  return;
+                }
+                if (throwable != null) {
+                  batch.forEach(item -> item.future().completeExceptionally(throwable));
+                  return;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                  batch.get(i).future().complete(new Launched(response, i));
+                }
+              });
+    } catch (Exception e) {
+      e.printStackTrace();
+      batch.forEach(item -> item.future().completeExceptionally(e));
+    }
+  }
+
+  private void launchIfCurrent(String vidarrId, List<Pending> batch) {
+    synchronized (this) {
+      // If the batch was already launched because it filled up, a new batch may have taken its
+      // place and will have its own timer
+      if (pending.get(vidarrId) != batch) {
+        return;
+      }
+      pending.remove(vidarrId);
+    }
+    launch(batch);
+  }
+
+  /**
+   * Add a file to the current batch for its workflow run
+   *
+   * @param state the file to provision out
+   * @return a future that completes with Cromwell's response once the batch containing this file
+   *     has been sent
+   */
+  CompletableFuture<Launched> submit(ProvisionState state) {
+    final var future = new CompletableFuture<Launched>();
+    final List<Pending> batch;
+    synchronized (this) {
+      batch = pending.computeIfAbsent(state.vidarrId(), k -> new ArrayList<>());
+      batch.add(new Pending(state, future));
+      if (batch.size() == 1) {
+        CompletableFuture.delayedExecutor(batchWindow.toMillis(), TimeUnit.MILLISECONDS)
+            .execute(() -> launchIfCurrent(state.vidarrId(), batch));
+      }
+      if (batch.size() < batchSize) {
+        return future;
+      }
+      pending.remove(state.vidarrId());
+    }
+    launch(batch);
+    return future;
+  }
+}
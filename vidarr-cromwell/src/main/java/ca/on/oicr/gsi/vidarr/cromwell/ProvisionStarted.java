@@ -0,0 +1,45 @@
+package ca.on.oicr.gsi.vidarr.cromwell;
+
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.MAPPER;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.net.http.HttpRequest;
+
+/**
+ * A provision-out workflow that has been launched on Cromwell
+ *
+ * <p>If the file was launched as part of a batch, the index is the position of the file in the
+ * batch workflow's input and output arrays; otherwise, it is null.
+ */
+public record ProvisionStarted(String cromwellId, String cromwellServer, Integer batchIndex) {
+  public HttpRequest buildCheckRequest(boolean debugCalls) {
+    return started().buildCheckRequest(debugCalls);
+  }
+
+  public HttpRequest buildOutputsRequest() {
+    return started().buildOutputsRequest();
+  }
+
+  /**
+   * Get the outputs that belong to this file
+   *
+   * @param response the outputs of the Cromwell workflow
+   * @return the outputs, with the matching element extracted from each array if this file was
+   *     part of a batch
+   */
+  public ObjectNode selectOutputs(WorkflowOutputResponse response) {
+    if (batchIndex == null) {
+      return response.getOutputs();
+    }
+    final ObjectNode outputs = MAPPER.createObjectNode();
+    response
+        .getOutputs()
+        .fields()
+        .forEachRemaining(field -> outputs.set(field.getKey(), field.getValue().get(batchIndex)));
+    return outputs;
+  }
+
+  public StateStarted started() {
+    return new StateStarted(cromwellId, cromwellServer, null);
+  }
+}
@@ -2,14 +2,10 @@ package ca.on.oicr.gsi.vidarr.cromwell;
 
 import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.MAPPER;
 
-import ca.on.oicr.gsi.vidarr.MultiPartBodyPublisher;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.IOException;
-import java.net.URI;
 import java.net.http.HttpRequest;
 import java.nio.file.Path;
-import java.time.Duration;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,10 +14,33 @@ public record ProvisionState(
     String cromwellUrl, String fileName, JsonNode metadata, String vidarrId) {
 
   public HttpRequest buildLaunchRequest(CromwellOutputProvisioner provisioner) throws IOException {
-    final OutputMetadata outputMetadata = MAPPER.convertValue(metadata, OutputMetadata.class);
-    Path path = Path.of(outputMetadata.getOutputDirectory());
+    final Map<String, String> workflowInputs = new HashMap<>();
+    workflowInputs.put(provisioner.getFileField(), fileName);
+    workflowInputs.put(provisioner.getOutputPrefixField(), outputPrefix(provisioner.getChunks()));
+
+    final OutputMetadata outputMetadata = outputMetadata();
+    final String fileChecksum = outputMetadata.getFileChecksum();
+    final String fileChecksumType = outputMetadata.getFileChecksumType();
+    if (fileChecksum != null && fileChecksumType != null) {
+      workflowInputs.put(provisioner.getInputChecksumField(), fileChecksum);
+      workflowInputs.put(provisioner.getInputChecksumTypeField(), fileChecksumType);
+    }
+
+    return provisioner.buildLaunchRequest(cromwellUrl, vidarrId, workflowInputs);
+  }
+
+  public ProvisionStarted checkTask(String cromwellId) {
+    return new ProvisionStarted(cromwellId, cromwellUrl, null);
+  }
+
+  OutputMetadata outputMetadata() {
+    return MAPPER.convertValue(metadata, OutputMetadata.class);
+  }
+
+  String outputPrefix(int[] chunks) {
+    Path path = Path.of(outputMetadata().getOutputDirectory());
     int startIndex = 0;
-    for (final int length : provisioner.getChunks()) {
+    for (final int length : chunks) {
       if (length < 1) {
         break;
       }
@@ -32,48 +51,6 @@ public record ProvisionState(
       path = path.resolve(vidarrId.substring(startIndex, endIndex));
       startIndex = endIndex;
     }
-
-    final String outputPrefix = path.resolve(vidarrId).toString();
-    final String fileChecksum = outputMetadata.getFileChecksum();
-    final String fileChecksumType = outputMetadata.getFileChecksumType();
-
-    Map<String, String> workflowInputs = new HashMap<>();
-    workflowInputs.put(provisioner.getFileField(), fileName);
-    workflowInputs.put(provisioner.getOutputPrefixField(), outputPrefix);
-
-    if (fileChecksum != null && fileChecksumType != null) {
-      workflowInputs.put(provisioner.getInputChecksumField(), fileChecksum);
-      workflowInputs.put(provisioner.getInputChecksumTypeField(), fileChecksumType);
-    }
-
-    final MultiPartBodyPublisher body =
-        new MultiPartBodyPublisher()
-            .addPart(
-                provisioner.getWorkflowUrl() == null ? "workflowSource" : "workflowUrl",
-                provisioner.getWorkflowUrl() == null
-                    ? provisioner.getWorkflowSource()
-                    : provisioner.getWorkflowUrl())
-            .addPart("workflowType", "WDL")
-            .addPart("workflowTypeVersion", provisioner.getWdlVersion())
-            .addPart(
-                "labels",
-                MAPPER.writeValueAsString(
-                    Collections.singletonMap(
-                        "vidarr-id", vidarrId.substring(Math.max(0, vidarrId.length() - 255)))))
-            .addPart(
-                "workflowInputs",
-                MAPPER.writeValueAsString(workflowInputs))
-            .addPart(
-                "workflowOptions", MAPPER.writeValueAsString(provisioner.getWorkflowOptions()));
-    return HttpRequest.newBuilder()
-        .uri(URI.create(String.format("%s/api/workflows/v1", cromwellUrl)))
-        .timeout(Duration.ofMinutes(1))
-        .header("Content-Type", body.getContentType())
-        .POST(body.build())
-        .build();
-  }
-
-  public StateStarted checkTask(String cromwellId) {
-    return new StateStarted(cromwellId, cromwellUrl);
+    return path.resolve(vidarrId).toString();
   }
 }
@@ -4,10 +4,16 @@ import java.net.URI;
 import java.net.http.HttpRequest;
 import java.time.Duration;
 
-public record StateStarted(String cromwellId, String cromwellServer) {
+/**
+ * A workflow that has been launched on Cromwell
+ *
+ * <p>The workflow name is the name declared in the WDL file. It is used to find workflow-specific
+ * settings and may be null for workflows launched before it was recorded or for provision-outs.
+ */
+public record StateStarted(String cromwellId, String cromwellServer, String workflowName) {
   public HttpRequest buildCheckRequest(boolean debugInflightRuns) {
     return HttpRequest.newBuilder()
-        .uri(CromwellMetadataURL.formatMetadataURL(cromwellServer, cromwellId, debugInflightRuns))
+        .uri(CromwellMetadataURL.formatCheckURL(cromwellServer, cromwellId, debugInflightRuns))
         .timeout(Duration.ofMinutes(1))
         .GET()
         .build();
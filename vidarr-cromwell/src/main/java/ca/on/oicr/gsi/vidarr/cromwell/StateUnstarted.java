@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -31,8 +32,13 @@ public record StateUnstarted(
     Map<String, String> workflowInputFiles,
     WorkflowLanguage workflowLanguage,
     String workflowSource) {
+  private static final Pattern WORKFLOW_NAME =
+      Pattern.compile("^\\s*workflow\\s+([A-Za-z][A-Za-z0-9_]*)", Pattern.MULTILINE);
+
   public StateStarted checkTask(String cromwellId) {
-    return new StateStarted(cromwellId, cromwellServer);
+    final var workflowName = WORKFLOW_NAME.matcher(workflowSource);
+    return new StateStarted(
+        cromwellId, cromwellServer, workflowName.find() ? workflowName.group(1) : null);
   }
 
   public HttpRequest buildLaunchRequest() throws IOException {
@@ -0,0 +1,112 @@
+package ca.on.oicr.gsi.vidarr.cromwell;
+
+import static ca.on.oicr.gsi.vidarr.cromwell.CromwellWorkflowEngine.MAPPER;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Decode Cromwell's workflow metadata with a streaming parser
+ *
+ * <p>Only the fields {@link WorkflowMetadataResponse} uses are read; everything else is skipped
+ * without being built in memory. Calls are read one at a time and, if there is a limit, calls past
+ * the limit are skipped and only counted.
+ */
+final class WorkflowMetadataBodyHandler
+    implements HttpResponse.BodyHandler<Supplier<WorkflowMetadataResponse>> {
+  private static final TypeReference<List<CromwellFailure>> FAILURES = new TypeReference<>() {};
+
+  private final Integer maxCalls;
+
+  /**
+   * Create a new handler
+   *
+   * @param maxCalls the maximum number of calls to keep, or null to keep all of them
+   */
+  WorkflowMetadataBodyHandler(Integer maxCalls) {
+    this.maxCalls = maxCalls;
+  }
+
+  @Override
+  public HttpResponse.BodySubscriber<Supplier<WorkflowMetadataResponse>> apply(
+      HttpResponse.ResponseInfo responseInfo) {
+    return HttpResponse.BodySubscribers.mapping(
+        HttpResponse.BodySubscribers.ofInputStream(),
+        inputStream ->
+            () -> {
+              try (final InputStream stream = inputStream;
+                  final JsonParser parser = MAPPER.getFactory().createParser(stream)) {
+                return read(parser);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+  }
+
+  private WorkflowMetadataResponse read(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "Cromwell metadata is not an object");
+    }
+    final var response = new WorkflowMetadataResponse();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.currentName();
+      parser.nextToken();
+      switch (field) {
+        case "calls" -> readCalls(parser, response);
+        case "failures" -> {
+          final List<CromwellFailure> failures = MAPPER.readValue(parser, FAILURES);
+          response.setFailures(failures == null ? List.of() : failures);
+        }
+        case "id" -> response.setId(parser.getValueAsString());
+        case "status" -> response.setStatus(parser.getValueAsString());
+        case "workflowRoot" -> response.setWorkflowRoot(parser.getValueAsString());
+        default -> parser.skipChildren();
+      }
+    }
+    return response;
+  }
+
+  private void readCalls(JsonParser parser, WorkflowMetadataResponse response)
+      throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+    final Map<String, List<CromwellCall>> calls = new LinkedHashMap<>();
+    int kept = 0;
+    int omitted = 0;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String task = parser.currentName();
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        parser.skipChildren();
+        continue;
+      }
+      final List<CromwellCall> taskCalls = new ArrayList<>();
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        if (maxCalls == null || kept < maxCalls) {
+          taskCalls.add(MAPPER.readValue(parser, CromwellCall.class));
+          kept++;
+        } else {
+          parser.skipChildren();
+          omitted++;
+        }
+      }
+      if (!taskCalls.isEmpty()) {
+        calls.put(task, taskCalls);
+      }
+    }
+    response.setCalls(calls);
+    response.setCallsOmitted(omitted);
+  }
+}
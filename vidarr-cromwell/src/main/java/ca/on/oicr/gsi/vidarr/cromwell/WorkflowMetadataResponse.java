@@ -12,6 +12,7 @@ import java.util.Map;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class WorkflowMetadataResponse {
   private Map<String, List<CromwellCall>> calls;
+  private int callsOmitted;
   private List<CromwellFailure> failures = List.of();
   private String id;
   private String status;
@@ -45,6 +46,9 @@ public class WorkflowMetadataResponse {
                     callNode.putPOJO("failures", call.getFailures());
                   }));
     }
+    if (callsOmitted > 0) {
+      debugInfo.put("cromwellCallsOmitted", callsOmitted);
+    }
     return debugInfo;
   }
 
@@ -52,6 +56,15 @@ public class WorkflowMetadataResponse {
     return calls;
   }
 
+  /**
+   * The number of calls that were not kept because there were too many to store
+   *
+   * @return the number of calls omitted
+   */
+  public int getCallsOmitted() {
+    return callsOmitted;
+  }
+
   public List<CromwellFailure> getFailures() {
     return failures;
   }
@@ -80,6 +93,10 @@ public class WorkflowMetadataResponse {
     this.calls = calls;
   }
 
+  public void setCallsOmitted(int callsOmitted) {
+    this.callsOmitted = callsOmitted;
+  }
+
   public void setFailures(List<CromwellFailure> failures) {
     this.failures = failures;
   }
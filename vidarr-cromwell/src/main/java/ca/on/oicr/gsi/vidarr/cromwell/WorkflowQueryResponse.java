@@ -0,0 +1,41 @@
+package ca.on.oicr.gsi.vidarr.cromwell;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.List;
+
+/** The response from Cromwell when querying the status of multiple workflows */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class WorkflowQueryResponse {
+  /** A single workflow in the query response */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public static class Result {
+    private String id;
+    private String status;
+
+    public String getId() {
+      return id;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+
+    public void setId(String id) {
+      this.id = id;
+    }
+
+    public void setStatus(String status) {
+      this.status = status;
+    }
+  }
+
+  private List<Result> results = List.of();
+
+  public List<Result> getResults() {
+    return results;
+  }
+
+  public void setResults(List<Result> results) {
+    this.results = results;
+  }
+}
@@ -0,0 +1,149 @@
+package ca.on.oicr.gsi.vidarr.cromwell;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.net.ssl.SSLSession;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProvisionBatcherTest {
+  private record FakeResponse(int statusCode, String id)
+      implements HttpResponse<Supplier<WorkflowStatusResponse>> {
+    @Override
+    public Supplier<WorkflowStatusResponse> body() {
+      return () -> {
+        final var response = new WorkflowStatusResponse();
+        response.setId(id);
+        return response;
+      };
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return HttpHeaders.of(Map.of(), (name, value) -> true);
+    }
+
+    @Override
+    public Optional<HttpResponse<Supplier<WorkflowStatusResponse>>> previousResponse() {
+      return Optional.empty();
+    }
+
+    @Override
+    public HttpRequest request() {
+      return HttpRequest.newBuilder(uri()).build();
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return Optional.empty();
+    }
+
+    @Override
+    public URI uri() {
+      return URI.create("http://cromwell.example.com/api/workflows/v1");
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_1_1;
+    }
+  }
+
+  /** Records every batch launched and answers it using the supplied function */
+  private static final class FakeLauncher implements ProvisionBatcher.Launcher {
+    private final List<List<String>> batches = new ArrayList<>();
+    private final Function<List<ProvisionState>, FakeResponse> respond;
+
+    private FakeLauncher(Function<List<ProvisionState>, FakeResponse> respond) {
+      this.respond = respond;
+    }
+
+    synchronized List<List<String>> batches() {
+      return List.copyOf(batches);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse<Supplier<WorkflowStatusResponse>>> launch(
+        List<ProvisionState> batch) {
+      synchronized (this) {
+        batches.add(batch.stream().map(ProvisionState::fileName).toList());
+      }
+      return CompletableFuture.completedFuture(respond.apply(batch));
+    }
+  }
+
+  private static ProvisionState file(String vidarrId, String fileName) {
+    return new ProvisionState("http://cromwell.example.com", fileName, null, vidarrId);
+  }
+
+  private static FakeResponse accept(List<ProvisionState> batch) {
+    return new FakeResponse(201, "workflow-" + batch.get(0).fileName());
+  }
+
+  @Test
+  public void testFallbackAfterFailedLaunch() {
+    final var launcher =
+        new FakeLauncher(
+            batch -> batch.size() > 1 ? new FakeResponse(500, null) : accept(batch));
+    final var batcher = new ProvisionBatcher("test", 2, Duration.ofHours(1), launcher);
+    final var first = batcher.submit(file("run", "a"));
+    final var second = batcher.submit(file("run", "b"));
+    Assert.assertEquals(
+        List.of(List.of("a", "b"), List.of("a"), List.of("b")), launcher.batches());
+    final var started = first.join().started("http://cromwell.example.com");
+    Assert.assertEquals("workflow-a", started.cromwellId());
+    Assert.assertEquals(0, (int) started.batchIndex());
+    Assert.assertEquals(
+        "workflow-b", second.join().started("http://cromwell.example.com").cromwellId());
+  }
+
+  @Test
+  public void testRunsAreNotMixed() {
+    final var launcher = new FakeLauncher(ProvisionBatcherTest::accept);
+    final var batcher = new ProvisionBatcher("test", 2, Duration.ofHours(1), launcher);
+    batcher.submit(file("run1", "a"));
+    final var other = batcher.submit(file("run2", "b"));
+    batcher.submit(file("run1", "c"));
+    Assert.assertEquals(List.of(List.of("a", "c")), launcher.batches());
+    Assert.assertFalse(other.isDone());
+  }
+
+  @Test
+  public void testSizeTrigger() {
+    final var launcher = new FakeLauncher(ProvisionBatcherTest::accept);
+    final var batcher = new ProvisionBatcher("test", 3, Duration.ofHours(1), launcher);
+    final var first = batcher.submit(file("run", "a"));
+    batcher.submit(file("run", "b"));
+    Assert.assertEquals(List.of(), launcher.batches());
+    final var third = batcher.submit(file("run", "c"));
+    Assert.assertEquals(List.of(List.of("a", "b", "c")), launcher.batches());
+    Assert.assertEquals(0, first.join().batchIndex());
+    Assert.assertEquals(2, third.join().batchIndex());
+    Assert.assertEquals(
+        "workflow-a", third.join().started("http://cromwell.example.com").cromwellId());
+  }
+
+  @Test
+  public void testWindowTrigger() {
+    final var launcher = new FakeLauncher(ProvisionBatcherTest::accept);
+    final var batcher = new ProvisionBatcher("test", 10, Duration.ofMillis(100), launcher);
+    final var first = batcher.submit(file("run", "a"));
+    final var second = batcher.submit(file("run", "b"));
+    Assert.assertEquals(List.of(), launcher.batches());
+    second.join();
+    Assert.assertEquals(List.of(List.of("a", "b")), launcher.batches());
+    Assert.assertEquals(0, first.join().batchIndex());
+    Assert.assertEquals(1, second.join().batchIndex());
+  }
+}
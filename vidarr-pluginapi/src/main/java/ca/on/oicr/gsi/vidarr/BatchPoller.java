@@ -0,0 +1,247 @@
+package ca.on.oicr.gsi.vidarr;
+
+import io.prometheus.client.Counter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines the status checks of many operations into bulk requests to an external service
+ *
+ * <p>Polling the full state of every operation individually can place a heavy load on an external
+ * service when there are many operations. Many services provide a cheaper way to check the status
+ * of many jobs at once. This poller collects operations that are waiting for their status to
+ * change and periodically checks them in bulk, one request per group (<i>e.g.</i>, per server).
+ * An operation should wait using {@link #awaitChange(Object, Object)} and then fetch the full state
+ * as it normally would. Once it has fetched the full state, it should record the status it saw
+ * using {@link #acknowledge(Object, Object, Object)}; the next wait will not complete until the
+ * bulk status differs from the acknowledged one.
+ *
+ * <p>To be safe, an operation that has no acknowledged status, that the bulk check cannot find, or
+ * whose bulk check fails will be allowed to proceed immediately. The full state is also fetched if
+ * an operation has been waiting longer than the maximum wait time.
+ *
+ * @param <Group> the type of the group that can be checked in a single request
+ * @param <Key> the identifier for an operation within a group
+ * @param <Status> the status information returned by the bulk check
+ */
+public final class BatchPoller<Group, Key, Status> {
+
+  /**
+   * Perform a bulk status check
+   *
+   * @param <Group> the type of the group that can be checked in a single request
+   * @param <Key> the identifier for an operation within a group
+   * @param <Status> the status information returned by the bulk check
+   */
+  public interface Fetcher<Group, Key, Status> {
+
+    /**
+     * Get the status of many operations in the same group
+     *
+     * @param group the group to check
+     * @param keys the identifiers of the operations to check
+     * @return the status of every operation that could be found; any missing operations will be
+     *     allowed to proceed
+     * @throws Exception if the request cannot be made; all the operations will be allowed to
+     *     proceed
+     */
+    CompletableFuture<Map<Key, Status>> fetch(Group group, Set<Key> keys) throws Exception;
+  }
+
+  private final class GroupState {
+    private final Map<Key, Status> acknowledged = new ConcurrentHashMap<>();
+    private final Group group;
+    private boolean scheduled;
+    private final Map<Key, Waiter> waiting = new ConcurrentHashMap<>();
+
+    private GroupState(Group group) {
+      this.group = group;
+    }
+
+    private void check() {
+      final List<Set<Key>> batches = new ArrayList<>();
+      synchronized (this) {
+        final List<Key> keys = new ArrayList<>(waiting.keySet());
+        for (int i = 0; i < keys.size(); i += maximumBatchSize) {
+          batches.add(Set.copyOf(keys.subList(i, Math.min(keys.size(), i + maximumBatchSize))));
+        }
+      }
+      final List<CompletableFuture<Void>> checks = new ArrayList<>();
+      for (final Set<Key> batch : batches) {
+        bulkRequests.labels(name).inc();
+        CompletableFuture<Map<Key, Status>> request;
+        try {
+          request = fetcher.fetch(group, batch);
+        } catch (Exception e) {
+          request = CompletableFuture.failedFuture(e);
+        }
+        checks.add(
+            request.handle(
+                (result, throwable) -> {
+                  if (throwable != null) {
+                    bulkFailures.labels(name).inc();
+                    throwable.printStackTrace();
+                  }
+                  finish(batch, result == null ? Map.of() : result);
+                  return null;
+                }));
+      }
+      CompletableFuture.allOf(checks.toArray(CompletableFuture[]::new))
+          .whenComplete(
+              (result, throwable) -> {
+                synchronized (this) {
+                  scheduled = false;
+                  if (!waiting.isEmpty()) {
+                    schedule();
+                  }
+                }
+              });
+    }
+
+    private void finish(Set<Key> batch, Map<Key, Status> result) {
+      final var now = Instant.now();
+      for (final Key key : batch) {
+        final Status status = result.get(key);
+        final Waiter waiter = waiting.get(key);
+        if (waiter == null) {
+          continue;
+        }
+        if (status == null
+            || !status.equals(acknowledged.get(key))
+            || Duration.between(waiter.created(), now).compareTo(maximumWait) > 0) {
+          waiting.remove(key, waiter);
+          (status == null ? missing : released).labels(name).inc();
+          waiter.future().complete(null);
+        } else {
+          unchanged.labels(name).inc();
+        }
+      }
+    }
+
+    private synchronized CompletableFuture<Void> register(Key key) {
+      final var waiter =
+          waiting.computeIfAbsent(key, k -> new Waiter(Instant.now(), new CompletableFuture<>()));
+      if (!scheduled) {
+        schedule();
+      }
+      return waiter.future();
+    }
+
+    private void schedule() {
+      scheduled = true;
+      CompletableFuture.delayedExecutor(interval.toMillis(), TimeUnit.MILLISECONDS)
+          .execute(this::check);
+    }
+  }
+
+  private record Waiter(Instant created, CompletableFuture<Void> future) {}
+
+  private static final Counter bulkFailures =
+      Counter.build(
+              "vidarr_batch_poller_failed_requests",
+              "The number of bulk status requests that failed")
+          .labelNames("poller")
+          .register();
+  private static final Counter bulkRequests =
+      Counter.build("vidarr_batch_poller_requests", "The number of bulk status requests made")
+          .labelNames("poller")
+          .register();
+  private static final Counter missing =
+      Counter.build(
+              "vidarr_batch_poller_missing",
+              "The number of times an operation was not found in a bulk status check")
+          .labelNames("poller")
+          .register();
+  private static final Counter released =
+      Counter.build(
+              "vidarr_batch_poller_released",
+              "The number of operations that were allowed to fetch their full state after a bulk"
+                  + " status check")
+          .labelNames("poller")
+          .register();
+  private static final Counter unchanged =
+      Counter.build(
+              "vidarr_batch_poller_unchanged",
+              "The number of times an operation's status was unchanged in a bulk status check")
+          .labelNames("poller")
+          .register();
+  private final Fetcher<Group, Key, Status> fetcher;
+  private final Map<Group, GroupState> groups = new ConcurrentHashMap<>();
+  private final Duration interval;
+  private final int maximumBatchSize;
+  private final Duration maximumWait;
+  private final String name;
+
+  /**
+   * Create a new poller
+   *
+   * @param name the name to use in monitoring metrics
+   * @param interval the time between bulk checks
+   * @param maximumWait the maximum time an operation will wait before being allowed to proceed
+   * @param maximumBatchSize the maximum number of operations to include in a single bulk check
+   * @param fetcher the bulk check to perform
+   */
+  public BatchPoller(
+      String name,
+      Duration interval,
+      Duration maximumWait,
+      int maximumBatchSize,
+      Fetcher<Group, Key, Status> fetcher) {
+    this.name = name;
+    this.interval = interval;
+    this.maximumWait = maximumWait;
+    this.maximumBatchSize = maximumBatchSize;
+    this.fetcher = fetcher;
+  }
+
+  /**
+   * Record the status that an operation saw when it fetched its full state
+   *
+   * @param group the group the operation belongs to
+   * @param key the identifier of the operation
+   * @param status the status observed
+   */
+  public void acknowledge(Group group, Key key, Status status) {
+    final var state = groups.computeIfAbsent(group, GroupState::new);
+    if (status == null) {
+      state.acknowledged.remove(key);
+    } else {
+      state.acknowledged.put(key, status);
+    }
+  }
+
+  /**
+   * Wait until the bulk status of an operation differs from the last acknowledged status
+   *
+   * @param group the group the operation belongs to
+   * @param key the identifier of the operation
+   * @return a future that completes when the operation should fetch its full state
+   */
+  public CompletableFuture<Void> awaitChange(Group group, Key key) {
+    final var state = groups.computeIfAbsent(group, GroupState::new);
+    if (!state.acknowledged.containsKey(key)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return state.register(key);
+  }
+
+  /**
+   * Stop tracking an operation once it has finished
+   *
+   * @param group the group the operation belongs to
+   * @param key the identifier of the operation
+   */
+  public void forget(Group group, Key key) {
+    final var state = groups.get(group);
+    if (state != null) {
+      state.acknowledged.remove(key);
+    }
+  }
+}
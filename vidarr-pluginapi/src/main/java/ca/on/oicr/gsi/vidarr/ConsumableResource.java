@@ -12,12 +12,14 @@ import com.fasterxml.jackson.databind.jsontype.impl.TypeIdResolverBase;
 import io.undertow.server.HttpHandler;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.ServiceLoader;
 import java.util.ServiceLoader.Provider;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /** A broker that can block workflows from starting by managing their resource footprints */
@@ -57,6 +59,21 @@ public interface ConsumableResource {
     }
   }
 
+  /**
+   * Register a callback to be notified when this resource may have become available
+   *
+   * <p>Vidarr keeps workflow runs that are waiting for resources in a queue and re-evaluates them
+   * when this callback is invoked. Resources should invoke the callback when capacity is returned
+   * (<i>e.g.</i>, in {@link #release(String, String, String, Optional)}) or when their
+   * configuration changes in a way that might allow more workflow runs to proceed. The callback
+   * is cheap and may be called frequently.
+   *
+   * @param listener the callback to invoke
+   */
+  default void addCapacityListener(Runnable listener) {
+    // Do nothing; resources that never call listeners must be time-dependent.
+  }
+
   /**
    * Consumable resource may provide an optional HTTP API to extend their functionality.
    *
@@ -77,6 +94,22 @@ public interface ConsumableResource {
    */
   Optional<Pair<String, BasicType>> inputFromSubmitter();
 
+  /**
+   * Prepare to check many workflow runs
+   *
+   * <p>This is called before the workflow runs waiting for resources are re-evaluated so that
+   * resources that fetch remote data can fetch it for all of them at once. This should not wait
+   * for the data to arrive; the workflow runs are re-evaluated once the returned future completes
+   * or a deadline passes, whichever comes first.
+   *
+   * @param inputs the consumable resource information requested from the submitter for each
+   *     waiting workflow run that provided it
+   * @return a future that completes once the data has been fetched
+   */
+  default CompletableFuture<?> prefetch(List<JsonNode> inputs) {
+    return CompletableFuture.completedFuture(null);
+  }
+
   /**
    * The order in which this resource should be checked.
    *
@@ -149,4 +182,19 @@ public interface ConsumableResource {
 
   /** Called to determine if this consumable resource must be provided as part of the input. . */
   boolean isInputFromSubmitterRequired();
+
+  /**
+   * Whether this resource can become available without notifying its capacity listeners
+   *
+   * <p>Resources whose availability depends on the passage of time or on external state that is
+   * not tracked by listeners must return true so that waiting workflow runs are periodically
+   * re-evaluated. Resources that invoke their capacity listeners whenever they might become
+   * available can return false, and waiting workflow runs will only be re-evaluated when that
+   * happens.
+   *
+   * @return true if periodic re-evaluation is required
+   */
+  default boolean isTimeDependent() {
+    return true;
+  }
 }
@@ -0,0 +1,351 @@
+package ca.on.oicr.gsi.vidarr;
+
+import ca.on.oicr.gsi.status.SectionRenderer;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Limits the HTTP requests made to each remote server and stops sending requests to servers that
+ * are failing
+ *
+ * <p>Each host gets its own limit of in-flight requests; requests beyond the limit wait in a queue.
+ * If too many consecutive requests to a host fail, either because no response arrived or with a
+ * 5xx or 429 status, the circuit breaker for that host opens and requests are held in the queue
+ * rather than sent. Once the open period has passed, a single request is sent as a probe: if it
+ * succeeds, the breaker closes and queued requests are sent; if it fails, the breaker stays open
+ * for another period. Only the probe can close the breaker; requests that were already in flight
+ * when it opened do not change its state. Errors reading the body of a response do not count as
+ * failures.
+ *
+ * <p>Because requests are held rather than rejected, operations polling an unhealthy server pause
+ * instead of using up their retries.
+ */
+public final class HttpBulkhead {
+  private interface Attempt {
+    void start(boolean probe);
+  }
+
+  private final class Host {
+    private boolean drainScheduled;
+    private int failureThreshold = HttpBulkhead.this.failureThreshold;
+    private int failures;
+    private int inFlight;
+    private int maxInFlight = HttpBulkhead.this.maxInFlight;
+    private final String name;
+    private boolean open;
+    private Duration openDuration = HttpBulkhead.this.openDuration;
+    private long openUntil;
+    private boolean probing;
+    private final Queue<Attempt> waiting = new ArrayDeque<>();
+
+    private Host(String name) {
+      this.name = name;
+    }
+
+    private synchronized boolean canStart() {
+      if (!open) {
+        return inFlight < maxInFlight;
+      }
+      if (!probing && inFlight == 0 && System.nanoTime() - openUntil >= 0) {
+        probing = true;
+        return true;
+      }
+      return false;
+    }
+
+    private void configure(HttpBulkheadSettings settings) {
+      synchronized (this) {
+        if (settings.getMaxInFlight() != null) {
+          maxInFlight = Math.max(1, settings.getMaxInFlight());
+        }
+        if (settings.getFailureThreshold() != null) {
+          failureThreshold = Math.max(1, settings.getFailureThreshold());
+        }
+        openDuration = settings.openDuration(openDuration);
+      }
+      // A higher limit might let queued requests start
+      drain();
+    }
+
+    private void drain() {
+      final List<Runnable> ready = new ArrayList<>();
+      synchronized (this) {
+        while (!waiting.isEmpty() && canStart()) {
+          inFlight++;
+          final Attempt attempt = waiting.poll();
+          // The only request that can start while the breaker is open is the probe
+          final boolean probe = open;
+          ready.add(() -> attempt.start(probe));
+        }
+        // While the breaker is open and nothing is in flight, no request will finish to start the
+        // queued ones, so check again once the open period is over
+        if (open && inFlight == 0 && !waiting.isEmpty() && !drainScheduled) {
+          drainScheduled = true;
+          CompletableFuture.delayedExecutor(
+                  Math.max(1, openUntil - System.nanoTime()), TimeUnit.NANOSECONDS)
+              .execute(
+                  () -> {
+                    synchronized (this) {
+                      drainScheduled = false;
+                    }
+                    drain();
+                  });
+        }
+        updateMetrics();
+      }
+      ready.forEach(Runnable::run);
+    }
+
+    private void finish(boolean probe, boolean healthy) {
+      synchronized (this) {
+        inFlight--;
+        if (probe) {
+          // Only the probe decides whether an open breaker closes
+          probing = false;
+          if (healthy) {
+            failures = 0;
+            open = false;
+          } else {
+            trip();
+          }
+        } else if (!open) {
+          if (healthy) {
+            failures = 0;
+          } else if (++failures >= failureThreshold) {
+            trip();
+          }
+        }
+        // Otherwise, this request was sent before the breaker opened, so its result is out of date
+      }
+      drain();
+    }
+
+    private void release(boolean probe) {
+      synchronized (this) {
+        inFlight--;
+        if (probe) {
+          probing = false;
+        }
+      }
+      drain();
+    }
+
+    private void render(SectionRenderer renderer) throws XMLStreamException {
+      final String state;
+      synchronized (this) {
+        state =
+            String.format(
+                "%s; %d in flight; %d queued",
+                !open
+                    ? "closed"
+                    : probing
+                        ? "probing"
+                        : String.format(
+                            "open for %ds",
+                            TimeUnit.NANOSECONDS.toSeconds(
+                                Math.max(0, openUntil - System.nanoTime()))),
+                inFlight,
+                waiting.size());
+      }
+      renderer.line(String.format("%s: %s", HttpBulkhead.this.name, name), state);
+    }
+
+    private void submit(Attempt request) {
+      synchronized (this) {
+        waiting.add(request);
+      }
+      drain();
+    }
+
+    private void trip() {
+      failures = 0;
+      open = true;
+      openUntil = System.nanoTime() + openDuration.toNanos();
+      trips.labels(name(), name).inc();
+    }
+
+    private void updateMetrics() {
+      inFlightGauge.labels(name(), name).set(inFlight);
+      queuedGauge.labels(name(), name).set(waiting.size());
+      openGauge.labels(name(), name).set(open ? 1 : 0);
+    }
+  }
+
+  private static final Set<HttpBulkhead> ALL = ConcurrentHashMap.newKeySet();
+  private static final Gauge inFlightGauge =
+      Gauge.build(
+              "vidarr_http_bulkhead_in_flight",
+              "The number of HTTP requests currently being sent to a remote server")
+          .labelNames("client", "host")
+          .register();
+  private static final Gauge openGauge =
+      Gauge.build(
+              "vidarr_http_bulkhead_circuit_open",
+              "Whether requests to a remote server are paused because it is failing (1) or not"
+                  + " (0)")
+          .labelNames("client", "host")
+          .register();
+  private static final Gauge queuedGauge =
+      Gauge.build(
+              "vidarr_http_bulkhead_queued",
+              "The number of HTTP requests waiting to be sent to a remote server")
+          .labelNames("client", "host")
+          .register();
+  private static final Counter trips =
+      Counter.build(
+              "vidarr_http_bulkhead_circuit_trips",
+              "The number of times requests to a remote server have been paused because it was"
+                  + " failing")
+          .labelNames("client", "host")
+          .register();
+
+  /**
+   * Create a new bulkhead
+   *
+   * @param name the name of the client, used in metrics and the status page
+   * @param maxInFlight the default maximum number of concurrent requests to each host
+   * @param failureThreshold the default number of consecutive failures that will open the circuit
+   *     breaker
+   * @param openDuration the default time to wait before probing a failing host
+   * @return the bulkhead
+   */
+  public static HttpBulkhead create(
+      String name, int maxInFlight, int failureThreshold, Duration openDuration) {
+    final var bulkhead = new HttpBulkhead(name, maxInFlight, failureThreshold, openDuration);
+    ALL.add(bulkhead);
+    return bulkhead;
+  }
+
+  /**
+   * Display the state of every bulkhead on the status page
+   *
+   * @param renderer the status page section to write to
+   */
+  public static void renderAll(SectionRenderer renderer) throws XMLStreamException {
+    for (final var bulkhead : ALL) {
+      for (final var host : bulkhead.hosts.values()) {
+        host.render(renderer);
+      }
+    }
+  }
+
+  private final int failureThreshold;
+  private final Map<String, Host> hosts = new ConcurrentSkipListMap<>();
+  private final int maxInFlight;
+  private final String name;
+  private final Duration openDuration;
+
+  private HttpBulkhead(String name, int maxInFlight, int failureThreshold, Duration openDuration) {
+    this.name = name;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openDuration = openDuration;
+  }
+
+  /**
+   * Change the limits for one server
+   *
+   * <p>Servers that are not configured use the limits this bulkhead was created with. If several
+   * plugins configure the same server, the last one to be configured wins.
+   *
+   * @param url any URL on the server
+   * @param settings the limits to use; if null, the server keeps its current limits
+   */
+  public void configure(String url, HttpBulkheadSettings settings) {
+    if (url != null && settings != null) {
+      hosts.computeIfAbsent(URI.create(url).getAuthority(), Host::new).configure(settings);
+    }
+  }
+
+  private static boolean isHealthy(int status) {
+    // No status means the connection failed or timed out before the server answered
+    return status != -1 && status / 100 != 5 && status != 429;
+  }
+
+  /**
+   * Check whether requests to a server are currently being held because it is failing
+   *
+   * @param uri any URI on the server
+   * @return true if the circuit breaker is open
+   */
+  public boolean isOpen(URI uri) {
+    final var host = hosts.get(uri.getAuthority());
+    if (host == null) {
+      return false;
+    }
+    synchronized (host) {
+      return host.open;
+    }
+  }
+
+  /**
+   * The name of the client, as used in metrics
+   *
+   * @return the name
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Send a request once the host has capacity and is healthy
+   *
+   * @param client the HTTP client to send the request with
+   * @param request the request to send
+   * @param handler the handler for the response body
+   * @param <T> the type of the response body
+   * @return the response, once the request has been sent and completed
+   */
+  public <T> CompletableFuture<HttpResponse<T>> send(
+      HttpClient client, HttpRequest request, BodyHandler<T> handler) {
+    final Host host = hosts.computeIfAbsent(request.uri().getAuthority(), Host::new);
+    final var result = new CompletableFuture<HttpResponse<T>>();
+    host.submit(
+        probe -> {
+          // If the server sent a status, that decides its health, even if reading the body fails
+          // afterwards; a body the caller can't parse is not the server's fault
+          final AtomicInteger status = new AtomicInteger(-1);
+          try {
+            client
+                .sendAsync(
+                    request,
+                    info -> {
+                      status.set(info.statusCode());
+                      return handler.apply(info);
+                    })
+                .whenComplete(
+                    (response, throwable) -> {
+                      host.finish(probe, isHealthy(status.get()));
+                      if (throwable == null) {
+                        result.complete(response);
+                      } else {
+                        result.completeExceptionally(throwable);
+                      }
+                    });
+          } catch (Exception e) {
+            // The request was never sent, so this says nothing about the host's health
+            host.release(probe);
+            result.completeExceptionally(e);
+          }
+        });
+    return result;
+  }
+}
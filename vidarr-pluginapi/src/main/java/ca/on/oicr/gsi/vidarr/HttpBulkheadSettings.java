@@ -0,0 +1,42 @@
+package ca.on.oicr.gsi.vidarr;
+
+import java.time.Duration;
+
+/**
+ * Limits for the requests sent to one remote server, as read from a plugin's configuration
+ *
+ * <p>Any limit that is not set uses the default of the bulkhead it is applied to.
+ */
+public final class HttpBulkheadSettings {
+  private Integer failureThreshold;
+  private Integer maxInFlight;
+  private Integer openSeconds;
+
+  public Integer getFailureThreshold() {
+    return failureThreshold;
+  }
+
+  public Integer getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public Integer getOpenSeconds() {
+    return openSeconds;
+  }
+
+  Duration openDuration(Duration defaultDuration) {
+    return openSeconds == null ? defaultDuration : Duration.ofSeconds(openSeconds);
+  }
+
+  public void setFailureThreshold(Integer failureThreshold) {
+    this.failureThreshold = failureThreshold;
+  }
+
+  public void setMaxInFlight(Integer maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  public void setOpenSeconds(Integer openSeconds) {
+    this.openSeconds = openSeconds;
+  }
+}
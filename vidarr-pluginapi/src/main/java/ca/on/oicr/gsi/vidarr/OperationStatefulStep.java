@@ -8,6 +8,7 @@ import java.lang.System.Logger.Level;
 import java.time.Duration;
 import java.util.Optional;
 import java.util.function.BiPredicate;
+import java.util.function.Function;
 
 /**
  * Stateful operation steps modify the values being carried by an {@link OperationAction} and can
@@ -194,7 +195,40 @@ public abstract sealed class OperationStatefulStep<
    */
   public static <State extends Record, OriginalState extends Record>
       OperationStatefulStep<State, State, OriginalState, PollResult, Void> poll(Duration delay) {
-    return new OperationStatefulStepPoll<>(delay);
+    return poll(PollPolicy.fixed(delay));
+  }
+
+  /**
+   * Run an operation repeatedly until it completes, varying the time between attempts
+   *
+   * <p>The time since polling started is tracked in memory, so it restarts from zero if the server
+   * is restarted.
+   *
+   * @param policy the policy that determines the time to wait between reattempts
+   * @param <State> the type of the previous state
+   * @param <OriginalState> the original state
+   * @return a step that reattempts the previous steps
+   */
+  public static <State extends Record, OriginalState extends Record>
+      OperationStatefulStep<State, State, OriginalState, PollResult, Void> poll(PollPolicy policy) {
+    return new OperationStatefulStepPoll<>(state -> policy);
+  }
+
+  /**
+   * Run an operation repeatedly until it completes, using a policy chosen from the state
+   *
+   * <p>This allows the time between attempts to depend on the task being polled, such as using a
+   * different expected duration for each workflow.
+   *
+   * @param policy a function to choose the policy for the current state
+   * @param <State> the type of the previous state
+   * @param <OriginalState> the original state
+   * @return a step that reattempts the previous steps
+   */
+  public static <State extends Record, OriginalState extends Record>
+      OperationStatefulStep<State, State, OriginalState, PollResult, Void> poll(
+          Function<? super State, PollPolicy> policy) {
+    return new OperationStatefulStepPoll<>(policy);
   }
 
   /**
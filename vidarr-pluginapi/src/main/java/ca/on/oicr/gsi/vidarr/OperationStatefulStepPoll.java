@@ -6,16 +6,18 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 final class OperationStatefulStepPoll<State extends Record, OriginalState extends Record>
     extends OperationStatefulStep<State, State, OriginalState, PollResult, Void> {
 
-  private final Duration delay;
+  private final Function<? super State, PollPolicy> policy;
 
-  public OperationStatefulStepPoll(Duration delay) {
+  public OperationStatefulStepPoll(Function<? super State, PollPolicy> policy) {
     super();
-    this.delay = delay;
+    this.policy = policy;
   }
 
   @Override
@@ -41,6 +43,16 @@ final class OperationStatefulStepPoll<State extends Record, OriginalState extend
       ActiveOperation<TX> operation,
       TransactionManager<TX> transactionManager,
       OperationControlFlow<State, Void> next) {
+    run(input, nextState, operation, transactionManager, next, Instant.now());
+  }
+
+  private <TX> void run(
+      OperationAction<State, OriginalState, PollResult> input,
+      State nextState,
+      ActiveOperation<TX> operation,
+      TransactionManager<TX> transactionManager,
+      OperationControlFlow<State, Void> next,
+      Instant started) {
     input.run(
         nextState,
         operation,
@@ -69,11 +81,14 @@ final class OperationStatefulStepPoll<State extends Record, OriginalState extend
                     transactionManager.inTransaction(
                         transaction -> operation.status(OperationStatus.of(status), transaction));
                     transactionManager.scheduleTask(
-                        delay.get(TimeUnit.SECONDS.toChronoUnit()),
-                        TimeUnit.SECONDS,
+                        policy
+                            .apply(nextState)
+                            .delay(Duration.between(started, Instant.now()))
+                            .toMillis(),
+                        TimeUnit.MILLISECONDS,
                         () ->
                             OperationStatefulStepPoll.this.run(
-                                input, nextState, operation, transactionManager, next));
+                                input, nextState, operation, transactionManager, next, started));
                   }
 
                   @Override
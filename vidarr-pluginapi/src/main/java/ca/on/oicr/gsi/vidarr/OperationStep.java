@@ -3,7 +3,6 @@ package ca.on.oicr.gsi.vidarr;
 import ca.on.oicr.gsi.vidarr.ActiveOperation.TransactionManager;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.prometheus.client.Counter;
-import java.lang.ProcessBuilder.Redirect;
 import java.lang.System.Logger.Level;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -12,7 +11,6 @@ import java.net.http.HttpResponse.BodyHandler;
 import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
@@ -37,6 +35,7 @@ public abstract sealed class OperationStep<Input, Output>
         OperationStepRequire,
         OperationStepSleep,
         OperationStepStatus,
+        OperationStepSubprocess,
         OperationStepThen {
 
   /**
@@ -99,6 +98,24 @@ public abstract sealed class OperationStep<Input, Output>
         .then(future());
   }
 
+  /**
+   * Perform an HTTP request through a bulkhead and collect the output
+   *
+   * <p>The request waits if the remote server already has too many requests in flight or is
+   * currently failing.
+   *
+   * @param bulkhead the bulkhead that limits requests to the remote server
+   * @param body the handler to extract the body of the HTTP request
+   * @param <Body> the type of the response body
+   * @return a step to perform this HTTP request
+   */
+  public static <Body> OperationStep<HttpRequest, HttpResponse<Body>> http(
+      HttpBulkhead bulkhead, BodyHandler<Body> body) {
+    return OperationStep.<HttpRequest, CompletableFuture<HttpResponse<Body>>>mapping(
+            httpRequest -> bulkhead.send(HTTP_CLIENT, httpRequest, body))
+        .then(future());
+  }
+
   public static <Body>
       OperationStep<HttpResponse<Body>, HttpResponse<Body>> handleHttpResponseCode() {
     return new OperationStepHandleHttpStatus<>();
@@ -287,38 +304,16 @@ public abstract sealed class OperationStep<Input, Output>
   /**
    * Launch a program on the system <strong>running the Vidarr server</strong>
    *
+   * <p>No thread is held while the program runs, so long-running programs do not prevent other
+   * operations from making progress.
+   *
    * @param output the handling of standard output that is desired
    * @param <Output> the data collected from standard output
    * @return a step that runs this process
    */
   public static <Output> OperationStep<ProcessInput, ProcessOutput<Output>> subprocess(
       ProcessOutputHandler<Output> output) {
-    return mapping(
-        input -> {
-          final var build = new ProcessBuilder().command(input.command());
-          if (input.standardInput().isPresent()) {
-            build.redirectInput(Redirect.PIPE);
-          }
-          final var outputGenerator = output.prepare(build);
-          final var process = build.start();
-          if (input.standardInput().isPresent()) {
-            try (final var stdin = process.getOutputStream()) {
-              stdin.write(input.standardInput().get());
-            }
-          }
-          if (input.maximumWait().isPresent()) {
-            final var duration = input.maximumWait().get();
-            if (!process.waitFor(duration.get(TimeUnit.SECONDS.toChronoUnit()), TimeUnit.SECONDS)) {
-              process.destroy();
-              throw new RuntimeException(
-                  String.format("Killed process %d after timeout", process.pid()));
-            }
-          } else {
-            process.waitFor();
-          }
-          return new ProcessOutput<>(
-              process.exitValue(), outputGenerator.get(process.exitValue() == 0));
-        });
+    return new OperationStepSubprocess<>(output);
   }
 
   abstract <State extends Record, TX> void run(
@@ -0,0 +1,101 @@
+package ca.on.oicr.gsi.vidarr;
+
+import ca.on.oicr.gsi.vidarr.ActiveOperation.TransactionManager;
+import ca.on.oicr.gsi.vidarr.ProcessOutputHandler.OutputGenerator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a process without holding a thread while it runs
+ *
+ * <p>Standard input is written to a temporary file that the process reads directly, so no thread
+ * is needed to feed it. Completion is detected using {@link Process#onExit()} and any timeout is
+ * scheduled through the transaction manager.
+ */
+final class OperationStepSubprocess<Output>
+    extends OperationStep<ProcessInput, ProcessOutput<Output>> {
+
+  private final ProcessOutputHandler<Output> output;
+
+  OperationStepSubprocess(ProcessOutputHandler<Output> output) {
+    this.output = output;
+  }
+
+  @Override
+  public <State extends Record, TX> void run(
+      ProcessInput input,
+      ActiveOperation<TX> operation,
+      TransactionManager<TX> transactionManager,
+      OperationControlFlow<State, ProcessOutput<Output>> next) {
+    final OutputGenerator<Output> outputGenerator;
+    final Process process;
+    File temporaryFile = null;
+    try {
+      final var build = new ProcessBuilder().command(input.command());
+      if (input.standardInput().isPresent()) {
+        temporaryFile = File.createTempFile("vidarr", ".in");
+        temporaryFile.deleteOnExit();
+        Files.write(temporaryFile.toPath(), input.standardInput().get());
+        build.redirectInput(temporaryFile);
+      }
+      outputGenerator = output.prepare(build);
+      process = build.start();
+    } catch (Exception e) {
+      if (temporaryFile != null) {
+        temporaryFile.delete();
+      }
+      next.error(e.getMessage());
+      return;
+    }
+    final var standardInput = temporaryFile;
+    // Either the process exits or the timeout fires; whichever happens first finishes the step
+    final var finished = new AtomicBoolean();
+    input
+        .maximumWait()
+        .ifPresent(
+            duration ->
+                transactionManager.scheduleTask(
+                    duration.toMillis(),
+                    TimeUnit.MILLISECONDS,
+                    () -> {
+                      if (process.isAlive() && finished.compareAndSet(false, true)) {
+                        // The process might ignore a polite request to stop, so don't wait for it
+                        // to exit before reporting the timeout
+                        process.destroyForcibly();
+                        next.error(String.format("Killed process %d after timeout", process.pid()));
+                      }
+                    }));
+    process
+        .onExit()
+        .whenComplete(
+            (result, throwable) ->
+                // Collecting the output may read a file, so do it on Vidarr's threads rather than
+                // the one that watches for the process to exit
+                transactionManager.scheduleTask(
+                    () -> {
+                      if (standardInput != null) {
+                        standardInput.delete();
+                      }
+                      if (!finished.compareAndSet(false, true)) {
+                        return;
+                      }
+                      if (throwable != null) {
+                        next.error(throwable.getMessage());
+                        return;
+                      }
+                      final ProcessOutput<Output> processOutput;
+                      try {
+                        processOutput =
+                            new ProcessOutput<>(
+                                process.exitValue(),
+                                outputGenerator.get(process.exitValue() == 0));
+                      } catch (Exception e) {
+                        next.error(e.getMessage());
+                        return;
+                      }
+                      next.next(processOutput);
+                    }));
+  }
+}
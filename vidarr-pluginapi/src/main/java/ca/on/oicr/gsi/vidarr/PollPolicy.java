@@ -0,0 +1,125 @@
+package ca.on.oicr.gsi.vidarr;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Determines how long to wait between attempts of a {@link OperationStatefulStep#poll(PollPolicy)}
+ * step
+ *
+ * <p>The delay can grow with the time the poll has been running, so that long-running tasks are
+ * checked less often, and can be randomly jittered, so that tasks started together do not keep
+ * polling together.
+ */
+public final class PollPolicy {
+
+  /**
+   * Wait the same amount of time between every attempt
+   *
+   * @param delay the time to wait
+   * @return the policy
+   */
+  public static PollPolicy fixed(Duration delay) {
+    return new PollPolicy(delay, delay, 0, 0, null);
+  }
+
+  /**
+   * Wait longer the longer the poll has been running
+   *
+   * <p>The delay is a quarter of the time elapsed since polling started, but no less than the
+   * minimum and no more than the maximum.
+   *
+   * @param minimum the shortest time to wait
+   * @param maximum the longest time to wait
+   * @return the policy
+   */
+  public static PollPolicy backoff(Duration minimum, Duration maximum) {
+    return new PollPolicy(minimum, maximum, 0.25, 0, null);
+  }
+
+  private final double backoff;
+  private final Duration expected;
+  private final double jitter;
+  private final Duration maximum;
+  private final Duration minimum;
+
+  private PollPolicy(
+      Duration minimum, Duration maximum, double backoff, double jitter, Duration expected) {
+    if (minimum.compareTo(maximum) > 0) {
+      throw new IllegalArgumentException("Minimum poll delay is greater than maximum");
+    }
+    this.minimum = minimum;
+    this.maximum = maximum;
+    this.backoff = backoff;
+    this.jitter = jitter;
+    this.expected = expected;
+  }
+
+  /**
+   * Change this policy using settings from a plugin's configuration
+   *
+   * @param settings the changes to make; if null, this policy is returned unchanged
+   * @return a new policy
+   */
+  public PollPolicy configure(PollSettings settings) {
+    if (settings == null) {
+      return this;
+    }
+    final var policy =
+        new PollPolicy(
+            settings.minimum(minimum),
+            settings.maximum(maximum),
+            backoff,
+            jitter,
+            settings.expected(expected));
+    return settings.getJitter() == null ? policy : policy.withJitter(settings.getJitter());
+  }
+
+  /**
+   * Compute the delay before the next attempt
+   *
+   * @param elapsed the time since polling started
+   * @return the time to wait
+   */
+  public Duration delay(Duration elapsed) {
+    long millis;
+    if (expected != null && elapsed.compareTo(expected) < 0) {
+      // Before the task is expected to finish, close half the remaining gap on each attempt
+      millis = expected.minus(elapsed).toMillis() / 2;
+    } else {
+      millis = (long) (elapsed.toMillis() * backoff);
+    }
+    millis = Math.max(minimum.toMillis(), Math.min(maximum.toMillis(), millis));
+    if (jitter > 0) {
+      millis += (long) (millis * jitter * ThreadLocalRandom.current().nextDouble(-1, 1));
+    }
+    return Duration.ofMillis(Math.max(0, millis));
+  }
+
+  /**
+   * Use a hint about how long the task usually takes
+   *
+   * <p>Until the expected time has passed, the delay shrinks as the expected time approaches;
+   * afterwards, the normal delay is used. The minimum and maximum still apply.
+   *
+   * @param expected the typical duration of the task, such as the median of previous runs
+   * @return a new policy
+   */
+  public PollPolicy expecting(Duration expected) {
+    return new PollPolicy(minimum, maximum, backoff, jitter, expected);
+  }
+
+  /**
+   * Randomly change each delay
+   *
+   * @param fraction the largest change, as a fraction of the delay; e.g., 0.2 will produce delays
+   *     anywhere from 80% to 120% of the computed delay
+   * @return a new policy
+   */
+  public PollPolicy withJitter(double fraction) {
+    if (fraction < 0 || fraction >= 1) {
+      throw new IllegalArgumentException("Jitter must be at least 0 and less than 1");
+    }
+    return new PollPolicy(minimum, maximum, backoff, fraction, expected);
+  }
+}
@@ -0,0 +1,59 @@
+package ca.on.oicr.gsi.vidarr;
+
+import java.time.Duration;
+
+/**
+ * Changes to a {@link PollPolicy}, as read from a plugin's configuration
+ *
+ * <p>Any value that is not set keeps the value of the policy it is applied to.
+ */
+public final class PollSettings {
+  private Integer expectedSeconds;
+  private Double jitter;
+  private Integer maximumSeconds;
+  private Integer minimumSeconds;
+
+  public Integer getExpectedSeconds() {
+    return expectedSeconds;
+  }
+
+  public Double getJitter() {
+    return jitter;
+  }
+
+  public Integer getMaximumSeconds() {
+    return maximumSeconds;
+  }
+
+  public Integer getMinimumSeconds() {
+    return minimumSeconds;
+  }
+
+  Duration expected(Duration defaultExpected) {
+    return expectedSeconds == null ? defaultExpected : Duration.ofSeconds(expectedSeconds);
+  }
+
+  Duration maximum(Duration defaultMaximum) {
+    return maximumSeconds == null ? defaultMaximum : Duration.ofSeconds(maximumSeconds);
+  }
+
+  Duration minimum(Duration defaultMinimum) {
+    return minimumSeconds == null ? defaultMinimum : Duration.ofSeconds(minimumSeconds);
+  }
+
+  public void setExpectedSeconds(Integer expectedSeconds) {
+    this.expectedSeconds = expectedSeconds;
+  }
+
+  public void setJitter(Double jitter) {
+    this.jitter = jitter;
+  }
+
+  public void setMaximumSeconds(Integer maximumSeconds) {
+    this.maximumSeconds = maximumSeconds;
+  }
+
+  public void setMinimumSeconds(Integer minimumSeconds) {
+    this.minimumSeconds = minimumSeconds;
+  }
+}
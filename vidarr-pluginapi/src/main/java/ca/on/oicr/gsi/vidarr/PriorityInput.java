@@ -13,11 +13,13 @@ import com.fasterxml.jackson.databind.jsontype.impl.TypeIdResolverBase;
 import io.undertow.server.HttpHandler;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.ServiceLoader;
 import java.util.ServiceLoader.Provider;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -91,6 +93,21 @@ public interface PriorityInput {
    */
   BasicType inputFromSubmitter();
 
+  /**
+   * Prepare to compute priorities for many submission requests
+   *
+   * <p>This is called before the workflow runs waiting for resources are re-evaluated. Inputs that
+   * fetch remote data can start fetching values for all of them at once. This should not wait for
+   * the values to arrive; the workflow runs are re-evaluated once the returned future completes or
+   * a deadline passes, whichever comes first.
+   *
+   * @param inputs the data included as part of each submission
+   * @return a future that completes once the values have been fetched
+   */
+  default CompletableFuture<?> prefetch(List<JsonNode> inputs) {
+    return CompletableFuture.completedFuture(null);
+  }
+
   /**
    * Perform any initialization required by this input
    *
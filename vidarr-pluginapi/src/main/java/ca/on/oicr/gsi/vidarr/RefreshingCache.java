@@ -0,0 +1,221 @@
+package ca.on.oicr.gsi.vidarr;
+
+import io.prometheus.client.Counter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A bounded cache that fetches values asynchronously and keeps serving old values while they are
+ * refreshed
+ *
+ * <p>When a value is older than the time-to-live, the old value is returned and a refresh is
+ * started in the background. Reading never waits: if a value is missing, a fetch is started and
+ * nothing is returned. Concurrent requests for the same key share a single fetch. When the cache is
+ * full, the least recently used entries are discarded.
+ *
+ * <p>Callers that know which keys will be needed soon can {@link #prefetch(Collection)} them, which
+ * uses a bulk fetch if one is available, and wait on the result once before reading them.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class RefreshingCache<K, V> {
+  private final class Entry {
+    private Instant fetched = Instant.EPOCH;
+    private CompletableFuture<V> inFlight;
+    private V value;
+  }
+
+  private static final Counter requests =
+      Counter.build(
+              "vidarr_refreshing_cache_requests",
+              "The number of values requested from a cache and whether they were fresh, stale, or"
+                  + " missing")
+          .labelNames("cache", "result")
+          .register();
+
+  private static CompletableFuture<Void> allFinished(List<? extends CompletableFuture<?>> futures) {
+    return CompletableFuture.allOf(
+        futures.stream()
+            .map(future -> future.handle((value, throwable) -> null))
+            .toArray(CompletableFuture[]::new));
+  }
+
+  private final Function<Set<K>, CompletableFuture<Map<K, V>>> bulkFetcher;
+  private final Map<K, Entry> entries;
+  private final Function<K, CompletableFuture<V>> fetcher;
+  private final String name;
+  private final Duration ttl;
+
+  /**
+   * Create a new cache
+   *
+   * @param name the name of the cache, used in metrics
+   * @param ttl the time after which a value should be refreshed
+   * @param maxSize the maximum number of values to keep
+   * @param fetcher a function to fetch a single value
+   * @param bulkFetcher a function to fetch many values in one request, or null to use the single
+   *     value fetcher for each key; keys missing from the result are treated as failures
+   */
+  public RefreshingCache(
+      String name,
+      Duration ttl,
+      int maxSize,
+      Function<K, CompletableFuture<V>> fetcher,
+      Function<Set<K>, CompletableFuture<Map<K, V>>> bulkFetcher) {
+    this.name = name;
+    this.ttl = ttl;
+    this.fetcher = fetcher;
+    this.bulkFetcher = bulkFetcher;
+    entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  private void complete(K key, Entry entry, V value, Throwable throwable) {
+    synchronized (this) {
+      entry.inFlight = null;
+      if (value != null) {
+        entry.value = value;
+        entry.fetched = Instant.now();
+      } else if (entry.value == null) {
+        // Don't keep a useless entry around; the next request will try again
+        entries.remove(key, entry);
+      }
+    }
+    if (throwable != null) {
+      throwable.printStackTrace();
+    }
+  }
+
+  /**
+   * Get a value
+   *
+   * <p>If a value is present, it is returned immediately, even if it is stale. Otherwise, a fetch
+   * is started, if one is not already running, and the value is only returned if the fetch finishes
+   * immediately. This never waits for a fetch.
+   *
+   * @param key the key to look up
+   * @return the value, or empty if it is not available yet
+   */
+  public synchronized Optional<V> get(K key) {
+    final var entry = entries.computeIfAbsent(key, k -> new Entry());
+    if (entry.value != null) {
+      final boolean stale = isStale(entry);
+      requests.labels(name, stale ? "stale" : "fresh").inc();
+      if (stale) {
+        start(key, entry);
+      }
+      return Optional.of(entry.value);
+    }
+    requests.labels(name, "missing").inc();
+    start(key, entry);
+    // A fetch that has already finished stores its value before returning
+    return Optional.ofNullable(entry.value);
+  }
+
+  /** Discard all values */
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  private boolean isStale(Entry entry) {
+    return !Instant.now().isBefore(entry.fetched.plus(ttl));
+  }
+
+  /**
+   * Start fetching any of the keys that are missing or stale
+   *
+   * <p>This does not wait for the values to be fetched.
+   *
+   * @param keys the keys that will be needed
+   * @return a future that completes once every fetch for these keys has finished, whether or not it
+   *     succeeded; it never completes exceptionally
+   */
+  public CompletableFuture<Void> prefetch(Collection<K> keys) {
+    final List<CompletableFuture<V>> pending = new ArrayList<>();
+    if (bulkFetcher == null) {
+      synchronized (this) {
+        for (final var key : keys) {
+          final var entry = entries.computeIfAbsent(key, k -> new Entry());
+          if (entry.value == null || isStale(entry)) {
+            pending.add(start(key, entry));
+          }
+        }
+      }
+      return allFinished(pending);
+    }
+    final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+    synchronized (this) {
+      for (final var key : keys) {
+        final var entry = entries.computeIfAbsent(key, k -> new Entry());
+        if (entry.inFlight != null) {
+          pending.add(entry.inFlight);
+        } else if (entry.value == null || isStale(entry)) {
+          final var future = new CompletableFuture<V>();
+          entry.inFlight = future;
+          future.whenComplete((value, throwable) -> complete(key, entry, value, throwable));
+          futures.put(key, future);
+          pending.add(future);
+        }
+      }
+    }
+    if (futures.isEmpty()) {
+      return allFinished(pending);
+    }
+    CompletableFuture<Map<K, V>> result;
+    try {
+      result = bulkFetcher.apply(futures.keySet());
+    } catch (Exception e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+    result.whenComplete(
+        (values, throwable) -> {
+          if (throwable != null) {
+            throwable.printStackTrace();
+          }
+          int missing = 0;
+          for (final var future : futures.entrySet()) {
+            final V value = values == null ? null : values.get(future.getKey());
+            if (value == null) {
+              missing++;
+            }
+            // Waiting callers get an empty result for missing values
+            future.getValue().complete(value);
+          }
+          if (missing > 0) {
+            System.err.printf("Bulk fetch for %s did not return %d values\n", name, missing);
+          }
+        });
+    return allFinished(pending);
+  }
+
+  private CompletableFuture<V> start(K key, Entry entry) {
+    if (entry.inFlight != null) {
+      return entry.inFlight;
+    }
+    CompletableFuture<V> future;
+    try {
+      future = fetcher.apply(key);
+    } catch (Exception e) {
+      future = CompletableFuture.failedFuture(e);
+    }
+    entry.inFlight = future;
+    // If the fetch has already finished, this clears the in-flight future immediately
+    future.whenComplete((value, throwable) -> complete(key, entry, value, throwable));
+    return future;
+  }
+}
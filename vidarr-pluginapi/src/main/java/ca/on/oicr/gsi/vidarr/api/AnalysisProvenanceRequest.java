@@ -8,9 +8,11 @@ import java.util.Set;
 public class AnalysisProvenanceRequest {
   private Set<AnalysisOutputType> analysisOutputTypes =
       Collections.singleton(AnalysisOutputType.FILE);
+  private long afterId;
   private long epoch;
   private Set<String> excludeWorkflows = Collections.emptySet();
   private boolean includeParameters;
+  private int pageSize;
   private long timestamp;
   private VersionPolicy versionPolicy = VersionPolicy.NONE;
   private Set<String> versionTypes = Collections.emptySet();
@@ -19,6 +21,10 @@ public class AnalysisProvenanceRequest {
     return analysisOutputTypes;
   }
 
+  public long getAfterId() {
+    return afterId;
+  }
+
   public long getEpoch() {
     return epoch;
   }
@@ -27,6 +33,10 @@ public class AnalysisProvenanceRequest {
     return excludeWorkflows;
   }
 
+  public int getPageSize() {
+    return pageSize;
+  }
+
   public long getTimestamp() {
     return timestamp;
   }
@@ -47,6 +57,10 @@ public class AnalysisProvenanceRequest {
     this.analysisOutputTypes = analysisOutputTypes;
   }
 
+  public void setAfterId(long afterId) {
+    this.afterId = afterId;
+  }
+
   public void setEpoch(long epoch) {
     this.epoch = epoch;
   }
@@ -59,6 +73,10 @@ public class AnalysisProvenanceRequest {
     this.includeParameters = includeParameters;
   }
 
+  public void setPageSize(int pageSize) {
+    this.pageSize = pageSize;
+  }
+
   public void setTimestamp(long timestamp) {
     this.timestamp = timestamp;
   }
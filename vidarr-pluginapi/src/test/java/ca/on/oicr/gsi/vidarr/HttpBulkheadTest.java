@@ -0,0 +1,288 @@
+package ca.on.oicr.gsi.vidarr;
+
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.PushPromiseHandler;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HttpBulkheadTest {
+  /** An HTTP client that holds every request until the test answers it */
+  private static final class FakeClient extends HttpClient {
+    private final Queue<Consumer<Integer>> pending = new ArrayDeque<>();
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+      return Redirect.NEVER;
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+      return Optional.empty();
+    }
+
+    /** Answer the oldest request with a status, or with a connection failure if null */
+    void respond(Integer status) {
+      final Consumer<Integer> request;
+      synchronized (this) {
+        request = pending.poll();
+      }
+      Assert.assertNotNull("No request was sent", request);
+      request.accept(status);
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, BodyHandler<T> handler) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+        HttpRequest request, BodyHandler<T> handler) {
+      final var result = new CompletableFuture<HttpResponse<T>>();
+      synchronized (this) {
+        pending.add(
+            status -> {
+              if (status == null) {
+                result.completeExceptionally(new IOException("Connection refused"));
+                return;
+              }
+              try {
+                handler.apply(new FakeInfo(status));
+                result.complete(new FakeResponse<>(request, status));
+              } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+              }
+            });
+      }
+      return result;
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+        HttpRequest request, BodyHandler<T> handler, PushPromiseHandler<T> pushPromiseHandler) {
+      return sendAsync(request, handler);
+    }
+
+    synchronized int sent() {
+      return pending.size();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+      return null;
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+      return null;
+    }
+
+    @Override
+    public Version version() {
+      return Version.HTTP_1_1;
+    }
+  }
+
+  private record FakeInfo(int statusCode) implements ResponseInfo {
+    @Override
+    public HttpHeaders headers() {
+      return HttpHeaders.of(Map.of(), (name, value) -> true);
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_1_1;
+    }
+  }
+
+  private record FakeResponse<T>(HttpRequest request, int statusCode) implements HttpResponse<T> {
+    @Override
+    public T body() {
+      return null;
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return HttpHeaders.of(Map.of(), (name, value) -> true);
+    }
+
+    @Override
+    public Optional<HttpResponse<T>> previousResponse() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return Optional.empty();
+    }
+
+    @Override
+    public URI uri() {
+      return request.uri();
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return HttpClient.Version.HTTP_1_1;
+    }
+  }
+
+  private static final Duration OPEN = Duration.ofMillis(100);
+  private static final URI SERVER = URI.create("http://server.example.com/api");
+
+  private static CompletableFuture<HttpResponse<Void>> send(
+      HttpBulkhead bulkhead, FakeClient client) {
+    return bulkhead.send(client, HttpRequest.newBuilder(SERVER).build(), BodyHandlers.discarding());
+  }
+
+  private static void waitForProbe(FakeClient client) throws InterruptedException {
+    for (int i = 0; i < 50 && client.sent() == 0; i++) {
+      Thread.sleep(OPEN.toMillis());
+    }
+  }
+
+  @Test
+  public void testBodyErrorIsNotFailure() {
+    final var client = new FakeClient();
+    final var bulkhead = HttpBulkhead.create("test-body", 5, 1, OPEN);
+    final var result =
+        bulkhead.send(
+            client,
+            HttpRequest.newBuilder(SERVER).build(),
+            info -> {
+              throw new IllegalStateException("Cannot parse body");
+            });
+    client.respond(200);
+    Assert.assertTrue(result.isCompletedExceptionally());
+    Assert.assertFalse(bulkhead.isOpen(SERVER));
+  }
+
+  @Test
+  public void testClosesAfterProbe() throws InterruptedException {
+    final var client = new FakeClient();
+    final var bulkhead = HttpBulkhead.create("test-close", 5, 2, OPEN);
+    send(bulkhead, client);
+    send(bulkhead, client);
+    client.respond(500);
+    Assert.assertFalse(bulkhead.isOpen(SERVER));
+    client.respond(null);
+    Assert.assertTrue(bulkhead.isOpen(SERVER));
+
+    final var probe = send(bulkhead, client);
+    final var held = send(bulkhead, client);
+    Assert.assertEquals(0, client.sent());
+    waitForProbe(client);
+    Assert.assertEquals(1, client.sent());
+    client.respond(200);
+    Assert.assertEquals(200, probe.join().statusCode());
+    Assert.assertFalse(bulkhead.isOpen(SERVER));
+    Assert.assertEquals(1, client.sent());
+    client.respond(200);
+    Assert.assertEquals(200, held.join().statusCode());
+  }
+
+  @Test
+  public void testInFlightLimit() {
+    final var client = new FakeClient();
+    final var bulkhead = HttpBulkhead.create("test-limit", 2, 5, OPEN);
+    for (int i = 0; i < 3; i++) {
+      send(bulkhead, client);
+    }
+    Assert.assertEquals(2, client.sent());
+    client.respond(200);
+    Assert.assertEquals(2, client.sent());
+  }
+
+  @Test
+  public void testOldResultsIgnoredWhileOpen() {
+    final var client = new FakeClient();
+    final var bulkhead = HttpBulkhead.create("test-old", 5, 1, OPEN);
+    send(bulkhead, client);
+    send(bulkhead, client);
+    client.respond(503);
+    Assert.assertTrue(bulkhead.isOpen(SERVER));
+    // This request was sent before the breaker opened, so it is not a probe
+    client.respond(200);
+    Assert.assertTrue(bulkhead.isOpen(SERVER));
+  }
+
+  @Test
+  public void testQueueDrainsWhileOpen() throws InterruptedException {
+    final var client = new FakeClient();
+    final var bulkhead = HttpBulkhead.create("test-drain", 5, 1, OPEN);
+    send(bulkhead, client);
+    client.respond(429);
+    Assert.assertTrue(bulkhead.isOpen(SERVER));
+    // Nothing is in flight, so only the scheduled check can send the queued requests
+    final var first = send(bulkhead, client);
+    final var second = send(bulkhead, client);
+    final var third = send(bulkhead, client);
+    waitForProbe(client);
+    client.respond(200);
+    Assert.assertEquals(2, client.sent());
+    client.respond(200);
+    client.respond(200);
+    Assert.assertTrue(first.isDone() && second.isDone() && third.isDone());
+  }
+
+  @Test
+  public void testReopensAfterFailedProbe() throws InterruptedException {
+    final var client = new FakeClient();
+    final var bulkhead = HttpBulkhead.create("test-reopen", 5, 1, OPEN);
+    send(bulkhead, client);
+    client.respond(500);
+    send(bulkhead, client);
+    send(bulkhead, client);
+    waitForProbe(client);
+    Assert.assertEquals(1, client.sent());
+    client.respond(502);
+    Assert.assertTrue(bulkhead.isOpen(SERVER));
+    Assert.assertEquals(0, client.sent());
+    waitForProbe(client);
+    Assert.assertEquals(1, client.sent());
+    client.respond(200);
+    Assert.assertFalse(bulkhead.isOpen(SERVER));
+  }
+}
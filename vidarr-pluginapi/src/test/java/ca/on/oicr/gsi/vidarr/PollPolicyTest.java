@@ -0,0 +1,59 @@
+package ca.on.oicr.gsi.vidarr;
+
+import java.time.Duration;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PollPolicyTest {
+  @Test
+  public void testBackoffIsClamped() {
+    final var policy = PollPolicy.backoff(Duration.ofMinutes(2), Duration.ofMinutes(20));
+    Assert.assertEquals(Duration.ofMinutes(2), policy.delay(Duration.ZERO));
+    Assert.assertEquals(Duration.ofMinutes(5), policy.delay(Duration.ofMinutes(20)));
+    Assert.assertEquals(Duration.ofMinutes(20), policy.delay(Duration.ofHours(10)));
+  }
+
+  @Test
+  public void testConfigure() {
+    final var settings = new PollSettings();
+    settings.setMaximumSeconds(600);
+    final var policy =
+        PollPolicy.backoff(Duration.ofMinutes(2), Duration.ofMinutes(20)).configure(settings);
+    Assert.assertEquals(Duration.ofMinutes(2), policy.delay(Duration.ZERO));
+    Assert.assertEquals(Duration.ofMinutes(10), policy.delay(Duration.ofHours(10)));
+
+    final var workflowSettings = new PollSettings();
+    workflowSettings.setExpectedSeconds(3600);
+    final var workflowPolicy = policy.configure(workflowSettings);
+    Assert.assertEquals(Duration.ofMinutes(10), workflowPolicy.delay(Duration.ZERO));
+    Assert.assertEquals(Duration.ofMinutes(5), workflowPolicy.delay(Duration.ofMinutes(50)));
+    Assert.assertSame(policy, policy.configure(null));
+  }
+
+  @Test
+  public void testExpectedDuration() {
+    final var policy =
+        PollPolicy.backoff(Duration.ofMinutes(1), Duration.ofMinutes(30))
+            .expecting(Duration.ofHours(1));
+    Assert.assertEquals(Duration.ofMinutes(30), policy.delay(Duration.ZERO));
+    Assert.assertEquals(Duration.ofMinutes(5), policy.delay(Duration.ofMinutes(50)));
+    Assert.assertEquals(Duration.ofMinutes(15), policy.delay(Duration.ofMinutes(60)));
+  }
+
+  @Test
+  public void testFixed() {
+    final var policy = PollPolicy.fixed(Duration.ofMinutes(5));
+    Assert.assertEquals(Duration.ofMinutes(5), policy.delay(Duration.ZERO));
+    Assert.assertEquals(Duration.ofMinutes(5), policy.delay(Duration.ofDays(3)));
+  }
+
+  @Test
+  public void testJitterStaysInRange() {
+    final var policy = PollPolicy.fixed(Duration.ofMinutes(10)).withJitter(0.2);
+    for (int i = 0; i < 1000; i++) {
+      final var delay = policy.delay(Duration.ofMinutes(i));
+      Assert.assertTrue(delay.compareTo(Duration.ofMinutes(8)) >= 0);
+      Assert.assertTrue(delay.compareTo(Duration.ofMinutes(12)) <= 0);
+    }
+  }
+}
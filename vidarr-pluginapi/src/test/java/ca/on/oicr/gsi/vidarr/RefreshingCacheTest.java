@@ -0,0 +1,136 @@
+package ca.on.oicr.gsi.vidarr;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RefreshingCacheTest {
+  @Test
+  public void testBulkPrefetch() {
+    final var single = new AtomicInteger();
+    final var bulk = new AtomicInteger();
+    final var cache =
+        new RefreshingCache<String, Integer>(
+            "test-bulk",
+            Duration.ofHours(1),
+            10,
+            key -> {
+              single.incrementAndGet();
+              return CompletableFuture.completedFuture(key.length());
+            },
+            keys -> {
+              bulk.incrementAndGet();
+              return CompletableFuture.completedFuture(Map.of("a", 10, "bb", 20));
+            });
+    cache.prefetch(List.of("a", "bb"));
+    Assert.assertEquals(Optional.of(10), cache.get("a"));
+    Assert.assertEquals(Optional.of(20), cache.get("bb"));
+    Assert.assertEquals(1, bulk.get());
+    Assert.assertEquals(0, single.get());
+  }
+
+  @Test
+  public void testCoalesced() {
+    final var calls = new AtomicInteger();
+    final var pending = new CompletableFuture<Integer>();
+    final var cache =
+        new RefreshingCache<String, Integer>(
+            "test-coalesced",
+            Duration.ofHours(1),
+            10,
+            key -> {
+              calls.incrementAndGet();
+              return pending;
+            },
+            null);
+    cache.prefetch(List.of("a"));
+    cache.prefetch(List.of("a"));
+    pending.complete(3);
+    Assert.assertEquals(Optional.of(3), cache.get("a"));
+    Assert.assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testEviction() {
+    final var calls = new AtomicInteger();
+    final var cache =
+        new RefreshingCache<String, Integer>(
+            "test-eviction",
+            Duration.ofHours(1),
+            1,
+            key -> CompletableFuture.completedFuture(calls.incrementAndGet()),
+            null);
+    Assert.assertEquals(Optional.of(1), cache.get("a"));
+    Assert.assertEquals(Optional.of(2), cache.get("b"));
+    Assert.assertEquals(Optional.of(3), cache.get("a"));
+  }
+
+  @Test
+  public void testMissingDoesNotWait() {
+    final var pending = new CompletableFuture<Integer>();
+    final var calls = new AtomicInteger();
+    final var cache =
+        new RefreshingCache<String, Integer>(
+            "test-missing",
+            Duration.ofHours(1),
+            10,
+            key -> {
+              calls.incrementAndGet();
+              return pending;
+            },
+            null);
+    Assert.assertEquals(Optional.empty(), cache.get("a"));
+    Assert.assertEquals(Optional.empty(), cache.get("a"));
+    Assert.assertEquals(1, calls.get());
+    pending.complete(4);
+    Assert.assertEquals(Optional.of(4), cache.get("a"));
+  }
+
+  @Test
+  public void testPrefetchCompletes() {
+    final var pending = new CompletableFuture<Map<String, Integer>>();
+    final var cache =
+        new RefreshingCache<String, Integer>(
+            "test-prefetch",
+            Duration.ofHours(1),
+            10,
+            key -> CompletableFuture.failedFuture(new IllegalStateException()),
+            keys -> pending);
+    final var first = cache.prefetch(List.of("a", "b"));
+    // Keys already being fetched are waited for too
+    final var second = cache.prefetch(List.of("a"));
+    Assert.assertFalse(first.isDone());
+    Assert.assertFalse(second.isDone());
+    pending.complete(Map.of("a", 1));
+    Assert.assertTrue(first.isDone());
+    Assert.assertTrue(second.isDone());
+    Assert.assertFalse(first.isCompletedExceptionally());
+    Assert.assertEquals(Optional.of(1), cache.get("a"));
+    Assert.assertTrue(cache.prefetch(List.of("a")).isDone());
+  }
+
+  @Test
+  public void testServesStale() {
+    final var refresh = new CompletableFuture<Integer>();
+    final var calls = new AtomicInteger();
+    final var cache =
+        new RefreshingCache<String, Integer>(
+            "test-stale",
+            Duration.ZERO,
+            10,
+            key ->
+                calls.incrementAndGet() == 1 ? CompletableFuture.completedFuture(1) : refresh,
+            null);
+    Assert.assertEquals(Optional.of(1), cache.get("a"));
+    Assert.assertEquals(Optional.of(1), cache.get("a"));
+    Assert.assertEquals(Optional.of(1), cache.get("a"));
+    Assert.assertEquals(2, calls.get());
+    refresh.complete(2);
+    Assert.assertEquals(Optional.of(2), cache.get("a"));
+  }
+}
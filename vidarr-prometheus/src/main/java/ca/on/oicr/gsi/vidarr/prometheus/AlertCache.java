@@ -10,22 +10,41 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.stream.Stream;
+import java.util.Set;
 
-public final class AlertCache extends ValueCache<Stream<AlertDto>> {
+/**
+ * Caches the AutoInhibit alerts from Alertmanager, indexed by the values of the labels of interest
+ */
+public final class AlertCache extends ValueCache<InhibitedValues> {
   private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
+  private final String alertName;
   private final String alertmanagerUrl;
+  private final String environment;
+  private final Set<String> labelsOfInterest;
   private final Integer requestTimeout;
+  private final Set<String> valuesOfInterest;
 
-  public AlertCache(String name, String alertManagerUrl, Integer requestTimeout, Integer ttl) {
+  public AlertCache(
+      String name,
+      String alertManagerUrl,
+      Integer requestTimeout,
+      Integer ttl,
+      String alertName,
+      String environment,
+      Set<String> labelsOfInterest,
+      Set<String> valuesOfInterest) {
     super("alertmanager " + name, ttl, ReplacingRecord::new);
     this.alertmanagerUrl = alertManagerUrl;
     this.requestTimeout = requestTimeout;
+    this.alertName = alertName;
+    this.environment = environment;
+    this.labelsOfInterest = labelsOfInterest;
+    this.valuesOfInterest = valuesOfInterest;
   }
 
-  protected Stream<AlertDto> fetch(Instant lastUpdated) throws Exception {
+  protected InhibitedValues fetch(Instant lastUpdated) throws Exception {
     if (alertmanagerUrl == null) {
-      return Stream.empty();
+      return InhibitedValues.EMPTY;
     }
     var response =
         HTTP_CLIENT.send(
@@ -36,8 +55,9 @@ public final class AlertCache extends ValueCache<Stream<AlertDto>> {
             new JsonBodyHandler<>(MAPPER, AlertResultDto.class));
     final var result = response.body().get();
     if (result == null || result.getData() == null) {
-      return Stream.empty();
+      return InhibitedValues.EMPTY;
     }
-    return result.getData().stream();
+    return InhibitedValues.of(
+        result.getData().stream(), alertName, environment, labelsOfInterest, valuesOfInterest);
   }
 }
@@ -55,18 +55,16 @@ public class AlertDto {
   private List<String> lb = new ArrayList<>(2);
 
   /**
-   * Check if our alert is of type AutoInhibit that specifies the current Vidarr environment, and
-   * one of the given labels matches the alert's labels
+   * Get the values of the labels of interest if this is an alert of the given type that applies
+   * to the current Vidarr environment
    *
+   * @param alertname the type of alert
    * @param environment the specified environment
    * @param labelsOfInterest the specified label names
-   * @return the matching labels
+   * @return the values of the labels of interest that are present
    */
-  public Stream<String> matches(
-      String alertname,
-      String environment,
-      Set<String> labelsOfInterest,
-      Stream<String> valuesOfInterest) {
+  public Stream<String> inhibitedValues(
+      String alertname, String environment, Set<String> labelsOfInterest) {
     if (!labels.get("alertname").asText("").equals(alertname)) {
       return Stream.empty();
     }
@@ -74,15 +72,28 @@ public class AlertDto {
         && !labels.get("environment").asText("").equals(environment)) {
       return Stream.empty();
     }
+    return labelsOfInterest.stream().filter(labels::hasNonNull).map(l -> labels.get(l).asText(""));
+  }
 
+  /**
+   * Check if our alert is of type AutoInhibit that specifies the current Vidarr environment, and
+   * one of the given labels matches the alert's labels
+   *
+   * @param environment the specified environment
+   * @param labelsOfInterest the specified label names
+   * @return the matching labels
+   */
+  public Stream<String> matches(
+      String alertname,
+      String environment,
+      Set<String> labelsOfInterest,
+      Stream<String> valuesOfInterest) {
     // Lowercase to guard against bespoke workflow names
     Set<String> targetValues =
         valuesOfInterest.map(v -> v.toLowerCase()).collect(Collectors.toSet());
 
-    return labelsOfInterest.stream()
-        .filter(labels::hasNonNull)
-        .filter(l -> targetValues.contains(labels.get(l).asText("").toLowerCase()))
-        .map(l -> labels.get(l).asText(""));
+    return inhibitedValues(alertname, environment, labelsOfInterest)
+        .filter(v -> targetValues.contains(v.toLowerCase()));
   }
 
   public void setAnnotations(ObjectNode annotations) {
@@ -15,8 +15,10 @@ import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 /**
@@ -24,6 +26,9 @@ import java.util.stream.Stream;
  * existing AutoInhibit alerts in Prometheus Alertmanager. In order to throttle, an active
  * AutoInhibit alert must match 1) this resource's `environment` and 2) one or more of workflow
  * name, workflow name & version (as workflowName_version), or a fixed set of global inhibit values.
+ *
+ * <p>When the cached alerts are refreshed and some values are no longer inhibited, capacity
+ * listeners are notified so that throttled workflow runs are re-evaluated immediately.
  */
 public class AlertmanagerAutoInhibitConsumableResource implements ConsumableResource {
   static final ObjectMapper MAPPER = new ObjectMapper();
@@ -44,9 +49,37 @@ public class AlertmanagerAutoInhibitConsumableResource implements ConsumableReso
   private Integer cacheTtl;
   private Integer cacheRequestTimeout;
   @JsonIgnore private AlertCache cache;
+  @JsonIgnore private final AtomicReference<InhibitedValues> lastSeen =
+      new AtomicReference<>(InhibitedValues.EMPTY);
+  @JsonIgnore private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
 
   public AlertmanagerAutoInhibitConsumableResource() {}
 
+  @Override
+  public void addCapacityListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  private InhibitedValues current() {
+    final var current = cache.get();
+    final var previous = lastSeen.getAndSet(current);
+    if (previous != current && previous.shrunkIn(current)) {
+      // This may be called while Vidarr is checking resources, where capacity events are ignored,
+      // so notify from another thread
+      CompletableFuture.runAsync(() -> listeners.forEach(Runnable::run));
+    }
+    return current;
+  }
+
+  private void refresh() {
+    try {
+      current();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+    CompletableFuture.delayedExecutor(cacheTtl, TimeUnit.MINUTES).execute(this::refresh);
+  }
+
   public Integer getCacheTtl() {
     return cacheTtl;
   }
@@ -103,7 +136,17 @@ public class AlertmanagerAutoInhibitConsumableResource implements ConsumableReso
           "The consumableResources 'alertmanager-auto-inhibit' config is missing "
               + "'valuesOfInterest': [string].");
     }
-    cache = new AlertCache(name, alertmanagerUrl, cacheRequestTimeout, cacheTtl);
+    cache =
+        new AlertCache(
+            name,
+            alertmanagerUrl,
+            cacheRequestTimeout,
+            cacheTtl,
+            alertName,
+            autoInhibitOnEnvironment,
+            labelsOfInterest,
+            valuesOfInterest);
+    CompletableFuture.delayedExecutor(cacheTtl, TimeUnit.MINUTES).execute(this::refresh);
   }
 
   @Override
@@ -134,25 +177,12 @@ public class AlertmanagerAutoInhibitConsumableResource implements ConsumableReso
       Instant createdTime,
       OptionalInt workflowMaxInFlight,
       Optional<JsonNode> input) {
-    String workflowVersionWithUnderscores = workflowVersion.replaceAll("\\.", "_");
     final var matchedAlertValues =
-        cache
-            .get()
-            .flatMap(
-                alert ->
-                    alert.matches(
-                        alertName,
-                        autoInhibitOnEnvironment,
-                        labelsOfInterest,
-                        Stream.of(
-                                valuesOfInterest.stream(),
-                                Stream.of(workflowName),
-                                Stream.of(vidarrId),
-                                Stream.of(
-                                    String.format(
-                                        "%s_%s", workflowName, workflowVersionWithUnderscores)))
-                            .flatMap(Function.identity())))
-            .collect(Collectors.toSet());
+        current()
+            .matching(
+                workflowName,
+                vidarrId,
+                String.format("%s_%s", workflowName, workflowVersion.replace('.', '_')));
     if (matchedAlertValues.isEmpty()) {
       return ConsumableResourceResponse.AVAILABLE;
     } else {
@@ -0,0 +1,78 @@
+package ca.on.oicr.gsi.vidarr.prometheus;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The label values from the currently firing AutoInhibit alerts that match a Vidarr environment
+ *
+ * <p>Values are indexed by their lowercase form so that checking a workflow run is a few hash
+ * lookups. The matches for the configured global values are computed once, when the alerts are
+ * fetched.
+ */
+final class InhibitedValues {
+  static final InhibitedValues EMPTY = new InhibitedValues(Map.of(), Set.of());
+
+  static InhibitedValues of(
+      Stream<AlertDto> alerts,
+      String alertName,
+      String environment,
+      Set<String> labelsOfInterest,
+      Collection<String> globalValues) {
+    final Map<String, Set<String>> byValue = new HashMap<>();
+    alerts
+        .flatMap(alert -> alert.inhibitedValues(alertName, environment, labelsOfInterest))
+        .forEach(
+            value ->
+                byValue.computeIfAbsent(value.toLowerCase(), k -> new TreeSet<>()).add(value));
+    return new InhibitedValues(
+        byValue,
+        globalValues.stream()
+            .map(String::toLowerCase)
+            .map(byValue::get)
+            .filter(Objects::nonNull)
+            .flatMap(Set::stream)
+            .collect(Collectors.toCollection(TreeSet::new)));
+  }
+
+  private final Map<String, Set<String>> byValue;
+  private final Set<String> global;
+
+  private InhibitedValues(Map<String, Set<String>> byValue, Set<String> global) {
+    this.byValue = byValue;
+    this.global = global;
+  }
+
+  /**
+   * Find the alert label values that match any of the given values or the global values
+   *
+   * @param values the values for a workflow run
+   * @return the matching label values, as written in the alerts
+   */
+  Set<String> matching(String... values) {
+    final Set<String> matches = new TreeSet<>(global);
+    for (final String value : values) {
+      final Set<String> found = byValue.get(value.toLowerCase());
+      if (found != null) {
+        matches.addAll(found);
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Check if any value inhibited here is not inhibited in a newer set
+   *
+   * @param newer the newer set of values
+   * @return true if some workflow runs may no longer be inhibited
+   */
+  boolean shrunkIn(InhibitedValues newer) {
+    return !newer.byValue.keySet().containsAll(byValue.keySet());
+  }
+}
@@ -7,20 +7,12 @@ import ca.on.oicr.gsi.vidarr.PriorityInputProvider;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.undertow.server.HttpHandler;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
 public final class PrometheusPriorityInput implements PriorityInput {
-  private static boolean checkLabel(Map<String, String> metric, String label, String value) {
-    if (label == null) {
-      return true;
-    }
-    final var entry = metric.get(label);
-    return entry != null && entry.equals(value);
-  }
-
   public static PriorityInputProvider provider() {
     return () -> Stream.of(new Pair<>("prometheus", PrometheusPriorityInput.class));
   }
@@ -37,22 +29,18 @@ public final class PrometheusPriorityInput implements PriorityInput {
 
   @Override
   public int compute(String workflowName, String workflowVersion, Instant created, JsonNode input) {
-    return cache
-        .get()
-        .filter(
-            result ->
-                labels.stream()
-                        .allMatch(
-                            label -> {
-                              final var entry = result.getMetric().get(label);
-                              return entry != null && entry.equals(input.get(label).asText());
-                            })
-                    && checkLabel(result.getMetric(), workflowNameLabel, workflowName)
-                    && checkLabel(result.getMetric(), workflowVersionLabel, workflowVersion))
-        .flatMap(result -> result.getValue().stream())
-        .mapToInt(Float::intValue)
-        .findFirst()
-        .orElse(defaultPriority);
+    final List<String> key = new ArrayList<>(labels.size() + 2);
+    for (final var label : labels) {
+      final var value = input.get(label);
+      key.add(value == null ? "" : value.asText());
+    }
+    if (workflowNameLabel != null) {
+      key.add(workflowName);
+    }
+    if (workflowVersionLabel != null) {
+      key.add(workflowVersion);
+    }
+    return cache.get().getOrDefault(key, defaultPriority);
   }
 
   public int getDefaultPriority() {
@@ -123,7 +111,16 @@ public final class PrometheusPriorityInput implements PriorityInput {
 
   @Override
   public void startup(String resourceName, String inputName) {
+    final List<String> indexLabels = new ArrayList<>(labels);
+    indexLabels.add(workflowNameLabel);
+    indexLabels.add(workflowVersionLabel);
     cache =
-        new VectorCache(resourceName + " " + inputName, url, query, cacheRequestTimeout, cacheTtl);
+        new VectorCache(
+            resourceName + " " + inputName,
+            url,
+            query,
+            cacheRequestTimeout,
+            cacheTtl,
+            indexLabels);
   }
 }
@@ -13,25 +13,53 @@ import java.net.http.HttpRequest.BodyPublishers;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
-public final class VectorCache extends ValueCache<Stream<VectorResultDto>> {
+/**
+ * Caches the results of a Prometheus vector query, indexed by the values of a set of labels
+ *
+ * <p>The index is built once when the query is refreshed, so looking up a value does not need to
+ * scan the results. If several results have the same label values, the first one wins.
+ */
+public final class VectorCache extends ValueCache<Map<List<String>, Integer>> {
   private static final HttpClient HTTP_CLIENT = HttpClient.newHttpClient();
+  private final List<String> labels;
   private final String prometheusUrl;
   private final String query;
   private final Integer requestTimeout;
 
+  /**
+   * Create a new cache
+   *
+   * @param name the name of the cache, for the status page
+   * @param prometheusUrl the Prometheus server to query
+   * @param query the PromQL query to run
+   * @param requestTimeout the timeout, in minutes, for the query
+   * @param ttl the number of minutes to keep results
+   * @param labels the labels to index results by, in the order that lookup keys will provide
+   *     their values; null entries are ignored
+   */
   public VectorCache(
-      String name, String prometheusUrl, String query, Integer requestTimeout, Integer ttl) {
+      String name,
+      String prometheusUrl,
+      String query,
+      Integer requestTimeout,
+      Integer ttl,
+      List<String> labels) {
     super("prometheus " + name, ttl, ReplacingRecord::new);
     this.prometheusUrl = prometheusUrl;
     this.query = query;
     this.requestTimeout = requestTimeout;
+    this.labels = labels.stream().filter(Objects::nonNull).toList();
   }
 
-  protected Stream<VectorResultDto> fetch(Instant lastUpdated) throws Exception {
+  protected Map<List<String>, Integer> fetch(Instant lastUpdated) throws Exception {
     if (prometheusUrl == null) {
-      return Stream.empty();
+      return Map.of();
     }
     var response =
         HTTP_CLIENT.send(
@@ -44,8 +72,27 @@ public final class VectorCache extends ValueCache<Stream<VectorResultDto>> {
             new JsonBodyHandler<>(MAPPER, QueryResponseDto.class));
     final var result = response.body().get();
     if (result == null || result.getData() == null) {
-      return Stream.empty();
+      return Map.of();
     }
-    return result.getData().getResult().stream();
+    final Map<List<String>, Integer> index = new HashMap<>();
+    for (final var vector : result.getData().getResult()) {
+      if (vector.getMetric() == null
+          || vector.getValue() == null
+          || vector.getValue().isEmpty()) {
+        continue;
+      }
+      final List<String> key = new ArrayList<>(labels.size());
+      for (final var label : labels) {
+        final var value = vector.getMetric().get(label);
+        if (value == null) {
+          break;
+        }
+        key.add(value);
+      }
+      if (key.size() == labels.size()) {
+        index.putIfAbsent(List.copyOf(key), vector.getValue().get(0).intValue());
+      }
+    }
+    return index;
   }
 }
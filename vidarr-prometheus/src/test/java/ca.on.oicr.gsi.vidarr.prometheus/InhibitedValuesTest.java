@@ -0,0 +1,62 @@
+package ca.on.oicr.gsi.vidarr.prometheus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+public class InhibitedValuesTest {
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Set<String> configLabels = Set.of("job", "scope");
+
+  private AlertDto alert(String environment, String job) {
+    AlertDto alert = new AlertDto();
+    ObjectNode labels = mapper.createObjectNode();
+    labels.put("environment", environment);
+    labels.put("job", job);
+    labels.put("alertname", "AutoInhibit");
+    alert.setLabels(labels);
+    return alert;
+  }
+
+  private InhibitedValues index(AlertDto... alerts) {
+    return InhibitedValues.of(
+        Stream.of(alerts), "AutoInhibit", "testing", configLabels, Set.of("vidarr-clinical"));
+  }
+
+  @Test
+  public void whenGlobalValueInhibited_matchingShouldAlwaysMatch() {
+    InhibitedValues sut = index(alert("testing", "vidarr-clinical"));
+
+    assertEquals(Set.of("vidarr-clinical"), sut.matching("bamqc4"));
+  }
+
+  @Test
+  public void whenWorkflowInhibited_matchingShouldIgnoreCase() {
+    InhibitedValues sut = index(alert("testing", "BamQC4"));
+
+    assertEquals(Set.of("BamQC4"), sut.matching("bamqc4"));
+    assertEquals(Set.of(), sut.matching("fastqc"));
+  }
+
+  @Test
+  public void whenEnvironmentDiffers_matchingShouldNotMatch() {
+    InhibitedValues sut = index(alert("production", "bamqc4"));
+
+    assertEquals(Set.of(), sut.matching("bamqc4"));
+  }
+
+  @Test
+  public void whenAlertResolved_shrunkInShouldBeTrue() {
+    InhibitedValues before = index(alert("testing", "bamqc4"), alert("testing", "fastqc"));
+    InhibitedValues after = index(alert("testing", "fastqc"));
+
+    assertTrue(before.shrunkIn(after));
+    assertFalse(after.shrunkIn(before));
+  }
+}
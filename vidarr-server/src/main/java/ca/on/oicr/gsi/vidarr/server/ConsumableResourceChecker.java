@@ -1,31 +1,35 @@
 package ca.on.oicr.gsi.vidarr.server;
 
-import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.ACTIVE_WORKFLOW_RUN;
-
 import ca.on.oicr.gsi.Pair;
 import ca.on.oicr.gsi.vidarr.ConsumableResource;
 import ca.on.oicr.gsi.vidarr.ConsumableResourceResponse.Visitor;
 import ca.on.oicr.gsi.vidarr.core.Target;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.zaxxer.hikari.HikariDataSource;
 import io.prometheus.client.Counter;
 import io.prometheus.client.Histogram;
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
-import org.jooq.SQLDialect;
-import org.jooq.impl.DSL;
 
 final class ConsumableResourceChecker implements Runnable {
+  /** The outcome of evaluating a workflow run's resources */
+  enum State {
+    /** All resources have been acquired and the workflow run can be started */
+    ACQUIRED,
+    /** The workflow run is no longer live and its resources have been released */
+    FINISHED,
+    /** At least one resource is unavailable */
+    WAITING
+  }
+
+  private static final AtomicLong SEQUENCE = new AtomicLong();
 
   private static final Histogram waitTime =
       Histogram.build(
@@ -43,23 +47,27 @@ final class ConsumableResourceChecker implements Runnable {
           .labelNames("resource", "exception")
           .register();
   private final Map<String, JsonNode> consumableResources;
+  private JsonNode lastTracing;
+  private String lastWaitingResource;
   private final Instant createdTime;
-  private final HikariDataSource dataSource;
   private final long dbId;
-  private final ScheduledExecutorService executor;
+  private final ConsumableResourceDispatcher dispatcher;
+  private boolean done;
   private final AtomicBoolean isLive;
   private final MaxInFlightByWorkflow maxInFlightByWorkflow;
   private final Runnable next;
+  private final long sequence = SEQUENCE.getAndIncrement();
   private final Target target;
   private final ObjectNode tracing = Main.MAPPER.createObjectNode();
   private final String vidarrId;
   private final String workflow;
+  private final WaitingResourceWriter waitingResourceWriter;
   private final String workflowVersion;
 
   public ConsumableResourceChecker(
       Target target,
-      HikariDataSource dataSource,
-      ScheduledExecutorService executor,
+      WaitingResourceWriter waitingResourceWriter,
+      ConsumableResourceDispatcher dispatcher,
       long dbId,
       AtomicBoolean isLive,
       MaxInFlightByWorkflow maxInFlightByWorkflow,
@@ -70,8 +78,8 @@ final class ConsumableResourceChecker implements Runnable {
       Instant createdTime,
       Runnable next) {
     this.target = target;
-    this.dataSource = dataSource;
-    this.executor = executor;
+    this.waitingResourceWriter = waitingResourceWriter;
+    this.dispatcher = dispatcher;
     this.dbId = dbId;
     this.isLive = isLive;
     this.workflow = workflow;
@@ -83,9 +91,26 @@ final class ConsumableResourceChecker implements Runnable {
     this.maxInFlightByWorkflow = maxInFlightByWorkflow;
   }
 
-  @Override
-  public void run() {
+  Instant createdTime() {
+    return createdTime;
+  }
+
+  Optional<JsonNode> input(ConsumableResource resource) {
+    return resource.inputFromSubmitter().map(def -> consumableResources.get(def.first()));
+  }
+
+  /**
+   * Try to acquire all the resources for this workflow run
+   *
+   * <p>Once this has returned {@link State#ACQUIRED} or {@link State#FINISHED}, all subsequent
+   * calls return {@link State#FINISHED} without checking any resources.
+   */
+  synchronized State evaluate() {
+    if (done) {
+      return State.FINISHED;
+    }
     if (!isLive.get()) {
+      done = true;
       // Each resource performs a check and only releases resources if they've been acquired
       target
           .consumableResources()
@@ -99,7 +124,7 @@ final class ConsumableResourceChecker implements Runnable {
                           b.second()
                               .inputFromSubmitter()
                               .map(def -> consumableResources.get(def.first()))));
-      return;
+      return State.FINISHED;
     }
     int i = 0;
     final List<Pair<String, ConsumableResource>> resourceBrokers =
@@ -170,10 +195,15 @@ final class ConsumableResourceChecker implements Runnable {
                   vidarrId,
                   b.second().inputFromSubmitter().map(def -> consumableResources.get(def.first())));
         }
-        executor.schedule(this, 1, TimeUnit.MINUTES);
-        return;
+        return State.WAITING;
       }
     }
+    done = true;
+    return State.ACQUIRED;
+  }
+
+  /** Start the workflow run once all resources have been acquired */
+  void launch() {
     final long waiting = Duration.between(createdTime, Instant.now()).toSeconds();
     tracing.put("vidarr-waiting", waiting);
     updateBlockedResource(null);
@@ -181,20 +211,31 @@ final class ConsumableResourceChecker implements Runnable {
     next.run();
   }
 
-  private void updateBlockedResource(String error) {
-    try (final Connection connection = dataSource.getConnection()) {
-      DSL.using(connection, SQLDialect.POSTGRES)
-          .transaction(
-              configuration -> {
-                DSL.using(configuration)
-                    .update(ACTIVE_WORKFLOW_RUN)
-                    .set(ACTIVE_WORKFLOW_RUN.WAITING_RESOURCE, error)
-                    .set(ACTIVE_WORKFLOW_RUN.TRACING, tracing)
-                    .where(ACTIVE_WORKFLOW_RUN.ID.eq(dbId))
-                    .execute();
-              });
-    } catch (SQLException ex) {
-      ex.printStackTrace();
+  @Override
+  public void run() {
+    dispatcher.enqueue(this);
+  }
+
+  long sequence() {
+    return sequence;
+  }
+
+  Target target() {
+    return target;
+  }
+
+  private synchronized void updateBlockedResource(String error) {
+    // Most evaluations of a waiting workflow run produce the same result as the last one, so only
+    // write when something has changed
+    if (lastTracing != null
+        && Objects.equals(error, lastWaitingResource)
+        && tracing.equals(lastTracing)) {
+      waitingResourceWriter.skip();
+      return;
     }
+    lastWaitingResource = error;
+    lastTracing = tracing.deepCopy();
+    waitingResourceWriter.write(dbId, error, lastTracing);
   }
+
 }
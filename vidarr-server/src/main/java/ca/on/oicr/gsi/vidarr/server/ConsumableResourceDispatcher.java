@@ -0,0 +1,225 @@
+package ca.on.oicr.gsi.vidarr.server;
+
+import ca.on.oicr.gsi.vidarr.core.ExecutionLanes;
+import ca.on.oicr.gsi.vidarr.core.Target;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds all workflow runs that are waiting for consumable resources and re-evaluates them when
+ * resources might have become available
+ *
+ * <p>Waiting workflow runs are kept in a queue for each target, ordered by creation time. A queue
+ * is swept when any of its target's resources signals that capacity has changed. Targets that use
+ * time-dependent resources are also swept periodically. A workflow run's inputs are given to every
+ * resource when it is added so the resource can prefetch any remote data it needs; before a sweep,
+ * only runs that have not been prefetched recently are given to the resources again, in case their
+ * cached data has since been evicted. The sweep starts once that data has arrived or a deadline
+ * has passed, without holding a thread while it waits.
+ */
+final class ConsumableResourceDispatcher {
+  private final class WaitingQueue {
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final Map<ConsumableResourceChecker, Instant> prefetched = new ConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Target target;
+    private final ConcurrentSkipListSet<ConsumableResourceChecker> waiting =
+        new ConcurrentSkipListSet<>(
+            Comparator.comparing(ConsumableResourceChecker::createdTime)
+                .thenComparingLong(ConsumableResourceChecker::sequence));
+
+    private WaitingQueue(Target target) {
+      this.target = target;
+      target
+          .consumableResources()
+          .forEach(resource -> resource.second().addCapacityListener(this::capacityChanged));
+      if (target.consumableResources().anyMatch(resource -> resource.second().isTimeDependent())) {
+        lanes.repeat(lanes.cpu(), () -> requestSweep("periodic"), SWEEP_PERIOD, TimeUnit.MINUTES);
+      }
+    }
+
+    private void add(ConsumableResourceChecker checker) {
+      waiting.add(checker);
+      waitingCount.inc();
+      prefetched.put(checker, Instant.now());
+      prefetch(List.of(checker))
+          .whenComplete(
+              (result, throwable) ->
+                  lanes.cpu().execute(
+                      () -> {
+                        if (attempt(checker)) {
+                          remove(checker);
+                        }
+                      }));
+    }
+
+    private void capacityChanged() {
+      // Resources that were speculatively acquired while evaluating a workflow run get released
+      // if any other resource is unavailable; those releases can't free up capacity for anyone
+      // else, so they must not trigger another sweep.
+      if (!EVALUATING.get()) {
+        requestSweep("event");
+      }
+    }
+
+    private void evaluate() {
+      try {
+        for (final ConsumableResourceChecker checker : waiting) {
+          if (attempt(checker)) {
+            remove(checker);
+          }
+        }
+      } finally {
+        running.set(false);
+      }
+      // A change might have arrived while this pass was running; if so, nobody else will have
+      // started a sweep for it.
+      if (dirty.get() && running.compareAndSet(false, true)) {
+        lanes.cpu().execute(this::sweep);
+      }
+    }
+
+    private CompletableFuture<?> prefetch(Collection<ConsumableResourceChecker> checkers) {
+      final List<CompletableFuture<?>> futures = new ArrayList<>();
+      target
+          .consumableResources()
+          .forEach(
+              resource -> {
+                try {
+                  final List<JsonNode> inputs =
+                      checkers.stream()
+                          .flatMap(checker -> checker.input(resource.second()).stream())
+                          .toList();
+                  if (!inputs.isEmpty()) {
+                    futures.add(resource.second().prefetch(inputs));
+                  }
+                } catch (Exception e) {
+                  e.printStackTrace();
+                }
+              });
+      // Anything that hasn't arrived by the deadline is left to the resource's defaults
+      return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+          .completeOnTimeout(null, PREFETCH_WAIT, TimeUnit.SECONDS);
+    }
+
+    private void remove(ConsumableResourceChecker checker) {
+      if (waiting.remove(checker)) {
+        waitingCount.dec();
+      }
+      prefetched.remove(checker);
+    }
+
+    private void requestSweep(String reason) {
+      dirty.set(true);
+      if (running.compareAndSet(false, true)) {
+        sweepCount.labels(reason).inc();
+        lanes.cpu().execute(this::sweep);
+      }
+    }
+
+    private void sweep() {
+      dirty.set(false);
+      // Runs were prefetched when they were added, so only the ones whose data might have been
+      // evicted from the resources' caches since then need to be prefetched again. Wait for that
+      // data once for the whole queue, rather than having each workflow run wait for its own.
+      final Instant now = Instant.now();
+      final Instant horizon = now.minus(PREFETCH_REFRESH);
+      final List<ConsumableResourceChecker> stale =
+          waiting.stream()
+              .filter(
+                  checker -> {
+                    final Instant last = prefetched.get(checker);
+                    return last == null || last.isBefore(horizon);
+                  })
+              .toList();
+      stale.forEach(checker -> prefetched.put(checker, now));
+      (stale.isEmpty() ? CompletableFuture.completedFuture(null) : prefetch(stale))
+          .whenComplete((result, throwable) -> lanes.cpu().execute(this::evaluate));
+    }
+  }
+
+  private static final ThreadLocal<Boolean> EVALUATING = ThreadLocal.withInitial(() -> false);
+  private static final Duration PREFETCH_REFRESH = Duration.ofMinutes(10);
+  private static final long PREFETCH_WAIT = 30;
+  private static final long SWEEP_PERIOD = 1;
+  private static final Counter evaluationErrors =
+      Counter.build(
+              "vidarr_consumable_resource_evaluation_errors",
+              "The number of times checking a workflow run's consumable resources threw an"
+                  + " exception")
+          .register();
+  private static final Counter sweepCount =
+      Counter.build(
+              "vidarr_consumable_resource_sweeps",
+              "The number of times a queue of workflow runs waiting for resources was re-evaluated")
+          .labelNames("reason")
+          .register();
+  private static final Gauge waitingCount =
+      Gauge.build(
+              "vidarr_consumable_resource_waiting",
+              "The number of workflow runs currently waiting for consumable resources")
+          .register();
+
+  private final ExecutionLanes lanes;
+  private final Map<Target, WaitingQueue> queues = new ConcurrentHashMap<>();
+
+  ConsumableResourceDispatcher(ExecutionLanes lanes) {
+    this.lanes = lanes;
+  }
+
+  private boolean attempt(ConsumableResourceChecker checker) {
+    final ConsumableResourceChecker.State state;
+    EVALUATING.set(true);
+    try {
+      state = checker.evaluate();
+    } catch (Exception e) {
+      // A broken resource must not stop the rest of the queue from being evaluated; this run will
+      // be evaluated again on the next sweep
+      e.printStackTrace();
+      evaluationErrors.inc();
+      return false;
+    } finally {
+      EVALUATING.set(false);
+    }
+    switch (state) {
+      case ACQUIRED:
+        // Starting the workflow run is done separately so the sweep can move on to the next run
+        lanes.blocking().execute(checker::launch);
+        return true;
+      case FINISHED:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Add a workflow run to the queue for its target
+   *
+   * <p>The workflow run will be evaluated immediately and then whenever the target's resources
+   * change until it acquires all of its resources or is no longer live.
+   *
+   * @param checker the workflow run's resource checker
+   */
+  void enqueue(ConsumableResourceChecker checker) {
+    if (checker.target().consumableResources().findAny().isEmpty()) {
+      // Targets created for reprovisioning have no resources, so there is nothing to wait for
+      lanes.cpu().execute(() -> attempt(checker));
+    } else {
+      queues.computeIfAbsent(checker.target(), WaitingQueue::new).add(checker);
+    }
+  }
+}
@@ -37,8 +37,10 @@ import ca.on.oicr.gsi.vidarr.api.ExternalId;
 import ca.on.oicr.gsi.vidarr.api.ExternalKey;
 import ca.on.oicr.gsi.vidarr.api.ExternalMultiVersionKey;
 import ca.on.oicr.gsi.vidarr.api.ProvenanceAnalysisRecord;
+import ca.on.oicr.gsi.vidarr.api.SubmitWorkflowRequest;
 import ca.on.oicr.gsi.vidarr.core.BaseProcessor;
 import ca.on.oicr.gsi.vidarr.core.CheckOutputCompatibility;
+import ca.on.oicr.gsi.vidarr.core.ExecutionLanes;
 import ca.on.oicr.gsi.vidarr.core.ExtractInputExternalIds;
 import ca.on.oicr.gsi.vidarr.core.ExtractInputVidarrIds;
 import ca.on.oicr.gsi.vidarr.core.ExtractOutputKeys;
@@ -62,6 +64,7 @@ import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.zaxxer.hikari.HikariDataSource;
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
 import java.io.IOError;
 import java.lang.ref.SoftReference;
 import java.nio.charset.StandardCharsets;
@@ -70,13 +73,17 @@ import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -87,10 +94,10 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -230,6 +237,25 @@ public abstract class DatabaseBackedProcessor
                                       .and(ACTIVE_OPERATION.ATTEMPT.eq(ACTIVE_WORKFLOW_RUN.ATTEMPT))
                                       .and(ACTIVE_OPERATION.STATUS.eq(OperationStatus.FAILED))))));
 
+  private static final int LOCAL_FILE_CACHE_SIZE = 10_000;
+  private static final int LOCK_STRIPES = 256;
+  private static final Counter localFileCacheRequests =
+      Counter.build(
+              "vidarr_local_file_cache_requests",
+              "The number of local file lookups and whether they were found in the cache")
+          .labelNames("hit")
+          .register();
+  private static final Gauge lockWaiting =
+      Gauge.build(
+              "vidarr_db_processor_lock_waiting",
+              "The number of transactions currently waiting for their workflow run's lock")
+          .register();
+  private static final Histogram lockWaitTime =
+      Histogram.build(
+              "vidarr_db_processor_lock_wait_time",
+              "The time, in seconds, a transaction waited for its workflow run's lock")
+          .buckets(0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60)
+          .register();
   public static final TypeReference<SortedMap<String, BasicType>> LABELS_JSON_TYPE =
       new TypeReference<>() {};
   // Jdk8Module is a compatibility fix for de/serializing Optionals
@@ -238,9 +264,26 @@ public abstract class DatabaseBackedProcessor
       new TypeReference<>() {};
   public static final TypeReference<Map<String, InputType>> PARAMETER_JSON_TYPE =
       new TypeReference<>() {};
-
-  private static WorkflowDefinition buildDefinitionFromRecord(
-      DSLContext context, Record record) {
+  // Runs closest to finishing are restarted first. Runs waiting for resources go last so that the
+  // resource usage of every other run has been restored before they are evaluated.
+  private static final List<Set<Phase>> RECOVERY_ORDER =
+      List.of(
+          EnumSet.of(Phase.CLEANUP),
+          EnumSet.of(Phase.PROVISION_OUT, Phase.REPROVISION),
+          EnumSet.of(Phase.RUNNING),
+          EnumSet.of(Phase.PROVISION_IN),
+          EnumSet.of(Phase.PREFLIGHT),
+          EnumSet.of(Phase.INITIALIZING),
+          EnumSet.of(Phase.WAITING_FOR_RESOURCES));
+  private static final int RECOVERY_PAGE_SIZE = 500;
+
+  private WorkflowDefinition buildDefinitionFromRecord(DSLContext context, Record record) {
+    final long generation = workflowDefinitions.generation();
+    final Optional<WorkflowDefinition> cached =
+        workflowDefinitions.definition(record.get(WORKFLOW_VERSION.HASH_ID));
+    if (cached.isPresent()) {
+      return cached.get();
+    }
     final Map<String, String> accessoryFiles =
         context
             .select(WORKFLOW_VERSION_ACCESSORY.FILENAME, WORKFLOW_DEFINITION.WORKFLOW_FILE)
@@ -251,21 +294,24 @@ public abstract class DatabaseBackedProcessor
             .where(WORKFLOW_VERSION_ACCESSORY.WORKFLOW_VERSION.eq(record.get(WORKFLOW_VERSION.ID)))
             .stream()
             .collect(Collectors.toMap(Record2::value1, Record2::value2));
-    return new WorkflowDefinition(
-        record.get(WORKFLOW_DEFINITION.WORKFLOW_LANGUAGE),
-        record.get(WORKFLOW_VERSION.HASH_ID),
-        record.get(WORKFLOW_DEFINITION.WORKFLOW_FILE),
-        accessoryFiles,
-        MAPPER
-            .convertValue(record.get(WORKFLOW_VERSION.PARAMETERS), PARAMETER_JSON_TYPE)
-            .entrySet()
-            .stream()
-            .map(e -> new Parameter(e.getValue(), e.getKey())),
-        MAPPER
-            .convertValue(record.get(WORKFLOW_VERSION.METADATA), OUTPUT_JSON_TYPE)
-            .entrySet()
-            .stream()
-            .map(e -> new Output(e.getValue(), e.getKey())));
+    final WorkflowDefinition definition =
+        new WorkflowDefinition(
+            record.get(WORKFLOW_DEFINITION.WORKFLOW_LANGUAGE),
+            record.get(WORKFLOW_VERSION.HASH_ID),
+            record.get(WORKFLOW_DEFINITION.WORKFLOW_FILE),
+            accessoryFiles,
+            MAPPER
+                .convertValue(record.get(WORKFLOW_VERSION.PARAMETERS), PARAMETER_JSON_TYPE)
+                .entrySet()
+                .stream()
+                .map(e -> new Parameter(e.getValue(), e.getKey())),
+            MAPPER
+                .convertValue(record.get(WORKFLOW_VERSION.METADATA), OUTPUT_JSON_TYPE)
+                .entrySet()
+                .stream()
+                .map(e -> new Output(e.getValue(), e.getKey())));
+    workflowDefinitions.put(generation, definition);
+    return definition;
   }
 
   private static Stream<String> checkConsumableResource(
@@ -372,13 +418,29 @@ public abstract class DatabaseBackedProcessor
   }
 
   private final HikariDataSource dataSource;
-  private final Semaphore databaseLock = new Semaphore(1);
+  private final ConsumableResourceDispatcher dispatcher;
+  private final Semaphore[] workflowRunLocks =
+      Stream.generate(() -> new Semaphore(1)).limit(LOCK_STRIPES).toArray(Semaphore[]::new);
   private final Map<Long, SoftReference<AtomicBoolean>> liveness = new ConcurrentHashMap<>();
-
-  protected DatabaseBackedProcessor(
-      ScheduledExecutorService executor, HikariDataSource dataSource) {
-    super(executor);
+  private final AtomicLong localFileGeneration = new AtomicLong();
+  private final Map<String, FileMetadata> localFiles =
+      Collections.synchronizedMap(
+          new LinkedHashMap<String, FileMetadata>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileMetadata> eldest) {
+              return size() > LOCAL_FILE_CACHE_SIZE;
+            }
+          });
+  private final LastAccessedWriter lastAccessedWriter;
+  private final WaitingResourceWriter waitingResourceWriter;
+  private final WorkflowDefinitionCache workflowDefinitions = new WorkflowDefinitionCache();
+
+  protected DatabaseBackedProcessor(ExecutionLanes lanes, HikariDataSource dataSource) {
+    super(lanes);
     this.dataSource = dataSource;
+    dispatcher = new ConsumableResourceDispatcher(lanes);
+    waitingResourceWriter = new WaitingResourceWriter(lanes, dataSource);
+    lastAccessedWriter = new LastAccessedWriter(lanes, dataSource);
   }
 
   private void addNewExternalKeyVersions(
@@ -393,6 +455,7 @@ public abstract class DatabaseBackedProcessor
                 EXTERNAL_ID_VERSION.EXTERNAL_ID_ID,
                 EXTERNAL_ID_VERSION.KEY,
                 EXTERNAL_ID_VERSION.VALUE);
+    boolean added = false;
     for (final ExternalKey externalKey : externalKeys) {
       final List<String> matchKeys =
           knownMatches.get(new Pair<>(externalKey.getProvider(), externalKey.getId()));
@@ -441,86 +504,96 @@ public abstract class DatabaseBackedProcessor
                                 .and(EXTERNAL_ID.WORKFLOW_RUN_ID.eq(workflowRunId)))),
                 DSL.val(entry.getKey()),
                 DSL.val(entry.getValue()));
+        added = true;
       }
     }
     externalVersionInsert.execute();
+    if (added) {
+      invalidateLocalFiles();
+    }
   }
 
   protected final <T> T delete(String workflowRunId, DeleteResultHandler<T> handler) {
+    final long generation = localFileGeneration.get();
     try (final Connection connection = dataSource.getConnection()) {
-      return DSL.using(connection, SQLDialect.POSTGRES)
-          .transactionResult(
-              context -> {
-                final DSLContext transaction = DSL.using(context);
-                return transaction
-                    .select(ACTIVE_WORKFLOW_RUN.ID, DSL.field(IS_DEAD))
-                    .from(
-                        ACTIVE_WORKFLOW_RUN
-                            .join(WORKFLOW_RUN)
-                            .on(WORKFLOW_RUN.ID.eq(ACTIVE_WORKFLOW_RUN.ID)))
-                    .where(WORKFLOW_RUN.HASH_ID.eq(workflowRunId))
-                    .fetchOptional()
-                    .map(
-                        (id_and_dead) -> {
-                          if (id_and_dead.component2()) {
-                            final SoftReference<AtomicBoolean> oldLiveness =
-                                liveness.remove(id_and_dead.component1());
-                            if (oldLiveness != null) {
-                              final AtomicBoolean oldLivenessLock = oldLiveness.get();
-                              if (oldLivenessLock != null) {
-                                oldLivenessLock.set(false);
-                              }
-                            }
+      final T result =
+          DSL.using(connection, SQLDialect.POSTGRES)
+              .transactionResult(
+                  context -> {
+                    final DSLContext transaction = DSL.using(context);
+                    return transaction
+                        .select(ACTIVE_WORKFLOW_RUN.ID, DSL.field(IS_DEAD))
+                        .from(
+                            ACTIVE_WORKFLOW_RUN
+                                .join(WORKFLOW_RUN)
+                                .on(WORKFLOW_RUN.ID.eq(ACTIVE_WORKFLOW_RUN.ID)))
+                        .where(WORKFLOW_RUN.HASH_ID.eq(workflowRunId))
+                        .fetchOptional()
+                        .map(
+                            (id_and_dead) -> {
+                              if (id_and_dead.component2()) {
+                                final SoftReference<AtomicBoolean> oldLiveness =
+                                    liveness.remove(id_and_dead.component1());
+                                if (oldLiveness != null) {
+                                  final AtomicBoolean oldLivenessLock = oldLiveness.get();
+                                  if (oldLivenessLock != null) {
+                                    oldLivenessLock.set(false);
+                                  }
+                                }
 
-                            transaction
-                                .delete(ANALYSIS_EXTERNAL_ID)
-                                .where(
-                                    ANALYSIS_EXTERNAL_ID.EXTERNAL_ID_ID.in(
-                                        DSL.select(EXTERNAL_ID.ID)
-                                            .from(EXTERNAL_ID)
-                                            .where(
-                                                EXTERNAL_ID.WORKFLOW_RUN_ID.eq(
-                                                    id_and_dead.component1()))))
-                                .execute();
-                            transaction
-                                .delete(EXTERNAL_ID_VERSION)
-                                .where(
-                                    EXTERNAL_ID_VERSION.EXTERNAL_ID_ID.in(
-                                        DSL.select(EXTERNAL_ID.ID)
-                                            .from(EXTERNAL_ID)
-                                            .where(
-                                                EXTERNAL_ID.WORKFLOW_RUN_ID.eq(
-                                                    id_and_dead.component1()))))
-                                .execute();
-                            transaction
-                                .delete(EXTERNAL_ID)
-                                .where(EXTERNAL_ID.WORKFLOW_RUN_ID.eq(id_and_dead.component1()))
-                                .execute();
-                            transaction
-                                .delete(ANALYSIS)
-                                .where(ANALYSIS.WORKFLOW_RUN_ID.eq(id_and_dead.component1()))
-                                .execute();
-                            transaction
-                                .delete(ACTIVE_OPERATION)
-                                .where(
-                                    ACTIVE_OPERATION.WORKFLOW_RUN_ID.eq(id_and_dead.component1()))
-                                .execute();
-                            transaction
-                                .delete(ACTIVE_WORKFLOW_RUN)
-                                .where(ACTIVE_WORKFLOW_RUN.ID.eq(id_and_dead.component1()))
-                                .execute();
-                            transaction
-                                .delete(WORKFLOW_RUN)
-                                .where(WORKFLOW_RUN.ID.eq(id_and_dead.component1()))
-                                .execute();
-                            BadRecoveryTracker.remove(workflowRunId);
-                            return handler.deleted();
-                          } else {
-                            return handler.stillActive();
-                          }
-                        })
-                    .orElseGet(handler::noWorkflowRun);
-              });
+                                transaction
+                                    .delete(ANALYSIS_EXTERNAL_ID)
+                                    .where(
+                                        ANALYSIS_EXTERNAL_ID.EXTERNAL_ID_ID.in(
+                                            DSL.select(EXTERNAL_ID.ID)
+                                                .from(EXTERNAL_ID)
+                                                .where(
+                                                    EXTERNAL_ID.WORKFLOW_RUN_ID.eq(
+                                                        id_and_dead.component1()))))
+                                    .execute();
+                                transaction
+                                    .delete(EXTERNAL_ID_VERSION)
+                                    .where(
+                                        EXTERNAL_ID_VERSION.EXTERNAL_ID_ID.in(
+                                            DSL.select(EXTERNAL_ID.ID)
+                                                .from(EXTERNAL_ID)
+                                                .where(
+                                                    EXTERNAL_ID.WORKFLOW_RUN_ID.eq(
+                                                        id_and_dead.component1()))))
+                                    .execute();
+                                transaction
+                                    .delete(EXTERNAL_ID)
+                                    .where(EXTERNAL_ID.WORKFLOW_RUN_ID.eq(id_and_dead.component1()))
+                                    .execute();
+                                transaction
+                                    .delete(ANALYSIS)
+                                    .where(ANALYSIS.WORKFLOW_RUN_ID.eq(id_and_dead.component1()))
+                                    .execute();
+                                transaction
+                                    .delete(ACTIVE_OPERATION)
+                                    .where(
+                                        ACTIVE_OPERATION.WORKFLOW_RUN_ID.eq(
+                                            id_and_dead.component1()))
+                                    .execute();
+                                transaction
+                                    .delete(ACTIVE_WORKFLOW_RUN)
+                                    .where(ACTIVE_WORKFLOW_RUN.ID.eq(id_and_dead.component1()))
+                                    .execute();
+                                transaction
+                                    .delete(WORKFLOW_RUN)
+                                    .where(WORKFLOW_RUN.ID.eq(id_and_dead.component1()))
+                                    .execute();
+                                BadRecoveryTracker.remove(workflowRunId);
+                                invalidateLocalFiles();
+                                return handler.deleted();
+                              } else {
+                                return handler.stillActive();
+                              }
+                            })
+                        .orElseGet(handler::noWorkflowRun);
+                  });
+      invalidateLocalFilesIfChanged(generation);
+      return result;
     } catch (SQLException e) {
       e.printStackTrace();
       return handler.internalError(e);
@@ -528,7 +601,10 @@ public abstract class DatabaseBackedProcessor
   }
 
   private TreeSet<ExternalId> extractExternalIds(
-      JsonNode arguments, WorkflowInformation workflow, TreeSet<String> unresolvedIds) {
+      JsonNode arguments,
+      WorkflowInformation workflow,
+      TreeSet<String> unresolvedIds,
+      Function<String, Optional<FileMetadata>> resolver) {
     return workflow
         .definition()
         .parameters()
@@ -544,7 +620,7 @@ public abstract class DatabaseBackedProcessor
                                     MAPPER,
                                     arguments.get(p.name()),
                                     id -> {
-                                      final Optional<FileMetadata> result = pathForId(id);
+                                      final Optional<FileMetadata> result = resolver.apply(id);
                                       if (result.isEmpty()) {
                                         unresolvedIds.add(id);
                                       }
@@ -609,29 +685,38 @@ public abstract class DatabaseBackedProcessor
 
   protected final Optional<WorkflowInformation> getWorkflowByName(
       String name, String version, DSLContext transaction) throws SQLException {
-    return transaction
-        .select()
-        .from(
-            WORKFLOW_VERSION
-                .join(WORKFLOW_DEFINITION)
-                .on(WORKFLOW_VERSION.WORKFLOW_DEFINITION.eq(WORKFLOW_DEFINITION.ID))
-                .join(WORKFLOW)
-                .on(WORKFLOW.NAME.eq(WORKFLOW_VERSION.NAME)))
-        .where(WORKFLOW_VERSION.NAME.eq(name).and(WORKFLOW_VERSION.VERSION.eq(version)))
-        .fetchOptional()
-        .map(
-            record -> {
-              try {
-                return new WorkflowInformation(
-                    record.get(WORKFLOW_VERSION.ID),
-                    buildDefinitionFromRecord(transaction, record),
-                    (record.get(WORKFLOW.LABELS) == null
-                        ? new TreeMap<>()
-                        : MAPPER.readValue(record.get(WORKFLOW.LABELS).data(), LABELS_JSON_TYPE)));
-              } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
-              }
-            });
+    final Optional<WorkflowInformation> cached = workflowDefinitions.workflow(name, version);
+    if (cached.isPresent()) {
+      return cached;
+    }
+    final long generation = workflowDefinitions.generation();
+    final Optional<WorkflowInformation> workflow =
+        transaction
+            .select()
+            .from(
+                WORKFLOW_VERSION
+                    .join(WORKFLOW_DEFINITION)
+                    .on(WORKFLOW_VERSION.WORKFLOW_DEFINITION.eq(WORKFLOW_DEFINITION.ID))
+                    .join(WORKFLOW)
+                    .on(WORKFLOW.NAME.eq(WORKFLOW_VERSION.NAME)))
+            .where(WORKFLOW_VERSION.NAME.eq(name).and(WORKFLOW_VERSION.VERSION.eq(version)))
+            .fetchOptional()
+            .map(
+                record -> {
+                  try {
+                    return new WorkflowInformation(
+                        record.get(WORKFLOW_VERSION.ID),
+                        buildDefinitionFromRecord(transaction, record),
+                        (record.get(WORKFLOW.LABELS) == null
+                            ? new TreeMap<>()
+                            : MAPPER.readValue(
+                                record.get(WORKFLOW.LABELS).data(), LABELS_JSON_TYPE)));
+                  } catch (JsonProcessingException e) {
+                    throw new RuntimeException(e);
+                  }
+                });
+    workflow.ifPresent(w -> workflowDefinitions.put(generation, name, version, w));
+    return workflow;
   }
 
   private <T> T launchNewWorkflowRun(
@@ -699,8 +784,8 @@ public abstract class DatabaseBackedProcessor
         candidateId,
         new ConsumableResourceChecker(
             target,
-            dataSource,
-            executor(),
+            waitingResourceWriter,
+            dispatcher,
             dbWorkflow.dbId(),
             liveness(dbWorkflow.dbId()),
             maxInFlightByWorkflow,
@@ -719,6 +804,7 @@ public abstract class DatabaseBackedProcessor
                 }
                 launched = true;
                 inTransaction(
+                    dbWorkflow,
                     runTransaction ->
                         DatabaseBackedProcessor.this.start( // runs when new workflow run submitted
                             target, workflow.definition(), dbWorkflow, runTransaction));
@@ -737,19 +823,120 @@ public abstract class DatabaseBackedProcessor
     return MAPPER;
   }
 
-  final void recover(Consumer<Runnable> startRaw, MaxInFlightByWorkflow maxInflightByWorkflow,
+  private static void deferRecovery(List<Runnable> tasks, Record record, Runnable task) {
+    tasks.add(
+        () -> {
+          try {
+            task.run();
+          } catch (Exception e) {
+            final String erroneousHash = record.get(WORKFLOW_RUN.HASH_ID);
+            System.err.printf("Error restarting recovered workflow run %s: \n", erroneousHash);
+            e.printStackTrace();
+            BadRecoveryTracker.add(erroneousHash);
+          }
+        });
+  }
+
+  /**
+   * Load all active workflow runs from the database and queue them to be restarted
+   *
+   * <p>Workflow runs are read in pages, one phase at a time, and each page is handed to the
+   * scheduler before the next is read, so only a bounded number of runs are in memory at once.
+   * Within a phase, runs are restarted in the order they were submitted. Priorities are not stored;
+   * they are computed by the priority inputs when a run waits for resources, so runs recovered
+   * while waiting for resources are put back in the dispatcher and ordered by priority there.
+   * Anything that must be in place before new workflow runs are accepted, such as consumable
+   * resource usage, is restored immediately; restarting each workflow run is left to the scheduler.
+   *
+   * <p>The server is already accepting requests during recovery, so only workflow runs that existed
+   * when recovery started are read, and any that have been reinitialised since are skipped; they
+   * are already running and must not be started twice.
+   */
+  final void recover(RecoveryScheduler scheduler, MaxInFlightByWorkflow maxInflightByWorkflow,
+      Map<String, OutputProvisioner<?, ?>> outputProvisioners,
+      Map<String, Semaphore> reprovisionCounter)
+      throws SQLException, InterruptedException {
+    final Long maxId;
+    try (final Connection connection = dataSource.getConnection()) {
+      maxId =
+          DSL.using(connection, SQLDialect.POSTGRES)
+              .select(DSL.max(ACTIVE_WORKFLOW_RUN.ID))
+              .from(ACTIVE_WORKFLOW_RUN)
+              .fetchOne(Record1::value1);
+    }
+    if (maxId == null) {
+      return;
+    }
+    for (final Set<Phase> phases : RECOVERY_ORDER) {
+      final AtomicLong lastId = new AtomicLong(Long.MIN_VALUE);
+      boolean more;
+      do {
+        final List<Runnable> tasks = new ArrayList<>();
+        more =
+            recoverPage(
+                tasks,
+                phases,
+                lastId,
+                maxId,
+                maxInflightByWorkflow,
+                outputProvisioners,
+                reprovisionCounter);
+        scheduler.add(tasks);
+      } while (more);
+    }
+  }
+
+  private boolean recoverPage(
+      List<Runnable> tasks,
+      Set<Phase> phases,
+      AtomicLong lastId,
+      long maxId,
+      MaxInFlightByWorkflow maxInflightByWorkflow,
       Map<String, OutputProvisioner<?, ?>> outputProvisioners,
       Map<String, Semaphore> reprovisionCounter)
       throws SQLException {
+    final AtomicBoolean more = new AtomicBoolean();
     try (final Connection connection = dataSource.getConnection()) {
       DSL.using(connection, SQLDialect.POSTGRES)
           .transaction(
               context -> {
                 DSLContext dsl = DSL.using(context);
+                final Result<Record> page =
+                    dsl.select()
+                        .from(
+                            ACTIVE_WORKFLOW_RUN
+                                .join(WORKFLOW_RUN)
+                                .on(ACTIVE_WORKFLOW_RUN.ID.eq(WORKFLOW_RUN.ID))
+                                .join(WORKFLOW_VERSION)
+                                .on(WORKFLOW_RUN.WORKFLOW_VERSION_ID.eq(WORKFLOW_VERSION.ID))
+                                .join(WORKFLOW_DEFINITION)
+                                .on(
+                                    WORKFLOW_VERSION.WORKFLOW_DEFINITION.eq(
+                                        WORKFLOW_DEFINITION.ID)))
+                        .where(
+                            ACTIVE_WORKFLOW_RUN
+                                .ENGINE_PHASE
+                                .in(phases)
+                                .and(ACTIVE_WORKFLOW_RUN.ID.gt(lastId.get()))
+                                .and(ACTIVE_WORKFLOW_RUN.ID.le(maxId)))
+                        .orderBy(ACTIVE_WORKFLOW_RUN.ID)
+                        .limit(RECOVERY_PAGE_SIZE)
+                        .fetch();
+                if (page.isEmpty()) {
+                  return;
+                }
+                more.set(page.size() == RECOVERY_PAGE_SIZE);
+                lastId.set(page.get(page.size() - 1).get(ACTIVE_WORKFLOW_RUN.ID));
+                // Recovery has not reached these runs yet, so if they have a liveness flag, they
+                // were reinitialised by a request and are already running
+                page.removeIf(record -> liveness.containsKey(record.get(ACTIVE_WORKFLOW_RUN.ID)));
                 Map<Long, List<DatabaseOperation>> operations =
                     dsl
                         .select(ACTIVE_OPERATION.asterisk())
-                        .from(ACTIVE_OPERATION)
+                        .from(
+                            ACTIVE_OPERATION
+                                .join(ACTIVE_WORKFLOW_RUN)
+                                .on(ACTIVE_OPERATION.WORKFLOW_RUN_ID.eq(ACTIVE_WORKFLOW_RUN.ID)))
                         .where(
                             ACTIVE_OPERATION
                                 .STATUS
@@ -757,17 +944,8 @@ public abstract class DatabaseBackedProcessor
                                 .not()
                                 .and(
                                     ACTIVE_OPERATION.WORKFLOW_RUN_ID.in(
-                                        dsl.select(ACTIVE_WORKFLOW_RUN.ID)
-                                            .from(ACTIVE_WORKFLOW_RUN)
-                                            .where(
-                                                ACTIVE_WORKFLOW_RUN.ENGINE_PHASE.ne(Phase.FAILED))))
-                                .and(
-                                    ACTIVE_OPERATION.ATTEMPT.eq(
-                                        DSL.select(ACTIVE_WORKFLOW_RUN.ATTEMPT)
-                                            .from(ACTIVE_WORKFLOW_RUN)
-                                            .where(
-                                                ACTIVE_WORKFLOW_RUN.ID.eq(
-                                                    ACTIVE_OPERATION.WORKFLOW_RUN_ID)))))
+                                        page.getValues(ACTIVE_WORKFLOW_RUN.ID)))
+                                .and(ACTIVE_OPERATION.ATTEMPT.eq(ACTIVE_WORKFLOW_RUN.ATTEMPT)))
                         .stream()
                         .collect(
                             Collectors.groupingBy(
@@ -799,17 +977,7 @@ public abstract class DatabaseBackedProcessor
                                                           r.get(ACTIVE_OPERATION.WORKFLOW_RUN_ID))))
                                           .collect(toList());
                                     })));
-                dsl.select()
-                    .from(
-                        ACTIVE_WORKFLOW_RUN
-                            .join(WORKFLOW_RUN)
-                            .on(ACTIVE_WORKFLOW_RUN.ID.eq(WORKFLOW_RUN.ID))
-                            .join(WORKFLOW_VERSION)
-                            .on(WORKFLOW_RUN.WORKFLOW_VERSION_ID.eq(WORKFLOW_VERSION.ID))
-                            .join(WORKFLOW_DEFINITION)
-                            .on(WORKFLOW_VERSION.WORKFLOW_DEFINITION.eq(WORKFLOW_DEFINITION.ID)))
-                    .where(ACTIVE_WORKFLOW_RUN.ENGINE_PHASE.ne(Phase.FAILED))
-                    .forEach(
+                page.forEach(
                         record -> {
                           if (record.get(ACTIVE_WORKFLOW_RUN.ENGINE_PHASE).equals(Phase.REPROVISION)) {
                             try{
@@ -858,13 +1026,23 @@ public abstract class DatabaseBackedProcessor
                               operation.linkTo(workflow);
                             }
 
-                            recover(
-                                newTarget,
-                                buildDefinitionFromRecord(context.dsl(), record),
-                                workflow,
-                                activeOperations,
-                                RecoveryType.RECOVER);
-                              reprovisionCounter.get(record.get(WORKFLOW_RUN.HASH_ID)).release();
+                            final WorkflowDefinition definition =
+                                buildDefinitionFromRecord(context.dsl(), record);
+                            deferRecovery(
+                                tasks,
+                                record,
+                                () -> {
+                                  try {
+                                    recover(
+                                        newTarget,
+                                        definition,
+                                        workflow,
+                                        activeOperations,
+                                        RecoveryType.RECOVER);
+                                  } finally {
+                                    s.release();
+                                  }
+                                });
                             } catch (Exception e) {
                               String erroneousHash = record.get(WORKFLOW_RUN.HASH_ID);
                               System.err.printf(
@@ -901,11 +1079,13 @@ public abstract class DatabaseBackedProcessor
                                                   record.get(
                                                       ACTIVE_WORKFLOW_RUN.CONSUMABLE_RESOURCES),
                                                   new TypeReference<>() {});
-                                          startRaw.accept(
+                                          deferRecovery(
+                                              tasks,
+                                              record,
                                               new ConsumableResourceChecker(
                                                   target,
-                                                  dataSource,
-                                                  executor(),
+                                                  waitingResourceWriter,
+                                                  dispatcher,
                                                   record.get(ACTIVE_WORKFLOW_RUN.ID),
                                                   liveness(record.get(ACTIVE_WORKFLOW_RUN.ID)),
                                                   maxInflightByWorkflow,
@@ -951,12 +1131,18 @@ public abstract class DatabaseBackedProcessor
                                               activeOperations) {
                                             operation.linkTo(workflow);
                                           }
-                                          recover(
-                                              target,
-                                              buildDefinitionFromRecord(context.dsl(), record),
-                                              workflow,
-                                              activeOperations,
-                                              RecoveryType.RECOVER);
+                                          final WorkflowDefinition definition =
+                                              buildDefinitionFromRecord(context.dsl(), record);
+                                          deferRecovery(
+                                              tasks,
+                                              record,
+                                              () ->
+                                                  recover(
+                                                      target,
+                                                      definition,
+                                                      workflow,
+                                                      activeOperations,
+                                                      RecoveryType.RECOVER));
                                         }
                                       } catch (Exception e) {
                                         String erroneousHash = record.get(WORKFLOW_RUN.HASH_ID);
@@ -974,6 +1160,7 @@ public abstract class DatabaseBackedProcessor
               });
       connection.commit();
     }
+    return more.get();
   }
 
   public final List<String> retry(Optional<List<String>> workflowRunIds) throws SQLException {
@@ -1355,7 +1542,8 @@ public abstract class DatabaseBackedProcessor
                             newTarget,
                             metadata, externalIdsByAnalysis, this, dsl);
                         ret.set(strategy.handle(record, dbWorkflow, definition.get(), analysis,
-                            originalCompleted, handler, newTarget, dataSource, executor(), this));
+                            originalCompleted, handler, newTarget, waitingResourceWriter,
+                            dispatcher, this));
 
                       } catch (SQLException e) {
                         throw new RuntimeException(e);
@@ -1381,83 +1569,212 @@ public abstract class DatabaseBackedProcessor
     return ret.get();
   }
 
-  protected final Optional<FileMetadata> resolveInDatabase(String inputId) {
-    try {
-      try (final Connection connection = dataSource.getConnection()) {
-        return DSL
-            .using(connection, SQLDialect.POSTGRES)
-            .select()
-            .from(
-                ANALYSIS
-                    .join(ANALYSIS_EXTERNAL_ID)
-                    .on(ANALYSIS.ID.eq(ANALYSIS_EXTERNAL_ID.ANALYSIS_ID))
-                    .join(EXTERNAL_ID)
-                    .on(EXTERNAL_ID.ID.eq(ANALYSIS_EXTERNAL_ID.EXTERNAL_ID_ID))
-                    .join(EXTERNAL_ID_VERSION)
-                    .on(EXTERNAL_ID.ID.eq(EXTERNAL_ID_VERSION.EXTERNAL_ID_ID)))
-            .where(ANALYSIS.ANALYSIS_TYPE.eq("file").and(ANALYSIS.HASH_ID.like(inputId)))
-            .stream()
-            .collect(
-                Collectors.groupingBy(
-                    r -> r.get(ANALYSIS.FILE_PATH),
-                    Collectors.groupingBy(
-                        r ->
-                            new Pair<>(
-                                r.get(EXTERNAL_ID.PROVIDER), r.get(EXTERNAL_ID.EXTERNAL_ID_)),
-                        Collectors.toMap(
-                            r -> r.get(EXTERNAL_ID_VERSION.KEY),
-                            r ->
-                                Stream.of(r.get(EXTERNAL_ID_VERSION.VALUE))
-                                    .collect(Collectors.toSet()),
-                            (a, b) -> {
-                              a.addAll(b);
-                              return a;
-                            }))))
-            .entrySet()
-            .stream()
-            .<FileMetadata>map(
-                e ->
-                    new FileMetadata() {
-                      private final List<ExternalMultiVersionKey> keys =
-                          e.getValue().entrySet().stream()
-                              .map(
-                                  ee ->
-                                      new ExternalMultiVersionKey(
-                                          ee.getKey().first(), ee.getKey().second(), ee.getValue()))
-                              .toList();
-                      private final String path = e.getKey();
-
-                      @Override
-                      public Stream<ExternalMultiVersionKey> externalKeys() {
-                        return keys.stream();
-                      }
+  private static Set<String> findFileIds(Stream<JsonNode> arguments) {
+    final Set<String> ids = new TreeSet<>();
+    final Deque<JsonNode> pending = new ArrayDeque<>();
+    arguments.forEach(pending::add);
+    while (!pending.isEmpty()) {
+      final JsonNode node = pending.pop();
+      if (node.isTextual()) {
+        if (node.asText().startsWith("vidarr:")) {
+          ids.add(node.asText());
+        }
+      } else if (node.isContainerNode()) {
+        node.forEach(pending::add);
+      }
+    }
+    return ids;
+  }
 
-                      @Override
-                      public String path() {
-                        return path;
-                      }
-                    })
-            .findAny();
+  /**
+   * Find the metadata for a file produced by this instance
+   *
+   * @param hash the file's identifier
+   * @return the metadata, if the file exists
+   */
+  protected final Optional<FileMetadata> resolveInDatabase(String hash) {
+    final FileMetadata cached = localFiles.get(hash);
+    localFileCacheRequests.labels(Boolean.toString(cached != null)).inc();
+    if (cached != null) {
+      return Optional.of(cached);
+    }
+    return Optional.ofNullable(resolveInDatabase(List.of(hash)).get(hash));
+  }
+
+  /**
+   * Find the metadata for many files produced by this instance in a single query
+   *
+   * <p>Files that have been looked up before are served from the cache. The results are also added
+   * to the cache, unless versions or files changed while the query was running.
+   *
+   * @param hashes the files' identifiers
+   * @return the metadata for the files that exist, keyed by identifier
+   */
+  protected final Map<String, FileMetadata> resolveInDatabase(Collection<String> hashes) {
+    final Map<String, FileMetadata> results = new HashMap<>();
+    final Set<String> missing = new TreeSet<>();
+    for (final String hash : hashes) {
+      final FileMetadata cached = localFiles.get(hash);
+      if (cached == null) {
+        missing.add(hash);
+      } else {
+        results.put(hash, cached);
       }
+    }
+    if (missing.isEmpty()) {
+      return results;
+    }
+    final long generation = localFileGeneration.get();
+    final Map<String, FileMetadata> found;
+    try (final Connection connection = dataSource.getConnection()) {
+      found =
+          DSL.using(connection, SQLDialect.POSTGRES)
+              .select(
+                  ANALYSIS.HASH_ID,
+                  ANALYSIS.FILE_PATH,
+                  EXTERNAL_ID.PROVIDER,
+                  EXTERNAL_ID.EXTERNAL_ID_,
+                  EXTERNAL_ID_VERSION.KEY,
+                  EXTERNAL_ID_VERSION.VALUE)
+              .from(
+                  ANALYSIS
+                      .join(ANALYSIS_EXTERNAL_ID)
+                      .on(ANALYSIS.ID.eq(ANALYSIS_EXTERNAL_ID.ANALYSIS_ID))
+                      .join(EXTERNAL_ID)
+                      .on(EXTERNAL_ID.ID.eq(ANALYSIS_EXTERNAL_ID.EXTERNAL_ID_ID))
+                      .join(EXTERNAL_ID_VERSION)
+                      .on(EXTERNAL_ID.ID.eq(EXTERNAL_ID_VERSION.EXTERNAL_ID_ID)))
+              .where(
+                  ANALYSIS
+                      .ANALYSIS_TYPE
+                      .eq("file")
+                      .and(ANALYSIS.HASH_ID.eq(DSL.any(missing.toArray(String[]::new)))))
+              .stream()
+              .collect(
+                  Collectors.groupingBy(
+                      r -> new Pair<>(r.get(ANALYSIS.HASH_ID), r.get(ANALYSIS.FILE_PATH)),
+                      Collectors.groupingBy(
+                          r ->
+                              new Pair<>(
+                                  r.get(EXTERNAL_ID.PROVIDER), r.get(EXTERNAL_ID.EXTERNAL_ID_)),
+                          Collectors.toMap(
+                              r -> r.get(EXTERNAL_ID_VERSION.KEY),
+                              r ->
+                                  Stream.of(r.get(EXTERNAL_ID_VERSION.VALUE))
+                                      .collect(Collectors.toSet()),
+                              (a, b) -> {
+                                a.addAll(b);
+                                return a;
+                              }))))
+              .entrySet()
+              .stream()
+              .collect(
+                  Collectors.toMap(
+                      e -> e.getKey().first(),
+                      e -> localFileMetadata(e.getKey().second(), e.getValue()),
+                      (a, b) -> a));
     } catch (SQLException e) {
       e.printStackTrace();
-      return Optional.empty();
+      return results;
+    }
+    synchronized (localFiles) {
+      // If anything changed while the query was running, the results might already be stale
+      if (localFileGeneration.get() == generation) {
+        localFiles.putAll(found);
+      }
+    }
+    results.putAll(found);
+    return results;
+  }
+
+  private static FileMetadata localFileMetadata(
+      String path, Map<Pair<String, String>, Map<String, Set<String>>> versions) {
+    final List<ExternalMultiVersionKey> keys =
+        versions.entrySet().stream()
+            .map(
+                e ->
+                    new ExternalMultiVersionKey(
+                        e.getKey().first(), e.getKey().second(), e.getValue()))
+            .toList();
+    return new FileMetadata() {
+      @Override
+      public Stream<ExternalMultiVersionKey> externalKeys() {
+        return keys.stream();
+      }
+
+      @Override
+      public String path() {
+        return path;
+      }
+    };
+  }
+
+  /**
+   * Discard all cached file metadata
+   *
+   * <p>This must be called after any change to files' paths or external key versions.
+   */
+  protected final void invalidateLocalFiles() {
+    synchronized (localFiles) {
+      localFileGeneration.incrementAndGet();
+      localFiles.clear();
+    }
+  }
+
+  /** Discard all cached workflow versions; this must be called after any change to workflows */
+  protected final void invalidateWorkflows() {
+    workflowDefinitions.invalidate();
+  }
+
+  // Files invalidated inside a transaction can be cached again, from the old data, before the
+  // transaction commits, so invalidate them again once it has
+  private void invalidateLocalFilesIfChanged(long generation) {
+    if (localFileGeneration.get() != generation) {
+      invalidateLocalFiles();
     }
   }
 
+  @Override
+  protected final void filesReprovisioned() {
+    invalidateLocalFiles();
+  }
+
   @Override
   public final void inTransaction(Consumer<DSLContext> operation) {
-    databaseLock.acquireUninterruptibly();
-    try {
-      try (final Connection connection = dataSource.getConnection()) {
-        DSL.using(connection, SQLDialect.POSTGRES)
-            .transaction(context -> operation.accept(DSL.using(context)));
-        connection.commit();
-      }
+    try (final Connection connection = dataSource.getConnection()) {
+      DSL.using(connection, SQLDialect.POSTGRES)
+          .transaction(context -> operation.accept(DSL.using(context)));
+      connection.commit();
     } catch (SQLException e) {
       throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public final void inTransaction(DatabaseOperation operation, Consumer<DSLContext> transaction) {
+    inWorkflowRunTransaction(operation.workflowRunId(), transaction);
+  }
+
+  @Override
+  public final void inTransaction(DatabaseWorkflow workflow, Consumer<DSLContext> transaction) {
+    inWorkflowRunTransaction(workflow.dbId(), transaction);
+  }
+
+  private void inWorkflowRunTransaction(long workflowRunId, Consumer<DSLContext> transaction) {
+    // Transactions for the same workflow run must be serialized since they mutate the in-memory
+    // workflow and operation state; transactions for different workflow runs only share a lock if
+    // they happen to hash to the same stripe.
+    final Semaphore lock =
+        workflowRunLocks[Math.floorMod(Long.hashCode(workflowRunId), LOCK_STRIPES)];
+    lockWaiting.inc();
+    final Histogram.Timer timer = lockWaitTime.startTimer();
+    lock.acquireUninterruptibly();
+    timer.observeDuration();
+    lockWaiting.dec();
+    try {
+      inTransaction(transaction);
     } finally {
-      databaseLock.release();
+      lock.release();
     }
   }
 
@@ -1477,6 +1794,9 @@ public abstract class DatabaseBackedProcessor
     return targetByName(targetName)
         .map(
             target -> {
+              // Fetch remote files before the transaction starts, so it isn't held open for them
+              prefetch(findFileIds(Stream.ofNullable(arguments)));
+              final long generation = localFileGeneration.get();
               try {
                 try (final Connection connection = dataSource.getConnection()) {
                   final T submitResult =
@@ -1487,349 +1807,35 @@ public abstract class DatabaseBackedProcessor
                                 try {
                                   return getWorkflowByName(name, version, transaction)
                                       .map(
-                                          workflow -> {
-                                            final Set<String> errors =
-                                                validateWorkflowInputs(
-                                                    labels,
-                                                    arguments,
-                                                    engineParameters,
-                                                    metadata,
-                                                    consumableResources,
-                                                    target,
-                                                    workflow);
-                                            if (!errors.isEmpty()) {
-                                              return handler.invalidWorkflow(errors);
-                                            }
-                                            final Optional<String> retryError =
-                                                validateWorkflowRetry(arguments, workflow);
-                                            if (retryError.isPresent()) {
-                                              return handler.invalidWorkflow(
-                                                  Set.of(retryError.get()));
-                                            }
-
-                                            if (workflow
-                                                .definition()
-                                                .outputs()
-                                                .map(
-                                                    output ->
-                                                        output
-                                                            .type()
-                                                            .apply(
-                                                                new CheckOutputCompatibility(
-                                                                    MAPPER,
-                                                                    metadata.get(output.name()))))
-                                                .reduce(OutputCompatibility::worst)
-                                                .map(OutputCompatibility.BROKEN::equals)
-                                                .orElse(false)) {
-                                              return handler.invalidWorkflow(
-                                                  Set.of(
-                                                      "The metadata for the workflow has external"
-                                                          + " keys that are manually assigned to"
-                                                          + " optional output and there is"
-                                                          + " mandatory output using remaining"
-                                                          + " (non-manually assigned) external"
-                                                          + " keys. This is forbidden as it could"
-                                                          + " potentially lose keys."));
-                                            }
-
-                                            final TreeSet<String> inputIds =
-                                                extractWorkflowInputIds(arguments, workflow);
-
-                                            final TreeSet<String> unresolvedIds = new TreeSet<>();
-
-                                            final TreeSet<ExternalId> externalIds =
-                                                extractExternalIds(
-                                                    arguments, workflow, unresolvedIds);
-                                            if (!unresolvedIds.isEmpty()) {
-                                              return handler.unresolvedIds(unresolvedIds);
-                                            }
-                                            if (externalKeys.stream()
-                                                .anyMatch(k -> k.getVersions().isEmpty())) {
-                                              return handler.missingExternalIdVersion();
-                                            }
-
-                                            final Set<Pair<String, String>> externalKeyIds =
-                                                externalKeys.stream()
-                                                    .map(
-                                                        k -> new Pair<>(k.getProvider(), k.getId()))
-                                                    .collect(Collectors.toSet());
-
-                                            final Set<Pair<String, String>> requiredOutputKeys =
-                                                workflow
-                                                    .definition()
-                                                    .outputs()
-                                                    .flatMap(
-                                                        output ->
-                                                            output
-                                                                .type()
-                                                                .apply(
-                                                                    new ExtractOutputKeys(
-                                                                        MAPPER,
-                                                                        externalKeyIds,
-                                                                        false,
-                                                                        metadata.get(
-                                                                            output.name()))))
-                                                    .collect(Collectors.toSet());
-                                            final Set<Pair<String, String>> optionalOutputKeys =
-                                                workflow
-                                                    .definition()
-                                                    .outputs()
-                                                    .flatMap(
-                                                        output ->
-                                                            output
-                                                                .type()
-                                                                .apply(
-                                                                    new ExtractOutputKeys(
-                                                                        MAPPER,
-                                                                        externalKeyIds,
-                                                                        true,
-                                                                        metadata.get(
-                                                                            output.name()))))
-                                                    .collect(Collectors.toSet());
-
-                                            if (externalIds.size() != externalKeys.size()) {
-                                              return handler.externalIdMismatch(
-                                                  String.format(
-                                                      "%d External IDs found (%s) but %d External Keys found (%s)!",
-                                                      externalIds.size(),
-                                                      externalIds,
-                                                      externalKeys.size(),
-                                                      externalKeys));
-                                            }
-                                            if (requiredOutputKeys.size() != externalKeys.size()) {
-                                              return handler.externalIdMismatch(
-                                                  String.format(
-                                                      "%d required Output Keys found (%s) but %d External Keys found (%s)!",
-                                                      requiredOutputKeys.size(),
-                                                      requiredOutputKeys,
-                                                      externalKeys.size(),
-                                                      externalKeys));
-                                            }
-                                            if (!requiredOutputKeys.equals(externalKeyIds)) {
-                                              return handler.externalIdMismatch(
-                                                  String.format(
-                                                      "Set of Required Output Keys (%s) does not match set of External Keys (%s)!",
-                                                      requiredOutputKeys, externalKeys));
-                                            }
-                                            if (!externalKeyIds.containsAll(optionalOutputKeys)) {
-                                              return handler.externalIdMismatch(
-                                                  String.format(
-                                                      "Set of External Key IDs (%s) does not contain all of the Optional Output Keys (%s)!",
-                                                      externalKeyIds, optionalOutputKeys));
-                                            }
-                                            if (!externalKeyIds.equals(
-                                                externalIds.stream()
-                                                    .map(
-                                                        k -> new Pair<>(k.getProvider(), k.getId()))
-                                                    .collect(Collectors.toSet()))) {
-                                              return handler.externalIdMismatch(
-                                                  String.format(
-                                                      "Unable to map External Key IDs (%s) to External ID by (Provider, ID): %s",
-                                                      externalKeyIds, externalIds));
-                                            }
-                                            try {
-                                              final String candidateId =
-                                                  computeWorkflowRunHashId(
-                                                      name,
-                                                      labels,
-                                                      workflow,
-                                                      inputIds,
-                                                      externalIds);
-                                              final List<Candidate> candidates =
-                                                  transaction
-                                                      .select(
-                                                          WORKFLOW_RUN.ID,
-                                                          WORKFLOW_RUN.HASH_ID,
-                                                          WORKFLOW_RUN.CREATED)
-                                                      .from(WORKFLOW_RUN)
-                                                      .where(WORKFLOW_RUN.HASH_ID.eq(candidateId))
-                                                      .stream()
-                                                      .map(
-                                                          r ->
-                                                              new Candidate(
-                                                                  r.get(WORKFLOW_RUN.ID),
-                                                                  r.get(WORKFLOW_RUN.HASH_ID),
-                                                                  r.get(WORKFLOW_RUN.CREATED)
-                                                                      .toInstant()))
-                                                      .toList();
-                                              if (candidates.isEmpty()) {
-                                                if (handler.allowLaunch()) {
-                                                  return launchNewWorkflowRun(
-                                                      maxInFlightByWorkflow,
-                                                      targetName,
-                                                      name,
-                                                      version,
-                                                      labels,
-                                                      arguments,
-                                                      engineParameters,
-                                                      metadata,
-                                                      externalKeys,
-                                                      consumableResources,
-                                                      handler,
-                                                      target,
-                                                      transaction,
-                                                      workflow,
-                                                      inputIds,
-                                                      externalIds,
-                                                      candidateId);
-                                                } else {
-                                                  return handler.dryRunResult();
-                                                }
-                                              } else if (candidates.size() == 1) {
-                                                final long workflowRunId = candidates.get(0).id();
-                                                final HashMap<Pair<String, String>, List<String>>
-                                                    knownMatches = new HashMap<>();
-                                                final ArrayList<ExternalKey> missingKeys =
-                                                    new ArrayList<>();
-                                                for (final ExternalKey externalKey : externalKeys) {
-                                                  final List<String> matchKeys =
-                                                      findMatchingVersionKeysMatchingExternalId(
-                                                          transaction, workflowRunId, externalKey);
-
-                                                  if (matchKeys.isEmpty()) {
-                                                    missingKeys.add(externalKey);
-                                                  } else {
-                                                    knownMatches.put(
-                                                        new Pair<>(
-                                                            externalKey.getProvider(),
-                                                            externalKey.getId()),
-                                                        matchKeys);
-                                                  }
-                                                }
-                                                if (!missingKeys.isEmpty()) {
-                                                  return handler.missingExternalKeyVersions(
-                                                      candidates.get(0).workflowRun(), missingKeys);
-                                                }
-
-                                                // Exit early if no launching is to occur (e.g. dry
-                                                // run or validate mode).
-                                                if (!handler.allowLaunch()) {
-                                                  return handler.matchExisting(
-                                                      candidates.get(0).workflowRun());
-                                                }
-
-                                                addNewExternalKeyVersions(
-                                                    externalKeys,
-                                                    transaction,
-                                                    workflowRunId,
-                                                    knownMatches);
-
-                                                // If this workflow is active, but failed, and the
-                                                // attempt number is higher or this is a different
-                                                // workflow version, we should restart it.
-                                                if (context
-                                                        .dsl()
-                                                        .selectCount()
-                                                        .from(
-                                                            ACTIVE_WORKFLOW_RUN
-                                                                .join(WORKFLOW_RUN)
-                                                                .on(
-                                                                    WORKFLOW_RUN.ID.eq(
-                                                                        ACTIVE_WORKFLOW_RUN.ID)))
-                                                        .where(
-                                                            WORKFLOW_RUN
-                                                                .ID
-                                                                .eq(workflowRunId)
-                                                                .and(IS_DEAD)
-                                                                .and(
-                                                                    ACTIVE_WORKFLOW_RUN
-                                                                        .ATTEMPT
-                                                                        .eq(attempt - 1)
-                                                                        .or(
-                                                                            WORKFLOW_RUN
-                                                                                .WORKFLOW_VERSION_ID
-                                                                                .ne(
-                                                                                    workflow
-                                                                                        .id()))))
-                                                        .fetchOptional()
-                                                        .map(Record1::value1)
-                                                        .orElse(0)
-                                                    > 0) {
-                                                  final SoftReference<AtomicBoolean> oldLiveness =
-                                                      liveness.remove(workflowRunId);
-                                                  if (oldLiveness != null) {
-                                                    final AtomicBoolean oldLivenessLock =
-                                                        oldLiveness.get();
-                                                    if (oldLivenessLock != null) {
-                                                      oldLivenessLock.set(false);
-                                                    }
-                                                  }
-                                                  final DatabaseWorkflow dbWorkflow =
-                                                      DatabaseWorkflow.reinitialise(
-                                                          target,
-                                                          workflowRunId,
-                                                          workflow.id(),
-                                                          name,
-                                                          version,
-                                                          candidateId,
-                                                          arguments,
-                                                          engineParameters,
-                                                          metadata,
-                                                          externalIds,
-                                                          liveness(workflowRunId),
-                                                          candidates.get(0).created(),
-                                                          externalKeys,
-                                                          consumableResources,
-                                                          transaction);
-                                                  return handler.reinitialise(
-                                                      candidateId,
-                                                      new ConsumableResourceChecker(
-                                                          target,
-                                                          dataSource,
-                                                          executor(),
-                                                          dbWorkflow.dbId(),
-                                                          liveness(dbWorkflow.dbId()),
-                                                          maxInFlightByWorkflow,
-                                                          name,
-                                                          version,
-                                                          candidateId,
-                                                          consumableResources,
-                                                          candidates.get(0).created(),
-                                                          new Runnable() {
-                                                            private boolean launched;
-
-                                                            @Override
-                                                            public void run() {
-                                                              if (launched) {
-                                                                throw new IllegalStateException(
-                                                                    "Workflow has already been"
-                                                                        + " launched");
-                                                              }
-                                                              launched = true;
-                                                              inTransaction(
-                                                                  runTransaction ->
-                                                                      DatabaseBackedProcessor.this
-                                                                          .start( // runs when
-                                                                              // action
-                                                                              // VIDARR-REATTEMPT'd
-                                                                              target,
-                                                                              workflow.definition(),
-                                                                              dbWorkflow,
-                                                                              runTransaction));
-                                                            }
-                                                          }));
-                                                } else {
-                                                  updateLastAccessed(
-                                                      transaction, candidates.get(0).workflowRun());
-                                                  return handler.matchExisting(
-                                                      candidates.get(0).workflowRun());
-                                                }
-                                              } else {
-                                                return handler.multipleMatches(
-                                                    candidates.stream()
-                                                        .map(Candidate::workflowRun)
-                                                        .toList());
-                                              }
-                                            } catch (SQLException e) {
-                                              return handler.internalError(e);
-                                            }
-                                          })
+                                          workflow ->
+                                              submitInTransaction(
+                                                  target,
+                                                  targetName,
+                                                  name,
+                                                  version,
+                                                  labels,
+                                                  arguments,
+                                                  engineParameters,
+                                                  metadata,
+                                                  externalKeys,
+                                                  consumableResources,
+                                                  attempt,
+                                                  maxInFlightByWorkflow,
+                                                  handler,
+                                                  transaction,
+                                                  workflow,
+                                                  this::pathForId,
+                                                  candidateId ->
+                                                      findCandidates(
+                                                              transaction, List.of(candidateId))
+                                                          .getOrDefault(candidateId, List.of())))
                                       .orElseGet(() -> handler.unknownWorkflow(name, version));
                                 } catch (SQLException e) {
                                   return handler.internalError(e);
                                 }
                               });
                   connection.commit();
+                  invalidateLocalFilesIfChanged(generation);
                   return submitResult;
                 }
               } catch (SQLException e) {
@@ -1839,6 +1845,431 @@ public abstract class DatabaseBackedProcessor
         .orElseGet(() -> handler.unknownTarget(targetName));
   }
 
+  /**
+   * Submit many workflow runs in a single database transaction
+   *
+   * <p>Each request is processed as {@link #submit(String, String, String, ObjectNode, JsonNode,
+   * JsonNode, JsonNode, Set, Map, int, MaxInFlightByWorkflow, SubmissionResultHandler)} would, but
+   * workflow definitions are only looked up once per workflow version, each input file is only
+   * resolved once, and existing workflow runs for all the requests are found with a single query.
+   * Every request is run inside its own savepoint, so a request that fails does not affect the
+   * others.
+   *
+   * @param requests the workflow runs to submit
+   * @param maxInFlightByWorkflow the max-in-flight limits to apply to launched workflow runs
+   * @param handlerForRequest create a handler for the result of each request
+   * @return the results, in the same order as the requests
+   */
+  protected final <T> List<T> submitBatch(
+      List<SubmitWorkflowRequest> requests,
+      MaxInFlightByWorkflow maxInFlightByWorkflow,
+      Function<SubmitWorkflowRequest, SubmissionResultHandler<T>> handlerForRequest) {
+    prefetch(
+        findFileIds(
+            requests.stream().map(SubmitWorkflowRequest::getArguments).filter(Objects::nonNull)));
+    final long generation = localFileGeneration.get();
+    try (final Connection connection = dataSource.getConnection()) {
+      final List<T> results =
+          DSL.using(connection, SQLDialect.POSTGRES)
+              .transactionResult(
+                  context -> {
+                    final DSLContext transaction = DSL.using(context);
+                    final Map<Pair<String, String>, Optional<WorkflowInformation>> workflows =
+                        new HashMap<>();
+                    for (final SubmitWorkflowRequest request : requests) {
+                      final Pair<String, String> key =
+                          new Pair<>(request.getWorkflow(), request.getWorkflowVersion());
+                      if (!workflows.containsKey(key)) {
+                        workflows.put(
+                            key, getWorkflowByName(key.first(), key.second(), transaction));
+                      }
+                    }
+                    final Map<String, Optional<FileMetadata>> resolved = new HashMap<>();
+                    final Function<String, Optional<FileMetadata>> resolver =
+                        id -> resolved.computeIfAbsent(id, this::pathForId);
+
+                    // Work out the hash of every valid request up front, so the existing
+                    // workflow runs can be found in one query
+                    final Set<String> candidateIds = new HashSet<>();
+                    for (final SubmitWorkflowRequest request : requests) {
+                      workflows
+                          .get(new Pair<>(request.getWorkflow(), request.getWorkflowVersion()))
+                          .filter(workflow -> request.getArguments() != null)
+                          .ifPresent(
+                              workflow -> {
+                                final TreeSet<String> unresolvedIds = new TreeSet<>();
+                                try {
+                                  final TreeSet<ExternalId> externalIds =
+                                      extractExternalIds(
+                                          request.getArguments(),
+                                          workflow,
+                                          unresolvedIds,
+                                          resolver);
+                                  if (unresolvedIds.isEmpty()) {
+                                    candidateIds.add(
+                                        computeWorkflowRunHashId(
+                                            request.getWorkflow(),
+                                            request.getLabels(),
+                                            workflow,
+                                            extractWorkflowInputIds(
+                                                request.getArguments(), workflow),
+                                            externalIds));
+                                  }
+                                } catch (RuntimeException e) {
+                                  // The request is malformed; it will be rejected with a proper
+                                  // error when it is processed
+                                }
+                              });
+                    }
+                    final Map<String, List<Candidate>> candidates =
+                        findCandidates(transaction, candidateIds);
+                    // Once a hash has been used, an earlier request in this batch may have
+                    // created or modified that workflow run, so look it up again
+                    final Set<String> usedCandidateIds = new HashSet<>();
+                    final Function<String, List<Candidate>> candidateLookup =
+                        candidateId ->
+                            usedCandidateIds.add(candidateId)
+                                ? candidates.getOrDefault(candidateId, List.of())
+                                : findCandidates(transaction, List.of(candidateId))
+                                    .getOrDefault(candidateId, List.of());
+
+                    final List<T> output = new ArrayList<>();
+                    for (final SubmitWorkflowRequest request : requests) {
+                      final SubmissionResultHandler<T> handler = handlerForRequest.apply(request);
+                      final Optional<Target> target = targetByName(request.getTarget());
+                      if (target.isEmpty()) {
+                        output.add(handler.unknownTarget(request.getTarget()));
+                        continue;
+                      }
+                      final Optional<WorkflowInformation> workflow =
+                          workflows.get(
+                              new Pair<>(request.getWorkflow(), request.getWorkflowVersion()));
+                      if (workflow.isEmpty()) {
+                        output.add(
+                            handler.unknownWorkflow(
+                                request.getWorkflow(), request.getWorkflowVersion()));
+                        continue;
+                      }
+                      try {
+                        output.add(
+                            transaction.transactionResult(
+                                savepoint ->
+                                    submitInTransaction(
+                                        target.get(),
+                                        request.getTarget(),
+                                        request.getWorkflow(),
+                                        request.getWorkflowVersion(),
+                                        request.getLabels(),
+                                        request.getArguments(),
+                                        request.getEngineParameters(),
+                                        request.getMetadata(),
+                                        request.getExternalKeys(),
+                                        request.getConsumableResources(),
+                                        request.getAttempt(),
+                                        maxInFlightByWorkflow,
+                                        handler,
+                                        DSL.using(savepoint),
+                                        workflow.get(),
+                                        resolver,
+                                        candidateLookup)));
+                      } catch (RuntimeException e) {
+                        output.add(handler.internalError(e));
+                      }
+                    }
+                    return output;
+                  });
+      connection.commit();
+      invalidateLocalFilesIfChanged(generation);
+      return results;
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Map<String, List<Candidate>> findCandidates(
+      DSLContext transaction, Collection<String> candidateIds) {
+    return transaction
+        .select(WORKFLOW_RUN.ID, WORKFLOW_RUN.HASH_ID, WORKFLOW_RUN.CREATED)
+        .from(WORKFLOW_RUN)
+        .where(WORKFLOW_RUN.HASH_ID.eq(DSL.any(candidateIds.toArray(String[]::new))))
+        .stream()
+        .map(
+            r ->
+                new Candidate(
+                    r.get(WORKFLOW_RUN.ID),
+                    r.get(WORKFLOW_RUN.HASH_ID),
+                    r.get(WORKFLOW_RUN.CREATED).toInstant()))
+        .collect(Collectors.groupingBy(Candidate::workflowRun));
+  }
+
+  private <T> T submitInTransaction(
+      Target target,
+      String targetName,
+      String name,
+      String version,
+      ObjectNode labels,
+      JsonNode arguments,
+      JsonNode engineParameters,
+      JsonNode metadata,
+      Set<ExternalKey> externalKeys,
+      Map<String, JsonNode> consumableResources,
+      int attempt,
+      MaxInFlightByWorkflow maxInFlightByWorkflow,
+      SubmissionResultHandler<T> handler,
+      DSLContext transaction,
+      WorkflowInformation workflow,
+      Function<String, Optional<FileMetadata>> resolver,
+      Function<String, List<Candidate>> candidateLookup) {
+    final Set<String> errors =
+        validateWorkflowInputs(
+            labels, arguments, engineParameters, metadata, consumableResources, target, workflow);
+    if (!errors.isEmpty()) {
+      return handler.invalidWorkflow(errors);
+    }
+    final Optional<String> retryError = validateWorkflowRetry(arguments, workflow);
+    if (retryError.isPresent()) {
+      return handler.invalidWorkflow(Set.of(retryError.get()));
+    }
+
+    if (workflow
+        .definition()
+        .outputs()
+        .map(
+            output ->
+                output
+                    .type()
+                    .apply(new CheckOutputCompatibility(MAPPER, metadata.get(output.name()))))
+        .reduce(OutputCompatibility::worst)
+        .map(OutputCompatibility.BROKEN::equals)
+        .orElse(false)) {
+      return handler.invalidWorkflow(
+          Set.of(
+              "The metadata for the workflow has external keys that are manually assigned to"
+                  + " optional output and there is mandatory output using remaining"
+                  + " (non-manually assigned) external keys. This is forbidden as it could"
+                  + " potentially lose keys."));
+    }
+
+    final TreeSet<String> inputIds = extractWorkflowInputIds(arguments, workflow);
+
+    final TreeSet<String> unresolvedIds = new TreeSet<>();
+
+    final TreeSet<ExternalId> externalIds =
+        extractExternalIds(arguments, workflow, unresolvedIds, resolver);
+    if (!unresolvedIds.isEmpty()) {
+      return handler.unresolvedIds(unresolvedIds);
+    }
+    if (externalKeys.stream().anyMatch(k -> k.getVersions().isEmpty())) {
+      return handler.missingExternalIdVersion();
+    }
+
+    final Set<Pair<String, String>> externalKeyIds =
+        externalKeys.stream()
+            .map(k -> new Pair<>(k.getProvider(), k.getId()))
+            .collect(Collectors.toSet());
+
+    final Set<Pair<String, String>> requiredOutputKeys =
+        workflow
+            .definition()
+            .outputs()
+            .flatMap(
+                output ->
+                    output
+                        .type()
+                        .apply(
+                            new ExtractOutputKeys(
+                                MAPPER, externalKeyIds, false, metadata.get(output.name()))))
+            .collect(Collectors.toSet());
+    final Set<Pair<String, String>> optionalOutputKeys =
+        workflow
+            .definition()
+            .outputs()
+            .flatMap(
+                output ->
+                    output
+                        .type()
+                        .apply(
+                            new ExtractOutputKeys(
+                                MAPPER, externalKeyIds, true, metadata.get(output.name()))))
+            .collect(Collectors.toSet());
+
+    if (externalIds.size() != externalKeys.size()) {
+      return handler.externalIdMismatch(
+          String.format(
+              "%d External IDs found (%s) but %d External Keys found (%s)!",
+              externalIds.size(), externalIds, externalKeys.size(), externalKeys));
+    }
+    if (requiredOutputKeys.size() != externalKeys.size()) {
+      return handler.externalIdMismatch(
+          String.format(
+              "%d required Output Keys found (%s) but %d External Keys found (%s)!",
+              requiredOutputKeys.size(), requiredOutputKeys, externalKeys.size(), externalKeys));
+    }
+    if (!requiredOutputKeys.equals(externalKeyIds)) {
+      return handler.externalIdMismatch(
+          String.format(
+              "Set of Required Output Keys (%s) does not match set of External Keys (%s)!",
+              requiredOutputKeys, externalKeys));
+    }
+    if (!externalKeyIds.containsAll(optionalOutputKeys)) {
+      return handler.externalIdMismatch(
+          String.format(
+              "Set of External Key IDs (%s) does not contain all of the Optional Output Keys (%s)!",
+              externalKeyIds, optionalOutputKeys));
+    }
+    if (!externalKeyIds.equals(
+        externalIds.stream()
+            .map(k -> new Pair<>(k.getProvider(), k.getId()))
+            .collect(Collectors.toSet()))) {
+      return handler.externalIdMismatch(
+          String.format(
+              "Unable to map External Key IDs (%s) to External ID by (Provider, ID): %s",
+              externalKeyIds, externalIds));
+    }
+    try {
+      final String candidateId =
+          computeWorkflowRunHashId(name, labels, workflow, inputIds, externalIds);
+      final List<Candidate> candidates = candidateLookup.apply(candidateId);
+      if (candidates.isEmpty()) {
+        if (handler.allowLaunch()) {
+          return launchNewWorkflowRun(
+              maxInFlightByWorkflow,
+              targetName,
+              name,
+              version,
+              labels,
+              arguments,
+              engineParameters,
+              metadata,
+              externalKeys,
+              consumableResources,
+              handler,
+              target,
+              transaction,
+              workflow,
+              inputIds,
+              externalIds,
+              candidateId);
+        } else {
+          return handler.dryRunResult();
+        }
+      } else if (candidates.size() == 1) {
+        final long workflowRunId = candidates.get(0).id();
+        final HashMap<Pair<String, String>, List<String>> knownMatches = new HashMap<>();
+        final ArrayList<ExternalKey> missingKeys = new ArrayList<>();
+        for (final ExternalKey externalKey : externalKeys) {
+          final List<String> matchKeys =
+              findMatchingVersionKeysMatchingExternalId(transaction, workflowRunId, externalKey);
+
+          if (matchKeys.isEmpty()) {
+            missingKeys.add(externalKey);
+          } else {
+            knownMatches.put(new Pair<>(externalKey.getProvider(), externalKey.getId()), matchKeys);
+          }
+        }
+        if (!missingKeys.isEmpty()) {
+          return handler.missingExternalKeyVersions(candidates.get(0).workflowRun(), missingKeys);
+        }
+
+        // Exit early if no launching is to occur (e.g. dry run or validate mode).
+        if (!handler.allowLaunch()) {
+          return handler.matchExisting(candidates.get(0).workflowRun());
+        }
+
+        addNewExternalKeyVersions(externalKeys, transaction, workflowRunId, knownMatches);
+
+        // If this workflow is active, but failed, and the attempt number is higher or this is a
+        // different workflow version, we should restart it.
+        if (transaction
+                .selectCount()
+                .from(
+                    ACTIVE_WORKFLOW_RUN
+                        .join(WORKFLOW_RUN)
+                        .on(WORKFLOW_RUN.ID.eq(ACTIVE_WORKFLOW_RUN.ID)))
+                .where(
+                    WORKFLOW_RUN
+                        .ID
+                        .eq(workflowRunId)
+                        .and(IS_DEAD)
+                        .and(
+                            ACTIVE_WORKFLOW_RUN
+                                .ATTEMPT
+                                .eq(attempt - 1)
+                                .or(WORKFLOW_RUN.WORKFLOW_VERSION_ID.ne(workflow.id()))))
+                .fetchOptional()
+                .map(Record1::value1)
+                .orElse(0)
+            > 0) {
+          final SoftReference<AtomicBoolean> oldLiveness = liveness.remove(workflowRunId);
+          if (oldLiveness != null) {
+            final AtomicBoolean oldLivenessLock = oldLiveness.get();
+            if (oldLivenessLock != null) {
+              oldLivenessLock.set(false);
+            }
+          }
+          // Reinitialising deletes the old run's output files
+          invalidateLocalFiles();
+          final DatabaseWorkflow dbWorkflow =
+              DatabaseWorkflow.reinitialise(
+                  target,
+                  workflowRunId,
+                  workflow.id(),
+                  name,
+                  version,
+                  candidateId,
+                  arguments,
+                  engineParameters,
+                  metadata,
+                  externalIds,
+                  liveness(workflowRunId),
+                  candidates.get(0).created(),
+                  externalKeys,
+                  consumableResources,
+                  transaction);
+          return handler.reinitialise(
+              candidateId,
+              new ConsumableResourceChecker(
+                  target,
+                  waitingResourceWriter,
+                  dispatcher,
+                  dbWorkflow.dbId(),
+                  liveness(dbWorkflow.dbId()),
+                  maxInFlightByWorkflow,
+                  name,
+                  version,
+                  candidateId,
+                  consumableResources,
+                  candidates.get(0).created(),
+                  new Runnable() {
+                    private boolean launched;
+
+                    @Override
+                    public void run() {
+                      if (launched) {
+                        throw new IllegalStateException("Workflow has already been launched");
+                      }
+                      launched = true;
+                      inTransaction(
+                          dbWorkflow,
+                          runTransaction ->
+                              DatabaseBackedProcessor.this.start( // runs when action
+                                  // VIDARR-REATTEMPT'd
+                                  target, workflow.definition(), dbWorkflow, runTransaction));
+                    }
+                  }));
+        } else {
+          updateLastAccessed(transaction, candidates.get(0).workflowRun());
+          return handler.matchExisting(candidates.get(0).workflowRun());
+        }
+      } else {
+        return handler.multipleMatches(
+            candidates.stream().map(Candidate::workflowRun).toList());
+      }
+    } catch (SQLException e) {
+      return handler.internalError(e);
+    }
+  }
+
   protected abstract Optional<Target> targetByName(String name);
 
   protected void updateLastAccessed(DSLContext context, String workflowRunHashId) {
@@ -1849,8 +2280,14 @@ public abstract class DatabaseBackedProcessor
         .execute();
   }
 
+  /**
+   * Record that a workflow run was accessed
+   *
+   * <p>This does not write to the database immediately; access times are collected and written in
+   * batches.
+   */
   protected void updateLastAccessed(String workflowRunHashId) {
-    inTransaction(context -> updateLastAccessed(context, workflowRunHashId));
+    lastAccessedWriter.write(workflowRunHashId);
   }
 
   int updateVersions(BulkVersionRequest request) {
@@ -1888,6 +2325,9 @@ public abstract class DatabaseBackedProcessor
                     .execute());
           }
         });
+    if (counter.get() > 0) {
+      invalidateLocalFiles();
+    }
     return counter.get();
   }
 
@@ -36,6 +36,7 @@ public class DatabaseOperation implements ActiveOperation<DSLContext> {
             id ->
                 new DatabaseOperation(
                     id.value1(),
+                    workflowId,
                     liveness,
                     recoveryState,
                     OperationStatus.INITIALIZING,
@@ -46,6 +47,7 @@ public class DatabaseOperation implements ActiveOperation<DSLContext> {
   public static DatabaseOperation recover(Record record, AtomicBoolean liveness) {
     return new DatabaseOperation(
         record.get(ACTIVE_OPERATION.ID),
+        record.get(ACTIVE_OPERATION.WORKFLOW_RUN_ID),
         liveness,
         record.get(ACTIVE_OPERATION.RECOVERY_STATE),
         record.get(ACTIVE_OPERATION.STATUS),
@@ -59,15 +61,18 @@ public class DatabaseOperation implements ActiveOperation<DSLContext> {
   private OperationStatus status;
   private String type;
   private DatabaseWorkflow workflow;
+  private final long workflowRunId;
 
   private DatabaseOperation(
       long id,
+      long workflowRunId,
       AtomicBoolean liveness,
       JsonNode recoveryState,
       OperationStatus status,
       String type,
       DatabaseWorkflow workflow) {
     this.id = id;
+    this.workflowRunId = workflowRunId;
     this.liveness = liveness;
     this.recoveryState = recoveryState;
     this.status = status;
@@ -135,6 +140,11 @@ public class DatabaseOperation implements ActiveOperation<DSLContext> {
     updateField(ACTIVE_OPERATION.TYPE, type, transaction);
   }
 
+  /** The database ID of the workflow run this operation belongs to */
+  long workflowRunId() {
+    return workflowRunId;
+  }
+
   private <T> void updateField(Field<T> field, T value, DSLContext transaction) {
     if (liveness.get()) {
       transaction
@@ -0,0 +1,121 @@
+package ca.on.oicr.gsi.vidarr.server;
+
+import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.WORKFLOW_RUN;
+
+import ca.on.oicr.gsi.vidarr.core.ExecutionLanes;
+import com.zaxxer.hikari.HikariDataSource;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import java.sql.Connection;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record2;
+import org.jooq.Row2;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+
+/**
+ * Collects the times workflow runs were accessed and writes them to the database in batches
+ *
+ * <p>Only the most recent access time for each workflow run is kept, so a workflow run that is
+ * checked many times between flushes is only written once. Any pending times are also written when
+ * the server shuts down.
+ */
+final class LastAccessedWriter {
+  private static final long FLUSH_PERIOD = 30;
+  private static final int ROWS_PER_STATEMENT = 1000;
+  private static final Histogram flushTime =
+      Histogram.build(
+              "vidarr_last_accessed_flush_time",
+              "The time, in seconds, to write a batch of workflow run access times")
+          .register();
+  private static final Counter rowsWritten =
+      Counter.build(
+              "vidarr_last_accessed_rows_written",
+              "The number of workflow run access times written to the database")
+          .register();
+
+  private final HikariDataSource dataSource;
+  private Map<String, OffsetDateTime> pending = new HashMap<>();
+
+  LastAccessedWriter(ExecutionLanes lanes, HikariDataSource dataSource) {
+    this.dataSource = dataSource;
+    lanes.repeat(lanes.blocking(), this::flush, FLUSH_PERIOD, TimeUnit.SECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "last-accessed-flush"));
+  }
+
+  /** Write all pending access times to the database */
+  void flush() {
+    final Map<String, OffsetDateTime> batch;
+    synchronized (this) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = pending;
+      pending = new HashMap<>();
+    }
+    final List<Row2<String, OffsetDateTime>> rows = new ArrayList<>();
+    for (final var entry : batch.entrySet()) {
+      rows.add(
+          DSL.row(
+              DSL.val(entry.getKey(), WORKFLOW_RUN.HASH_ID.getDataType()),
+              DSL.val(entry.getValue(), WORKFLOW_RUN.LAST_ACCESSED.getDataType())));
+    }
+    try (final var timer = flushTime.startTimer();
+        final Connection connection = dataSource.getConnection()) {
+      DSL.using(connection, SQLDialect.POSTGRES)
+          .transaction(
+              configuration -> {
+                final DSLContext dsl = DSL.using(configuration);
+                // Every value is a bind parameter, so large batches are split to stay well under
+                // the database's parameter limit
+                for (int start = 0; start < rows.size(); start += ROWS_PER_STATEMENT) {
+                  @SuppressWarnings("unchecked")
+                  final Table<Record2<String, OffsetDateTime>> updates =
+                      DSL.values(
+                              rows.subList(start, Math.min(rows.size(), start + ROWS_PER_STATEMENT))
+                                  .toArray(Row2[]::new))
+                          .as("u", "hash_id", "last_accessed");
+                  final Field<OffsetDateTime> lastAccessed =
+                      updates.field("last_accessed", OffsetDateTime.class);
+                  dsl.update(WORKFLOW_RUN)
+                      .set(WORKFLOW_RUN.LAST_ACCESSED, lastAccessed)
+                      .from(updates)
+                      .where(
+                          WORKFLOW_RUN
+                              .HASH_ID
+                              .eq(updates.field("hash_id", String.class))
+                              .and(
+                                  WORKFLOW_RUN
+                                      .LAST_ACCESSED
+                                      .isNull()
+                                      .or(WORKFLOW_RUN.LAST_ACCESSED.lt(lastAccessed))))
+                      .execute();
+                }
+              });
+      rowsWritten.inc(batch.size());
+    } catch (Exception e) {
+      e.printStackTrace();
+      // Put the failed updates back unless a newer value has arrived in the meantime
+      synchronized (this) {
+        batch.forEach(pending::putIfAbsent);
+      }
+    }
+  }
+
+  /**
+   * Record that a workflow run was accessed now
+   *
+   * @param workflowRunHashId the hash ID of the workflow run
+   */
+  synchronized void write(String workflowRunHashId) {
+    pending.put(workflowRunHashId, OffsetDateTime.now());
+  }
+}
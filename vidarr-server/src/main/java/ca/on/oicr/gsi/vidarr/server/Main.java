@@ -10,6 +10,7 @@ import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.EXTERNAL_ID_VERSION;
 import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.WORKFLOW;
 import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.WORKFLOW_DEFINITION;
 import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.WORKFLOW_RUN;
+import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.WORKFLOW_RUN_PROVENANCE;
 import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.WORKFLOW_VERSION;
 import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.WORKFLOW_VERSION_ACCESSORY;
 import static org.jooq.impl.DSL.jsonObject;
@@ -25,10 +26,10 @@ import ca.on.oicr.gsi.status.ServerConfig;
 import ca.on.oicr.gsi.status.StatusPage;
 import ca.on.oicr.gsi.vidarr.BasicType;
 import ca.on.oicr.gsi.vidarr.ConsumableResource;
+import ca.on.oicr.gsi.vidarr.HttpBulkhead;
 import ca.on.oicr.gsi.vidarr.InputProvisionFormat;
 import ca.on.oicr.gsi.vidarr.InputProvisioner;
 import ca.on.oicr.gsi.vidarr.InputType;
-import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
 import ca.on.oicr.gsi.vidarr.JsonPost;
 import ca.on.oicr.gsi.vidarr.OperationStatus;
 import ca.on.oicr.gsi.vidarr.OutputProvisionFormat;
@@ -40,6 +41,7 @@ import ca.on.oicr.gsi.vidarr.WorkflowEngine;
 import ca.on.oicr.gsi.vidarr.WorkflowLanguage;
 import ca.on.oicr.gsi.vidarr.api.*;
 import ca.on.oicr.gsi.vidarr.core.BaseProcessor;
+import ca.on.oicr.gsi.vidarr.core.ExecutionLanes;
 import ca.on.oicr.gsi.vidarr.core.ExtractInputVidarrIds;
 import ca.on.oicr.gsi.vidarr.core.FileMetadata;
 import ca.on.oicr.gsi.vidarr.core.ManualOverrideConsumableResource;
@@ -93,11 +95,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
-import java.net.HttpURLConnection;
-import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -124,13 +122,12 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -159,6 +156,9 @@ import org.postgresql.ds.PGSimpleDataSource;
 
 public final class Main implements ServerConfig {
 
+  private record ProvenancePage(
+      long epoch, boolean reset, long timestamp, long afterId, List<JsonNode> results) {}
+
   private interface UnloadProcessor<T> {
     T process(Configuration configuration, Map<Long, Phase> workflowRuns)
         throws IOException, SQLException;
@@ -175,27 +175,29 @@ public final class Main implements ServerConfig {
   static final JsonFactory MAPPER_FACTORY = new JsonFactory().setCodec(MAPPER);
   private static final String CONTENT_TYPE_TEXT = "text/plain";
   private static final String CONTENT_TYPE_JSON = "application/json";
-  private static final Counter REMOTE_ERROR_COUNT =
+  private static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+  private static final long PROVENANCE_BUILD_PERIOD = 1;
+  private static final Counter PROVENANCE_BUILT_COUNT =
       Counter.build(
-              "vidarr_remote_vidarr_error_count",
-              "The number of times a remote instance returned an error.")
-          .labelNames("remote")
+              "vidarr_provenance_documents_built",
+              "The number of stored provenance documents built or rebuilt")
+          .labelNames("reason")
           .register();
+  private static final int PROVENANCE_PAGE_SIZE = 500;
+  // Reads only build a few stale documents themselves; the rest are left to the background builder
+  private static final int PROVENANCE_READ_BUILD_LIMIT = 50;
   private static final Counter PROVENANCE_ERROR_COUNT =
       Counter.build(
               "vidarr_provenance_error_count",
               "The number of times Vidarr encountered an error when building a provenance "
                   + "response")
           .register();
-  private static final LatencyHistogram REMOTE_RESPONSE_TIME =
-      new LatencyHistogram(
-          "vidarr_remote_vidarr_response_time",
-          "The response time of a remote instance to a metadata access request",
-          "remote");
   private static final LatencyHistogram RESPONSE_TIME =
       new LatencyHistogram(
           "vidarr_http_response_time", "The response time to serve a query", "url");
   private static final List<JSONEntry<?>> STATUS_FIELDS = new ArrayList<>();
+  // The whole batch is submitted in one transaction, so this limits how long it can hold its locks
+  private static final int SUBMIT_BATCH_LIMIT = 500;
 
   static {
     MAPPER.registerModule(new JavaTimeModule());
@@ -348,7 +350,8 @@ public final class Main implements ServerConfig {
     return DSL.jsonEntry(DSL.inline(key), value);
   }
 
-  public static void main(String[] args) throws IOException, SQLException {
+  public static void main(String[] args)
+      throws IOException, SQLException, InterruptedException {
     if (args.length != 1) {
       System.err.println(
           "Usage: java --module-path MODULES --module ca.on.oicr.gsi.vidarr.server"
@@ -365,6 +368,12 @@ public final class Main implements ServerConfig {
             Handlers.routing()
                 .get("/", monitor(new BlockingHandler(server::status)))
                 .get("/api/file/{hash}", monitor(server::fetchFile))
+                .post(
+                    "/api/files",
+                    monitor(
+                        new BlockingHandler(
+                            JsonPost.parse(
+                                MAPPER, new TypeReference<List<String>>() {}, server::fetchFiles))))
                 .get("/api/run/{hash}", monitor(new BlockingHandler(server::fetchRun)))
                 .get("/api/recovery-failures", monitor(server::fetchRecoveryFailures))
                 .get("/api/status", monitor(new BlockingHandler(server::fetchAllActive)))
@@ -430,6 +439,14 @@ public final class Main implements ServerConfig {
                 .post(
                     "/api/submit",
                     monitor(JsonPost.parse(MAPPER, SubmitWorkflowRequest.class, server::submit)))
+                .post(
+                    "/api/submit-batch",
+                    monitor(
+                        new BlockingHandler(
+                            JsonPost.parse(
+                                MAPPER,
+                                new TypeReference<List<SubmitWorkflowRequest>>() {},
+                                server::submitBatch))))
                 .get("/api/workflow/{name}", monitor(new BlockingHandler(server::fetchWorkflow)))
                 .post(
                     "/api/workflow/{name}",
@@ -480,6 +497,12 @@ public final class Main implements ServerConfig {
             .build();
     undertow.start();
     server.recover();
+    // This also builds the documents for workflow runs that completed before documents were stored
+    server.lanes.repeat(
+        server.lanes.blocking(),
+        server::buildProvenance,
+        PROVENANCE_BUILD_PERIOD,
+        TimeUnit.MINUTES);
   }
 
   /**
@@ -704,8 +727,7 @@ public final class Main implements ServerConfig {
   private final HikariDataSource dataSource;
   private long epoch = ManagementFactory.getRuntimeMXBean().getStartTime();
   private final ReentrantReadWriteLock epochLock = new ReentrantReadWriteLock();
-  private final ScheduledExecutorService executor =
-      Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+  private final ExecutionLanes lanes;
   private final Map<String, InputProvisioner<?>> inputProvisioners;
   private final Semaphore loadCounter = new Semaphore(3);
   private Map<String, Semaphore> reprovisionCounter = new ConcurrentHashMap<>();
@@ -716,8 +738,12 @@ public final class Main implements ServerConfig {
   private final Map<String, OutputProvisioner<?, ?>> outputProvisioners;
   private final int port;
   private final DatabaseBackedProcessor processor;
+  private final int recoveryBurst;
+  private final long recoveryJitter;
+  private final double recoveryRate;
   private final Map<String, RuntimeProvisioner<?>> runtimeProvisioners;
   private final long maxEntitySize;
+  private final RemoteFileResolver remoteFiles;
   private final String selfName;
   private final String selfUrl;
   private final Map<String, Target> targets;
@@ -775,7 +801,15 @@ public final class Main implements ServerConfig {
                                     throws XMLStreamException {
                                   e.getValue().configuration(sectionRenderer);
                                 }
-                              }))
+                              }),
+                  Stream.of(
+                      new ConfigurationSection("HTTP Bulkheads") {
+                        @Override
+                        public void emit(SectionRenderer sectionRenderer)
+                            throws XMLStreamException {
+                          HttpBulkhead.renderAll(sectionRenderer);
+                        }
+                      }))
               .flatMap(Function.identity());
         }
       };
@@ -786,7 +820,11 @@ public final class Main implements ServerConfig {
     maxEntitySize = configuration.getMaxEntitySize();
     selfName = configuration.getName();
     port = configuration.getPort();
+    recoveryBurst = configuration.getRecoveryBurst();
+    recoveryJitter = configuration.getRecoveryJitter();
+    recoveryRate = configuration.getRecoveryRate();
     otherServers = configuration.getOtherServers();
+    remoteFiles = new RemoteFileResolver(otherServers);
     workflowEngines = configuration.getWorkflowEngines();
     inputProvisioners = configuration.getInputProvisioners();
     outputProvisioners = configuration.getOutputProvisioners();
@@ -924,9 +962,13 @@ public final class Main implements ServerConfig {
     // This limit is selected because of the default maximum number of connections supported by
     // Postgres
     dataSource.setMaximumPoolSize(Math.min(10 * Runtime.getRuntime().availableProcessors(), 95));
+    lanes =
+        ExecutionLanes.create(
+            Runtime.getRuntime().availableProcessors(), dataSource.getMaximumPoolSize());
     processor =
-        new DatabaseBackedProcessor(executor, dataSource) {
-          private Optional<FileMetadata> fetchPathForId(String id) {
+        new DatabaseBackedProcessor(lanes, dataSource) {
+          @Override
+          public Optional<FileMetadata> pathForId(String id) {
             final Matcher match = BaseProcessor.ANALYSIS_RECORD_ID.matcher(id);
             if (!match.matches() || !match.group("type").equals("file")) {
               return Optional.empty();
@@ -936,53 +978,25 @@ public final class Main implements ServerConfig {
             if (instance.equals("_") || instance.equals(selfName)) {
               return resolveInDatabase(hash);
             }
-            final String remote = otherServers.get(instance);
-            if (remote == null) {
-              return Optional.empty();
-            }
-
-            try (final AutoCloseable ignored = REMOTE_RESPONSE_TIME.start(remote)) {
-              final HttpResponse<Supplier<ProvenanceAnalysisRecord<ExternalMultiVersionKey>>>
-                  response =
-                      CLIENT.send(
-                          HttpRequest.newBuilder()
-                              .uri(URI.create(String.format("%s/api/file/%s", remote, hash)))
-                              .timeout(Duration.ofMinutes(1))
-                              .GET()
-                              .build(),
-                          new JsonBodyHandler<>(MAPPER, new TypeReference<>() {}));
-              if (response.statusCode() == HttpURLConnection.HTTP_OK) {
-                final ProvenanceAnalysisRecord<ExternalMultiVersionKey> result =
-                    response.body().get();
-                return Optional.of(
-                    new FileMetadata() {
-                      private final List<ExternalMultiVersionKey> keys = result.getExternalKeys();
-                      private final String path = result.getPath();
-
-                      @Override
-                      public Stream<ExternalMultiVersionKey> externalKeys() {
-                        return keys.stream();
-                      }
-
-                      @Override
-                      public String path() {
-                        return path;
-                      }
-                    });
-              } else {
-                return Optional.empty();
-              }
-
-            } catch (Exception e) {
-              e.printStackTrace();
-              REMOTE_ERROR_COUNT.labels(remote).inc();
-              return Optional.empty();
-            }
+            return remoteFiles.resolve(instance, hash);
           }
 
           @Override
-          public Optional<FileMetadata> pathForId(String id) {
-            return this.fetchPathForId(id);
+          public void prefetch(Collection<String> ids) {
+            final Set<String> localHashes = new TreeSet<>();
+            for (final String id : ids) {
+              final Matcher match = BaseProcessor.ANALYSIS_RECORD_ID.matcher(id);
+              if (match.matches()
+                  && match.group("type").equals("file")
+                  && (match.group("instance").equals("_")
+                      || match.group("instance").equals(selfName))) {
+                localHashes.add(match.group("hash"));
+              }
+            }
+            if (!localHashes.isEmpty()) {
+              resolveInDatabase(localHashes);
+            }
+            remoteFiles.prefetch(ids);
           }
 
           @Override
@@ -1026,6 +1040,7 @@ public final class Main implements ServerConfig {
                               .isFalse()
                               .or(WORKFLOW.MAX_IN_FLIGHT.ne(request.getMaxInFlight())))
                       .execute());
+      processor.invalidateWorkflows();
       maxInFlightPerWorkflow.set(name, request.getMaxInFlight());
       okEmptyResponse(exchange);
     } catch (SQLException | JsonProcessingException e) {
@@ -1199,6 +1214,7 @@ public final class Main implements ServerConfig {
                 }
                 createdResponse(exchange);
               });
+      processor.invalidateWorkflows();
     } catch (SQLException e) {
       internalServerErrorResponse(exchange, e);
     }
@@ -1279,6 +1295,35 @@ public final class Main implements ServerConfig {
       Set<AnalysisOutputType> includedAnalyses,
       Condition condition)
       throws SQLException {
+    final ProvenanceFilter filter =
+        new ProvenanceFilter(policy, allowedTypes, includeParameters, includedAnalyses);
+    context
+        .select(provenanceDocument())
+        .from(WORKFLOW_RUN)
+        .join(WORKFLOW_VERSION)
+        .on(WORKFLOW_RUN.WORKFLOW_VERSION_ID.eq(WORKFLOW_VERSION.ID))
+        .leftJoin(WORKFLOW_RUN_PROVENANCE)
+        .on(WORKFLOW_RUN_PROVENANCE.WORKFLOW_RUN_ID.eq(WORKFLOW_RUN.ID))
+        .where(condition)
+        .forEach(
+            result -> {
+              try {
+                jsonGenerator.writeTree(filter.apply((ObjectNode) result.value1()));
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            });
+  }
+
+  /**
+   * Build the complete provenance document for a workflow run
+   *
+   * <p>This includes everything any request could ask for, so that it can be stored and cut down
+   * using {@link ProvenanceFilter}. Fields that change without affecting provenance (the last
+   * accessed and modified times) and the instance name are left out; they are added when the
+   * document is read.
+   */
+  private Field<JsonNode> buildProvenanceDocument() {
     final ArrayList<JSONEntry<?>> fields = new ArrayList<>();
 
     fields.add(literalJsonEntry("completed", WORKFLOW_RUN.COMPLETED));
@@ -1286,16 +1331,10 @@ public final class Main implements ServerConfig {
     fields.add(literalJsonEntry("id", WORKFLOW_RUN.HASH_ID));
     fields.add(literalJsonEntry("inputFiles", WORKFLOW_RUN.INPUT_FILE_IDS));
     fields.add(literalJsonEntry("labels", WORKFLOW_RUN.LABELS));
-    fields.add(literalJsonEntry("modified", WORKFLOW_RUN.MODIFIED));
     fields.add(literalJsonEntry("started", WORKFLOW_RUN.STARTED));
-    fields.add(literalJsonEntry("lastAccessed", WORKFLOW_RUN.LAST_ACCESSED));
-    fields.add(literalJsonEntry("instanceName", DSL.coalesce(selfName, DSL.inline(selfName))));
-
-    if (includeParameters) {
-      fields.add(literalJsonEntry("arguments", WORKFLOW_RUN.ARGUMENTS));
-      fields.add(literalJsonEntry("engineParameters", WORKFLOW_RUN.ENGINE_PARAMETERS));
-      fields.add(literalJsonEntry("metadata", WORKFLOW_RUN.METADATA));
-    }
+    fields.add(literalJsonEntry("arguments", WORKFLOW_RUN.ARGUMENTS));
+    fields.add(literalJsonEntry("engineParameters", WORKFLOW_RUN.ENGINE_PARAMETERS));
+    fields.add(literalJsonEntry("metadata", WORKFLOW_RUN.METADATA));
     fields.add(
         literalJsonEntry(
             "workflowName",
@@ -1323,7 +1362,11 @@ public final class Main implements ServerConfig {
                                 literalJsonEntry("created", EXTERNAL_ID.CREATED),
                                 literalJsonEntry("modified", EXTERNAL_ID.MODIFIED),
                                 literalJsonEntry("requested", EXTERNAL_ID.REQUESTED),
-                                literalJsonEntry("versions", createQuery(policy, allowedTypes)))))
+                                literalJsonEntry(
+                                    "versions", createQuery(VersionPolicy.ALL, null)),
+                                literalJsonEntry(
+                                    "latestVersions",
+                                    createQuery(VersionPolicy.LATEST, null)))))
                     .from(EXTERNAL_ID)
                     .where(EXTERNAL_ID.WORKFLOW_RUN_ID.eq(WORKFLOW_RUN.ID)))));
 
@@ -1350,35 +1393,9 @@ public final class Main implements ServerConfig {
                                                         EXTERNAL_ID.ID)))
                                         .where(ANALYSIS_EXTERNAL_ID.ANALYSIS_ID.eq(ANALYSIS.ID))))))
                     .from(ANALYSIS)
-                    .where(
-                        ANALYSIS
-                            .WORKFLOW_RUN_ID
-                            .eq(WORKFLOW_RUN.ID)
-                            .and(
-                                ANALYSIS.ANALYSIS_TYPE.in(
-                                    includedAnalyses.stream()
-                                        .map(
-                                            t ->
-                                                switch (t) {
-                                                  case FILE -> "file";
-                                                  case URL -> "url";
-                                                })
-                                        .collect(Collectors.toList())))))));
-
-    context
-        .select(DSL.jsonObject(fields))
-        .from(WORKFLOW_RUN)
-        .join(WORKFLOW_VERSION)
-        .on(WORKFLOW_RUN.WORKFLOW_VERSION_ID.eq(WORKFLOW_VERSION.ID))
-        .where(condition)
-        .forEach(
-            result -> {
-              try {
-                jsonGenerator.writeRawValue(result.value1().data());
-              } catch (IOException e) {
-                throw new RuntimeException(e);
-              }
-            });
+                    .where(ANALYSIS.WORKFLOW_RUN_ID.eq(WORKFLOW_RUN.ID)))));
+    return DSL.field(
+        "{0}::jsonb", WORKFLOW_RUN_PROVENANCE.DOCUMENT.getDataType(), DSL.jsonObject(fields));
   }
 
   private void deleteWorkflowRun(HttpServerExchange exchange) {
@@ -1430,6 +1447,7 @@ public final class Main implements ServerConfig {
                                   .eq(param("workflowName", name))
                                   .and(WORKFLOW.IS_ACTIVE.isTrue()))
                           .execute());
+      processor.invalidateWorkflows();
       if (count == 0) {
         notFoundResponse(exchange);
       } else {
@@ -1565,35 +1583,37 @@ public final class Main implements ServerConfig {
     }
   }
 
+  private Field<JSON> createAnalysisWithRunJsonField() {
+    return createAnalysisJsonField(
+        DSL.field(
+            DSL.select(
+                    DSL.jsonArrayAgg(
+                        DSL.jsonObject(
+                            literalJsonEntry("id", EXTERNAL_ID.EXTERNAL_ID_),
+                            literalJsonEntry("provider", EXTERNAL_ID.PROVIDER),
+                            literalJsonEntry("created", EXTERNAL_ID.CREATED),
+                            literalJsonEntry("modified", EXTERNAL_ID.MODIFIED),
+                            literalJsonEntry("requested", EXTERNAL_ID.REQUESTED),
+                            literalJsonEntry("versions", createQuery(VersionPolicy.ALL, null)))))
+                .from(
+                    EXTERNAL_ID
+                        .join(ANALYSIS_EXTERNAL_ID)
+                        .on(EXTERNAL_ID.ID.eq(ANALYSIS_EXTERNAL_ID.EXTERNAL_ID_ID)))
+                .where(ANALYSIS_EXTERNAL_ID.ANALYSIS_ID.eq(ANALYSIS.ID))),
+        literalJsonEntry(
+            "run",
+            DSL.field(
+                DSL.select(WORKFLOW_RUN.HASH_ID)
+                    .from(WORKFLOW_RUN)
+                    .where(WORKFLOW_RUN.ID.eq(ANALYSIS.WORKFLOW_RUN_ID)))));
+  }
+
   private void fetchAnalysis(HttpServerExchange exchange, String type) {
     final String vidarrId =
         exchange.getAttachment(PathTemplateMatch.ATTACHMENT_KEY).getParameters().get("hash");
     try (final Connection connection = dataSource.getConnection()) {
       DSL.using(connection, SQLDialect.POSTGRES)
-          .select(
-              createAnalysisJsonField(
-                  DSL.field(
-                      DSL.select(
-                              DSL.jsonArrayAgg(
-                                  DSL.jsonObject(
-                                      literalJsonEntry("id", EXTERNAL_ID.EXTERNAL_ID_),
-                                      literalJsonEntry("provider", EXTERNAL_ID.PROVIDER),
-                                      literalJsonEntry("created", EXTERNAL_ID.CREATED),
-                                      literalJsonEntry("modified", EXTERNAL_ID.MODIFIED),
-                                      literalJsonEntry("requested", EXTERNAL_ID.REQUESTED),
-                                      literalJsonEntry(
-                                          "versions", createQuery(VersionPolicy.ALL, null)))))
-                          .from(
-                              EXTERNAL_ID
-                                  .join(ANALYSIS_EXTERNAL_ID)
-                                  .on(EXTERNAL_ID.ID.eq(ANALYSIS_EXTERNAL_ID.EXTERNAL_ID_ID)))
-                          .where(ANALYSIS_EXTERNAL_ID.ANALYSIS_ID.eq(ANALYSIS.ID))),
-                  literalJsonEntry(
-                      "run",
-                      DSL.field(
-                          DSL.select(WORKFLOW_RUN.HASH_ID)
-                              .from(WORKFLOW_RUN)
-                              .where(WORKFLOW_RUN.ID.eq(ANALYSIS.WORKFLOW_RUN_ID))))))
+          .select(createAnalysisWithRunJsonField())
           .from(ANALYSIS)
           .where(
               ANALYSIS
@@ -1618,6 +1638,30 @@ public final class Main implements ServerConfig {
     fetchAnalysis(exchange, "file");
   }
 
+  private void fetchFiles(HttpServerExchange exchange, List<String> hashes) {
+    if (hashes.size() > RemoteFileResolver.MAX_BATCH_SIZE) {
+      badRequestResponse(
+          exchange,
+          String.format(
+              "At most %d files can be requested at once.", RemoteFileResolver.MAX_BATCH_SIZE));
+      return;
+    }
+    try (final Connection connection = dataSource.getConnection()) {
+      okJsonResponse(
+          exchange,
+          DSL.using(connection, SQLDialect.POSTGRES)
+              .select(createAnalysisWithRunJsonField())
+              .from(ANALYSIS)
+              .where(ANALYSIS.HASH_ID.in(hashes).and(ANALYSIS.ANALYSIS_TYPE.eq("file")))
+              .fetch(Record1::value1)
+              .stream()
+              .map(JSON::data)
+              .collect(Collectors.joining(",", "[", "]")));
+    } catch (SQLException e) {
+      internalServerErrorResponse(exchange, e);
+    }
+  }
+
   private void fetchMaxInFlight(HttpServerExchange exchange) {
     exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE_JSON);
     exchange.setStatusCode(StatusCodes.OK);
@@ -1641,17 +1685,19 @@ public final class Main implements ServerConfig {
   }
 
   private void fetchProvenance(HttpServerExchange exchange, AnalysisProvenanceRequest request) {
+    final String accept = exchange.getRequestHeaders().getFirst(Headers.ACCEPT);
+    if (accept != null && accept.contains(CONTENT_TYPE_NDJSON)) {
+      streamProvenance(exchange, request);
+      return;
+    }
+    if (request.getPageSize() > 0) {
+      fetchProvenancePage(exchange, request);
+      return;
+    }
     exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE_JSON);
     exchange.setStatusCode(StatusCodes.OK);
     final OffsetDateTime endTime = OffsetDateTime.now();
 
-    Condition maybeExcludeWorkflowsCondition = DSL.noCondition();
-    if (request.getExcludeWorkflows() != null && !request.getExcludeWorkflows().isEmpty()) {
-      maybeExcludeWorkflowsCondition =
-          maybeExcludeWorkflowsCondition.and(
-              DSL.not(WORKFLOW_VERSION.NAME.in(request.getExcludeWorkflows())));
-    }
-
     epochLock.readLock().lock();
     try (final JsonGenerator output = MAPPER_FACTORY.createGenerator(exchange.getOutputStream())) {
       if (request.getEpoch() != epoch) {
@@ -1662,19 +1708,22 @@ public final class Main implements ServerConfig {
       output.writeNumberField("timestamp", endTime.toInstant().toEpochMilli());
       output.writeArrayFieldStart("results");
       try (final Connection connection = dataSource.getConnection()) {
+        final DSLContext context = DSL.using(connection, SQLDialect.POSTGRES);
+        final Condition condition =
+            WORKFLOW_RUN
+                .MODIFIED
+                .gt(Instant.ofEpochMilli(request.getTimestamp()).atOffset(ZoneOffset.UTC))
+                .and(WORKFLOW_RUN.MODIFIED.le(endTime))
+                .and(provenanceCondition(request));
+        refreshProvenance(context, condition, PROVENANCE_READ_BUILD_LIMIT, "read");
         createAnalysisRecords(
-            DSL.using(connection, SQLDialect.POSTGRES),
+            context,
             output,
             request.getVersionPolicy(),
             request.getVersionTypes(),
             request.isIncludeParameters(),
             request.getAnalysisTypes(),
-            WORKFLOW_RUN
-                .MODIFIED
-                .gt(Instant.ofEpochMilli(request.getTimestamp()).atOffset(ZoneOffset.UTC))
-                .and(WORKFLOW_RUN.MODIFIED.le(endTime))
-                .and(WORKFLOW_RUN.COMPLETED.isNotNull())
-                .and(maybeExcludeWorkflowsCondition));
+            condition);
         output.writeEndArray();
         output.writeEndObject();
       }
@@ -1686,6 +1735,31 @@ public final class Main implements ServerConfig {
     }
   }
 
+  private void fetchProvenancePage(HttpServerExchange exchange, AnalysisProvenanceRequest request) {
+    try {
+      final ProvenancePage page =
+          queryProvenancePage(request, request.getPageSize(), OffsetDateTime.now());
+      exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE_JSON);
+      exchange.setStatusCode(StatusCodes.OK);
+      try (final JsonGenerator output =
+          MAPPER_FACTORY.createGenerator(exchange.getOutputStream())) {
+        output.writeStartObject();
+        output.writeNumberField("afterId", page.afterId());
+        output.writeNumberField("epoch", page.epoch());
+        output.writeNumberField("timestamp", page.timestamp());
+        output.writeArrayFieldStart("results");
+        for (final JsonNode result : page.results()) {
+          output.writeTree(result);
+        }
+        output.writeEndArray();
+        output.writeEndObject();
+      }
+    } catch (IOException | SQLException e) {
+      PROVENANCE_ERROR_COUNT.inc();
+      internalServerErrorResponse(exchange, e);
+    }
+  }
+
   private void fetchRecoveryFailures(HttpServerExchange exchange) {
     final Set<String> failureIds = processor.recoveryFailures();
     ArrayNode failureIdsResult = MAPPER.createArrayNode();
@@ -2436,6 +2510,7 @@ public final class Main implements ServerConfig {
             .transaction(
                 configuration ->
                     loadDataIntoDatabase(unloadedData, workflowInfo, configuration, !verify));
+        processor.invalidateWorkflows();
         okEmptyResponse(exchange, send);
       } catch (IllegalArgumentException e) {
         badRequestResponse(exchange, e.getMessage());
@@ -2594,19 +2669,203 @@ public final class Main implements ServerConfig {
     return Stream.empty();
   }
 
-  private void recover() throws SQLException {
-    final ArrayList<Runnable> recoveredWorkflows = new ArrayList<>();
+  private static Condition provenanceCondition(AnalysisProvenanceRequest request) {
+    Condition condition = WORKFLOW_RUN.COMPLETED.isNotNull();
+    if (request.getExcludeWorkflows() != null && !request.getExcludeWorkflows().isEmpty()) {
+      condition = condition.and(DSL.not(WORKFLOW_VERSION.NAME.in(request.getExcludeWorkflows())));
+    }
+    return condition;
+  }
+
+  /**
+   * Read the provenance document for a workflow run
+   *
+   * <p>This uses the stored document if it is current and builds it otherwise; it must be selected
+   * from the workflow run joined to its version and left joined to the stored documents.
+   */
+  private Field<JsonNode> provenanceDocument() {
+    return DSL.field(
+        "{0} || jsonb_build_object('instanceName', {1}, 'lastAccessed', {2}, 'modified', {3})",
+        WORKFLOW_RUN_PROVENANCE.DOCUMENT.getDataType(),
+        DSL.coalesce(
+            DSL.when(
+                WORKFLOW_RUN_PROVENANCE.BUILT_GENERATION.eq(WORKFLOW_RUN_PROVENANCE.GENERATION),
+                WORKFLOW_RUN_PROVENANCE.DOCUMENT),
+            buildProvenanceDocument()),
+        DSL.val(selfName, SQLDataType.VARCHAR),
+        WORKFLOW_RUN.LAST_ACCESSED,
+        WORKFLOW_RUN.MODIFIED);
+  }
+
+  /**
+   * Fetch the next page of provenance records after the request's cursor
+   *
+   * <p>The epoch lock is only held while querying, so an unload can proceed between pages. If the
+   * epoch has changed since the client's last request, the cursor is reset to the beginning.
+   */
+  private ProvenancePage queryProvenancePage(
+      AnalysisProvenanceRequest request, int pageSize, OffsetDateTime endTime)
+      throws SQLException {
+    final ProvenanceFilter filter =
+        new ProvenanceFilter(
+            request.getVersionPolicy(),
+            request.getVersionTypes(),
+            request.isIncludeParameters(),
+            request.getAnalysisTypes());
+    epochLock.readLock().lock();
+    try (final Connection connection = dataSource.getConnection()) {
+      final DSLContext context = DSL.using(connection, SQLDialect.POSTGRES);
+      final boolean reset = request.getEpoch() != epoch;
+      long timestamp = reset ? 0 : request.getTimestamp();
+      long afterId = reset ? 0 : request.getAfterId();
+      // Find the page first so that only the documents on it are rebuilt
+      final Long[] ids =
+          context
+              .select(WORKFLOW_RUN.ID)
+              .from(WORKFLOW_RUN)
+              .where(
+                  DSL.row(WORKFLOW_RUN.MODIFIED, WORKFLOW_RUN.ID)
+                      .gt(Instant.ofEpochMilli(timestamp).atOffset(ZoneOffset.UTC), afterId)
+                      .and(WORKFLOW_RUN.MODIFIED.le(endTime))
+                      .and(provenanceCondition(request)))
+              .orderBy(WORKFLOW_RUN.MODIFIED, WORKFLOW_RUN.ID)
+              .limit(pageSize)
+              .fetch(WORKFLOW_RUN.ID)
+              .toArray(Long[]::new);
+      final Condition onPage = WORKFLOW_RUN.ID.eq(DSL.any(ids));
+      refreshProvenance(context, onPage, PROVENANCE_READ_BUILD_LIMIT, "read");
+      final List<JsonNode> results = new ArrayList<>();
+      for (final var result :
+          context
+              .select(provenanceDocument(), WORKFLOW_RUN.MODIFIED, WORKFLOW_RUN.ID)
+              .from(WORKFLOW_RUN)
+              .join(WORKFLOW_VERSION)
+              .on(WORKFLOW_RUN.WORKFLOW_VERSION_ID.eq(WORKFLOW_VERSION.ID))
+              .leftJoin(WORKFLOW_RUN_PROVENANCE)
+              .on(WORKFLOW_RUN_PROVENANCE.WORKFLOW_RUN_ID.eq(WORKFLOW_RUN.ID))
+              .where(onPage)
+              .orderBy(WORKFLOW_RUN.MODIFIED, WORKFLOW_RUN.ID)
+              .fetch()) {
+        results.add(filter.apply((ObjectNode) result.value1()));
+        timestamp = result.value2().toInstant().toEpochMilli();
+        afterId = result.value3();
+      }
+      return new ProvenancePage(epoch, reset, timestamp, afterId, results);
+    } finally {
+      epochLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Build the stored provenance documents that are missing or out of date for all workflow runs
+   *
+   * <p>This runs periodically in the background so that reads rarely find a stale document, and
+   * catches up on workflow runs that completed before documents were stored.
+   */
+  private void buildProvenance() {
+    try (final Connection connection = dataSource.getConnection()) {
+      final DSLContext context = DSL.using(connection, SQLDialect.POSTGRES);
+      int found;
+      do {
+        found = refreshProvenance(context, DSL.trueCondition(), PROVENANCE_PAGE_SIZE, "background");
+      } while (found == PROVENANCE_PAGE_SIZE);
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Rebuild stored provenance documents that are missing or out of date
+   *
+   * <p>Documents are rebuilt in short transactions that are committed before anything is read, so
+   * the rebuilt documents are kept and the rows are not locked while a response is being sent.
+   * Each document is stored with the generation it was built from; if the workflow run changes
+   * while it is being built, the database will have already moved to a newer generation and the
+   * document will be rebuilt later. Any stale documents beyond the limit are built when read, but
+   * not stored.
+   *
+   * @param context the connection to use; any transaction already open on it is committed
+   * @param condition the workflow runs to rebuild; this may use the workflow version
+   * @param limit the maximum number of documents to rebuild
+   * @param reason the reason for rebuilding, used in metrics
+   * @return the number of stale documents that were found, up to the limit
+   */
+  private int refreshProvenance(DSLContext context, Condition condition, int limit, String reason) {
+    final Condition stale =
+        condition
+            .and(WORKFLOW_RUN.COMPLETED.isNotNull())
+            .and(
+                WORKFLOW_RUN_PROVENANCE
+                    .BUILT_GENERATION
+                    .isNull()
+                    .or(
+                        WORKFLOW_RUN_PROVENANCE.BUILT_GENERATION.ne(
+                            WORKFLOW_RUN_PROVENANCE.GENERATION)));
+    final List<Long> ids =
+        context
+            .select(WORKFLOW_RUN.ID)
+            .from(WORKFLOW_RUN)
+            .join(WORKFLOW_VERSION)
+            .on(WORKFLOW_RUN.WORKFLOW_VERSION_ID.eq(WORKFLOW_VERSION.ID))
+            .leftJoin(WORKFLOW_RUN_PROVENANCE)
+            .on(WORKFLOW_RUN_PROVENANCE.WORKFLOW_RUN_ID.eq(WORKFLOW_RUN.ID))
+            .where(stale)
+            .orderBy(WORKFLOW_RUN.ID)
+            .limit(limit)
+            .fetch(WORKFLOW_RUN.ID);
+    for (int i = 0; i < ids.size(); i += PROVENANCE_PAGE_SIZE) {
+      final Long[] chunk =
+          ids.subList(i, Math.min(i + PROVENANCE_PAGE_SIZE, ids.size())).toArray(Long[]::new);
+      final int built =
+          context.transactionResult(
+              configuration ->
+                  DSL.using(configuration)
+                      .insertInto(
+                          WORKFLOW_RUN_PROVENANCE,
+                          WORKFLOW_RUN_PROVENANCE.WORKFLOW_RUN_ID,
+                          WORKFLOW_RUN_PROVENANCE.BUILT_GENERATION,
+                          WORKFLOW_RUN_PROVENANCE.DOCUMENT)
+                      .select(
+                          DSL.select(
+                                  WORKFLOW_RUN.ID,
+                                  DSL.coalesce(WORKFLOW_RUN_PROVENANCE.GENERATION, 0L),
+                                  buildProvenanceDocument())
+                              .from(WORKFLOW_RUN)
+                              .join(WORKFLOW_VERSION)
+                              .on(WORKFLOW_RUN.WORKFLOW_VERSION_ID.eq(WORKFLOW_VERSION.ID))
+                              .leftJoin(WORKFLOW_RUN_PROVENANCE)
+                              .on(WORKFLOW_RUN_PROVENANCE.WORKFLOW_RUN_ID.eq(WORKFLOW_RUN.ID))
+                              // Check again, in case another request rebuilt it in the meantime
+                              .where(WORKFLOW_RUN.ID.eq(DSL.any(chunk)).and(stale))
+                              // Lock rows in a consistent order so concurrent rebuilds cannot
+                              // deadlock
+                              .orderBy(WORKFLOW_RUN.ID))
+                      .onConflict(WORKFLOW_RUN_PROVENANCE.WORKFLOW_RUN_ID)
+                      .doUpdate()
+                      .set(
+                          WORKFLOW_RUN_PROVENANCE.BUILT_GENERATION,
+                          DSL.excluded(WORKFLOW_RUN_PROVENANCE.BUILT_GENERATION))
+                      .set(
+                          WORKFLOW_RUN_PROVENANCE.DOCUMENT,
+                          DSL.excluded(WORKFLOW_RUN_PROVENANCE.DOCUMENT))
+                      .execute());
+      PROVENANCE_BUILT_COUNT.labels(reason).inc(built);
+    }
+    return ids.size();
+  }
+
+  private void recover() throws SQLException, InterruptedException {
+    final RecoveryScheduler scheduler =
+        new RecoveryScheduler(lanes, recoveryRate, recoveryBurst, recoveryJitter);
     processor.recover(
-        recoveredWorkflows::add,
-        this.maxInFlightPerWorkflow,
-        outputProvisioners,
-        reprovisionCounter);
-    if (recoveredWorkflows.isEmpty()) {
+        scheduler, this.maxInFlightPerWorkflow, outputProvisioners, reprovisionCounter);
+    final int recovered = scheduler.finish();
+    if (recovered == 0) {
       System.err.println("No unstarted workflows in the database. Resuming normal operation.");
     } else {
       System.err.printf(
-          "Recovering %d unstarted workflows from the database.\n", recoveredWorkflows.size());
-      recoveredWorkflows.forEach(Runnable::run);
+          "Recovered %d unstarted workflows from the database; restarting at %s per second.\n",
+          recovered, recoveryRate);
     }
   }
 
@@ -2647,120 +2906,213 @@ public final class Main implements ServerConfig {
               body.getConsumableResources(),
               body.getAttempt(),
               this.maxInFlightPerWorkflow,
-              new DatabaseBackedProcessor.SubmissionResultHandler<>() {
-                @Override
-                public boolean allowLaunch() {
-                  return body.getMode() == SubmitMode.RUN;
-                }
+              submissionHandler(body, postCommitAction::set));
+    }
+    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE_JSON);
+    exchange.setStatusCode(response.first());
+    if (postCommitAction.get() != null) {
+      postCommitAction.get().run();
+    }
+    try {
+      exchange.getResponseSender().send(MAPPER.writeValueAsString(response.second()));
+    } catch (JsonProcessingException e) {
+      internalServerErrorResponse(exchange, e);
+    }
+  }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> dryRunResult() {
-                  return new Pair<>(StatusCodes.OK, new SubmitWorkflowResponseDryRun());
-                }
+  private void submitBatch(HttpServerExchange exchange, List<SubmitWorkflowRequest> body) {
+    if (body.size() > SUBMIT_BATCH_LIMIT) {
+      badRequestResponse(
+          exchange,
+          String.format(
+              "Batch has %d requests, but at most %d are allowed.",
+              body.size(), SUBMIT_BATCH_LIMIT));
+      return;
+    }
+    final List<Runnable> postCommitActions = new ArrayList<>();
+    final List<Pair<Integer, SubmitWorkflowResponse>> responses;
+    if (!canSubmit) {
+      responses =
+          body.stream()
+              .<Pair<Integer, SubmitWorkflowResponse>>map(
+                  request ->
+                      new Pair<>(
+                          StatusCodes.BAD_REQUEST,
+                          new SubmitWorkflowResponseFailure(
+                              "This Vidarr does not allow submissions")))
+              .toList();
+    } else {
+      responses =
+          processor.submitBatch(
+              body,
+              this.maxInFlightPerWorkflow,
+              request -> submissionHandler(request, postCommitActions::add));
+    }
+    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE_JSON);
+    // Each response has its own type, so the client can tell which requests failed
+    exchange.setStatusCode(
+        responses.stream().allMatch(response -> response.first() == StatusCodes.OK)
+            ? StatusCodes.OK
+            : StatusCodes.MULTI_STATUS);
+    postCommitActions.forEach(Runnable::run);
+    try {
+      exchange
+          .getResponseSender()
+          .send(
+              MAPPER
+                  .writerFor(new TypeReference<List<SubmitWorkflowResponse>>() {})
+                  .writeValueAsString(responses.stream().map(Pair::second).toList()));
+    } catch (JsonProcessingException e) {
+      internalServerErrorResponse(exchange, e);
+    }
+  }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> externalIdMismatch(String error) {
-                  return new Pair<>(
-                      StatusCodes.BAD_REQUEST,
-                      new SubmitWorkflowResponseFailure("External IDs do not match: " + error));
-                }
+  private DatabaseBackedProcessor.SubmissionResultHandler<Pair<Integer, SubmitWorkflowResponse>>
+      submissionHandler(SubmitWorkflowRequest body, Consumer<Runnable> postCommitAction) {
+    return new DatabaseBackedProcessor.SubmissionResultHandler<>() {
+      @Override
+      public boolean allowLaunch() {
+        return body.getMode() == SubmitMode.RUN;
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> internalError(Exception e) {
-                  e.printStackTrace();
-                  return new Pair<>(
-                      StatusCodes.INTERNAL_SERVER_ERROR,
-                      new SubmitWorkflowResponseFailure(e.getMessage()));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> dryRunResult() {
+        return new Pair<>(StatusCodes.OK, new SubmitWorkflowResponseDryRun());
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> invalidWorkflow(Set<String> errors) {
-                  return new Pair<>(
-                      StatusCodes.BAD_REQUEST, new SubmitWorkflowResponseFailure(errors));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> externalIdMismatch(String error) {
+        return new Pair<>(
+            StatusCodes.BAD_REQUEST,
+            new SubmitWorkflowResponseFailure("External IDs do not match: " + error));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> launched(
-                    String vidarrId, Runnable start) {
-                  postCommitAction.set(start);
-                  return new Pair<>(StatusCodes.OK, new SubmitWorkflowResponseSuccess(vidarrId));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> internalError(Exception e) {
+        e.printStackTrace();
+        return new Pair<>(
+            StatusCodes.INTERNAL_SERVER_ERROR, new SubmitWorkflowResponseFailure(e.getMessage()));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> matchExisting(String vidarrId) {
-                  return new Pair<>(StatusCodes.OK, new SubmitWorkflowResponseSuccess(vidarrId));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> invalidWorkflow(Set<String> errors) {
+        return new Pair<>(StatusCodes.BAD_REQUEST, new SubmitWorkflowResponseFailure(errors));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> missingExternalIdVersion() {
-                  return new Pair<>(
-                      StatusCodes.BAD_REQUEST,
-                      new SubmitWorkflowResponseFailure("External IDs do not have versions set."));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> launched(String vidarrId, Runnable start) {
+        postCommitAction.accept(start);
+        return new Pair<>(StatusCodes.OK, new SubmitWorkflowResponseSuccess(vidarrId));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> missingExternalKeyVersions(
-                    String vidarrId, List<ExternalKey> missingKeys) {
-                  return new Pair<>(
-                      StatusCodes.BAD_REQUEST,
-                      new SubmitWorkflowResponseMissingKeyVersions(vidarrId, missingKeys));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> matchExisting(String vidarrId) {
+        return new Pair<>(StatusCodes.OK, new SubmitWorkflowResponseSuccess(vidarrId));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> multipleMatches(
-                    List<String> matchIds) {
-                  return new Pair<>(
-                      StatusCodes.CONFLICT, new SubmitWorkflowResponseConflict(matchIds));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> missingExternalIdVersion() {
+        return new Pair<>(
+            StatusCodes.BAD_REQUEST,
+            new SubmitWorkflowResponseFailure("External IDs do not have versions set."));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> reinitialise(
-                    String vidarrId, Runnable start) {
-                  postCommitAction.set(start);
-                  return new Pair<>(StatusCodes.OK, new SubmitWorkflowResponseSuccess(vidarrId));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> missingExternalKeyVersions(
+          String vidarrId, List<ExternalKey> missingKeys) {
+        return new Pair<>(
+            StatusCodes.BAD_REQUEST,
+            new SubmitWorkflowResponseMissingKeyVersions(vidarrId, missingKeys));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> unknownTarget(String targetName) {
-                  return new Pair<>(
-                      StatusCodes.BAD_REQUEST,
-                      new SubmitWorkflowResponseFailure(
-                          String.format("Target %s is unknown", targetName)));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> multipleMatches(List<String> matchIds) {
+        return new Pair<>(StatusCodes.CONFLICT, new SubmitWorkflowResponseConflict(matchIds));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> unknownWorkflow(
-                    String name, String version) {
-                  return new Pair<>(
-                      StatusCodes.BAD_REQUEST,
-                      new SubmitWorkflowResponseFailure(
-                          String.format("Workflow %s (%s) is unknown", name, version)));
-                }
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> reinitialise(String vidarrId, Runnable start) {
+        postCommitAction.accept(start);
+        return new Pair<>(StatusCodes.OK, new SubmitWorkflowResponseSuccess(vidarrId));
+      }
 
-                @Override
-                public Pair<Integer, SubmitWorkflowResponse> unresolvedIds(
-                    TreeSet<String> inputId) {
-                  return new Pair<>(
-                      StatusCodes.BAD_REQUEST,
-                      new SubmitWorkflowResponseFailure(
-                          inputId.stream()
-                              .map(id -> String.format("Input ID %s cannot be resolved", id))
-                              .collect(Collectors.toList())));
-                }
-              });
-    }
-    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE_JSON);
-    exchange.setStatusCode(response.first());
-    if (postCommitAction.get() != null) {
-      postCommitAction.get().run();
-    }
-    try {
-      exchange.getResponseSender().send(MAPPER.writeValueAsString(response.second()));
-    } catch (JsonProcessingException e) {
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> unknownTarget(String targetName) {
+        return new Pair<>(
+            StatusCodes.BAD_REQUEST,
+            new SubmitWorkflowResponseFailure(String.format("Target %s is unknown", targetName)));
+      }
+
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> unknownWorkflow(String name, String version) {
+        return new Pair<>(
+            StatusCodes.BAD_REQUEST,
+            new SubmitWorkflowResponseFailure(
+                String.format("Workflow %s (%s) is unknown", name, version)));
+      }
+
+      @Override
+      public Pair<Integer, SubmitWorkflowResponse> unresolvedIds(TreeSet<String> inputId) {
+        return new Pair<>(
+            StatusCodes.BAD_REQUEST,
+            new SubmitWorkflowResponseFailure(
+                inputId.stream()
+                    .map(id -> String.format("Input ID %s cannot be resolved", id))
+                    .collect(Collectors.toList())));
+      }
+    };
+  }
+
+  private void streamProvenance(HttpServerExchange exchange, AnalysisProvenanceRequest request) {
+    final int pageSize = request.getPageSize() > 0 ? request.getPageSize() : PROVENANCE_PAGE_SIZE;
+    final OffsetDateTime endTime = OffsetDateTime.now();
+    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, CONTENT_TYPE_NDJSON);
+    exchange.setStatusCode(StatusCodes.OK);
+    try (final JsonGenerator output = MAPPER_FACTORY.createGenerator(exchange.getOutputStream())) {
+      output.setRootValueSeparator(null);
+      ProvenancePage page;
+      do {
+        page = queryProvenancePage(request, pageSize, endTime);
+        if (page.reset()) {
+          // Tell the client to discard everything before sending any records from the new epoch
+          writeProvenanceCheckpoint(output, page.epoch(), 0, 0);
+        }
+        for (final JsonNode result : page.results()) {
+          output.writeTree(result);
+          output.writeRaw('\n');
+        }
+        writeProvenanceCheckpoint(output, page.epoch(), page.timestamp(), page.afterId());
+        output.flush();
+        request.setEpoch(page.epoch());
+        request.setTimestamp(page.timestamp());
+        request.setAfterId(page.afterId());
+      } while (page.results().size() == pageSize);
+    } catch (IOException | SQLException e) {
+      PROVENANCE_ERROR_COUNT.inc();
       internalServerErrorResponse(exchange, e);
     }
   }
 
+  /**
+   * Write a checkpoint to a provenance stream
+   *
+   * <p>The client can send the checkpoint's values back to resume the stream from this point.
+   *
+   * @param output the stream being written
+   * @param epoch the epoch of the records written so far
+   * @param timestamp the last modification time of the records written so far
+   * @param afterId the ID of the last record written
+   */
+  private static void writeProvenanceCheckpoint(
+      JsonGenerator output, long epoch, long timestamp, long afterId) throws IOException {
+    output.writeStartObject();
+    output.writeNumberField("afterId", afterId);
+    output.writeNumberField("epoch", epoch);
+    output.writeNumberField("timestamp", timestamp);
+    output.writeEndObject();
+    output.writeRaw('\n');
+  }
+
   private void unload(HttpServerExchange exchange, UnloadRequest request) {
     if (!loadCounter.tryAcquire()) {
       exchange.setStatusCode(StatusCodes.INSUFFICIENT_STORAGE);
@@ -2827,6 +3179,7 @@ public final class Main implements ServerConfig {
                 epoch = time.toEpochMilli();
                 return res;
               });
+      processor.invalidateLocalFiles();
       okJsonResponse(exchange, MAPPER.writeValueAsString(response));
     } catch (IncompleteRunsException ire) {
       try {
@@ -3001,13 +3354,9 @@ public final class Main implements ServerConfig {
                   targetWorkflowRunsAndPhases.put(record.value1(), record.value2());
                 }
                 if (request.isRecursive()) {
-                  Collection<Long> latestWorkflowRunIds = targetWorkflowRunsAndPhases.keySet();
-                  do {
-                    Map<Long, Phase> downstreamWorkflowRunIdsAndPhases =
-                        getIdsForWorkflowRunsDownstreamFrom(latestWorkflowRunIds, configuration);
-                    targetWorkflowRunsAndPhases.putAll(downstreamWorkflowRunIdsAndPhases);
-                    latestWorkflowRunIds = downstreamWorkflowRunIdsAndPhases.keySet();
-                  } while (!latestWorkflowRunIds.isEmpty());
+                  targetWorkflowRunsAndPhases.putAll(
+                      getIdsForWorkflowRunsDownstreamFrom(
+                          targetWorkflowRunsAndPhases.keySet(), configuration));
                 }
 
                 if (raiseIfAnyRunsAreIncomplete) {
@@ -3145,6 +3494,10 @@ public final class Main implements ServerConfig {
     }
   }
 
+  /**
+   * Find every workflow run that uses the output of the given workflow runs, directly or through
+   * other workflow runs
+   */
   private Map<Long, Phase> getIdsForWorkflowRunsDownstreamFrom(
       Collection<Long> workflowRunIds, Configuration configuration) {
     workflowRunIds = workflowRunIds.stream().filter(Objects::nonNull).collect(Collectors.toList());
@@ -8,11 +8,13 @@ import ca.on.oicr.gsi.vidarr.api.InFlightCountsByWorkflow;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.prometheus.client.Gauge;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 final class MaxInFlightByWorkflow implements ConsumableResource {
   private static final class MaxState {
@@ -38,8 +40,14 @@ final class MaxInFlightByWorkflow implements ConsumableResource {
               "The number of times the in-flight-per-workflow got into a bad state")
           .labelNames("workflow")
           .register();
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
   private final Map<String, MaxState> workflows = new ConcurrentHashMap<>();
 
+  @Override
+  public void addCapacityListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
   /** Get summary information for each workflow: workflowName -> (currentInFlight, maxInFlight) */
   public InFlightCountsByWorkflow getCountsByWorkflow() {
 
@@ -66,6 +74,11 @@ final class MaxInFlightByWorkflow implements ConsumableResource {
     return false;
   }
 
+  @Override
+  public boolean isTimeDependent() {
+    return false;
+  }
+
   @Override
   public void recover(
       String workflowName,
@@ -87,11 +100,14 @@ final class MaxInFlightByWorkflow implements ConsumableResource {
       final var state = workflows.get(workflowName);
       if (state == null) {
         badWorkflowStateCount.labels(workflowName).inc();
-      } else {
-        state.running.remove(vidarrId);
-        currentInFlightCount.labels(workflowName).set(state.running.size());
+        return;
+      }
+      if (!state.running.remove(vidarrId)) {
+        return;
       }
+      currentInFlightCount.labels(workflowName).set(state.running.size());
     }
+    listeners.forEach(Runnable::run);
   }
 
   @Override
@@ -125,6 +141,7 @@ final class MaxInFlightByWorkflow implements ConsumableResource {
   public void set(String workflowName, int maxInFlight) {
     maxInFlightCount.labels(workflowName).set(maxInFlight);
     workflows.computeIfAbsent(workflowName, k -> new MaxState()).maximum = maxInFlight;
+    listeners.forEach(Runnable::run);
   }
 
   @Override
@@ -0,0 +1,89 @@
+package ca.on.oicr.gsi.vidarr.server;
+
+import ca.on.oicr.gsi.vidarr.api.AnalysisOutputType;
+import ca.on.oicr.gsi.vidarr.api.VersionPolicy;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Cuts a stored provenance document down to what a request asked for
+ *
+ * <p>Stored documents include the workflow run parameters, every type of analysis, and both the
+ * complete (<code>"versions"</code>) and latest (<code>"latestVersions"</code>) external key
+ * versions, so that any combination of request options can be answered from the same document.
+ *
+ * @param policy the external key versions to include
+ * @param allowedTypes the external key version keys to include; if null or empty, all keys are
+ *     included
+ * @param includeParameters whether to include the workflow run's arguments, engine parameters, and
+ *     metadata
+ * @param includedAnalyses the types of analysis records to include
+ */
+record ProvenanceFilter(
+    VersionPolicy policy,
+    Set<String> allowedTypes,
+    boolean includeParameters,
+    Set<AnalysisOutputType> includedAnalyses) {
+
+  /**
+   * Remove anything not requested from a provenance document
+   *
+   * @param document the stored document; it will be modified
+   * @return the modified document
+   */
+  ObjectNode apply(ObjectNode document) {
+    if (!includeParameters) {
+      document.remove("arguments");
+      document.remove("engineParameters");
+      document.remove("metadata");
+    }
+    if (document.get("analysis") instanceof ArrayNode analyses) {
+      final Set<String> types =
+          includedAnalyses.stream().map(ProvenanceFilter::typeName).collect(Collectors.toSet());
+      final ArrayNode filtered = document.arrayNode();
+      for (final JsonNode analysis : analyses) {
+        if (types.contains(analysis.path("type").asText())) {
+          filtered.add(analysis);
+        }
+      }
+      if (filtered.isEmpty()) {
+        document.putNull("analysis");
+      } else {
+        document.set("analysis", filtered);
+      }
+    }
+    if (document.get("externalKeys") instanceof ArrayNode externalKeys) {
+      for (final JsonNode externalKey : externalKeys) {
+        final ObjectNode key = (ObjectNode) externalKey;
+        final JsonNode latest = key.remove("latestVersions");
+        switch (policy) {
+          case ALL -> key.set("versions", filterVersions(key.get("versions")));
+          case LATEST -> key.set("versions", filterVersions(latest));
+          default -> key.putNull("versions");
+        }
+      }
+    }
+    return document;
+  }
+
+  private static String typeName(AnalysisOutputType type) {
+    return switch (type) {
+      case FILE -> "file";
+      case URL -> "url";
+    };
+  }
+
+  private JsonNode filterVersions(JsonNode versions) {
+    if (!(versions instanceof ObjectNode versionObject)
+        || allowedTypes == null
+        || allowedTypes.isEmpty()) {
+      return versions;
+    }
+    versionObject.retain(allowedTypes);
+    // The database produces null rather than an empty object when no keys match
+    return versionObject.isEmpty() ? versionObject.nullNode() : versionObject;
+  }
+}
@@ -0,0 +1,136 @@
+package ca.on.oicr.gsi.vidarr.server;
+
+import ca.on.oicr.gsi.vidarr.core.ExecutionLanes;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restarts recovered workflow runs gradually rather than all at once
+ *
+ * <p>Workflow runs are started in the order they are added using a token bucket: up to the burst
+ * size may start immediately and then the bucket refills at the configured rate. Each start is
+ * delayed by a random jitter so that runs released together do not all contact the same workflow
+ * engine at the same instant.
+ *
+ * <p>Runs are released while recovery is still reading the database. Only a bounded number of
+ * runs can be waiting; once that limit is reached, adding more blocks until some have started.
+ */
+final class RecoveryScheduler {
+  private static final int CAPACITY = 1000;
+  private static final long TICK_MILLIS = 100;
+  private static final Gauge pending =
+      Gauge.build(
+              "vidarr_recovery_pending",
+              "The number of recovered workflow runs waiting to be restarted")
+          .register();
+  private static final Counter started =
+      Counter.build(
+              "vidarr_recovery_started",
+              "The number of recovered workflow runs that have been restarted")
+          .register();
+
+  private final int burst;
+  private boolean finished;
+  private final long jitterMillis;
+  private final ExecutionLanes lanes;
+  private long lastRefill = System.nanoTime();
+  private final Queue<Runnable> queue = new ArrayDeque<>();
+  private final double rate;
+  private boolean running;
+  private double tokens;
+  private int total;
+
+  /**
+   * Create a new scheduler
+   *
+   * @param lanes the executors to start recovered workflow runs on
+   * @param rate the number of workflow runs to start per second, once the burst is used up; if not
+   *     positive, the bucket is refilled completely every tick
+   * @param burst the maximum number of workflow runs to start at once
+   * @param jitterMillis the maximum random delay, in milliseconds, added to each start
+   */
+  RecoveryScheduler(ExecutionLanes lanes, double rate, int burst, long jitterMillis) {
+    this.lanes = lanes;
+    this.rate = rate;
+    this.burst = Math.max(1, burst);
+    this.jitterMillis = jitterMillis;
+    this.tokens = this.burst;
+  }
+
+  /**
+   * Add recovered workflow runs, waiting if too many are already queued
+   *
+   * @param tasks the actions that restart each workflow run, in the order they should start
+   */
+  synchronized void add(List<Runnable> tasks) throws InterruptedException {
+    for (final Runnable task : tasks) {
+      while (queue.size() >= CAPACITY) {
+        wait();
+      }
+      queue.add(task);
+      total++;
+      pending.inc();
+      if (!running) {
+        running = true;
+        lanes.cpu().execute(this::release);
+      }
+    }
+  }
+
+  /**
+   * Indicate that no more workflow runs will be added
+   *
+   * @return the number of workflow runs that were added
+   */
+  synchronized int finish() {
+    finished = true;
+    if (!running) {
+      reportDone();
+    }
+    return total;
+  }
+
+  private void release() {
+    synchronized (this) {
+      final long now = System.nanoTime();
+      tokens =
+          rate > 0 ? Math.min(burst, tokens + rate * (now - lastRefill) / 1e9) : burst;
+      lastRefill = now;
+      while (tokens >= 1 && !queue.isEmpty()) {
+        final Runnable task = queue.poll();
+        tokens -= 1;
+        pending.dec();
+        final long delay =
+            jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0;
+        lanes.schedule(
+            lanes.blocking(),
+            () -> {
+              started.inc();
+              task.run();
+            },
+            delay,
+            TimeUnit.MILLISECONDS);
+      }
+      notifyAll();
+      if (queue.isEmpty()) {
+        running = false;
+        if (finished) {
+          reportDone();
+        }
+        return;
+      }
+    }
+    lanes.schedule(lanes.cpu(), this::release, TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void reportDone() {
+    if (total > 0) {
+      System.err.println("All recovered workflow runs have been restarted.");
+    }
+  }
+}
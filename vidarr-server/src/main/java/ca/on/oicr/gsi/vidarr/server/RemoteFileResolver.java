@@ -0,0 +1,249 @@
+package ca.on.oicr.gsi.vidarr.server;
+
+import static ca.on.oicr.gsi.vidarr.server.Main.CLIENT;
+import static ca.on.oicr.gsi.vidarr.server.Main.MAPPER;
+
+import ca.on.oicr.gsi.prometheus.LatencyHistogram;
+import ca.on.oicr.gsi.vidarr.JsonBodyHandler;
+import ca.on.oicr.gsi.vidarr.api.ExternalMultiVersionKey;
+import ca.on.oicr.gsi.vidarr.api.ProvenanceAnalysisRecord;
+import ca.on.oicr.gsi.vidarr.core.BaseProcessor;
+import ca.on.oicr.gsi.vidarr.core.FileMetadata;
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.prometheus.client.Counter;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.stream.Stream;
+
+/**
+ * Fetches metadata for files that belong to other Vidarr instances
+ *
+ * <p>File metadata never changes once a file is provisioned out, so successful lookups are cached
+ * in a bounded, least-recently-used cache. Many files can be looked up at once: they are grouped
+ * by instance and each instance is sent batch requests in parallel. Instances that do not support
+ * batch requests are asked for each file separately, still in parallel.
+ */
+final class RemoteFileResolver {
+  private static final int CACHE_SIZE = 10_000;
+  /** The maximum number of files that can be requested from an instance at once */
+  static final int MAX_BATCH_SIZE = 1000;
+
+  private static final Counter REMOTE_CACHE_REQUESTS =
+      Counter.build(
+              "vidarr_remote_file_cache_requests",
+              "The number of remote file lookups and whether they were found in the cache")
+          .labelNames("remote", "hit")
+          .register();
+  private static final Counter REMOTE_ERROR_COUNT =
+      Counter.build(
+              "vidarr_remote_vidarr_error_count",
+              "The number of times a remote instance returned an error.")
+          .labelNames("remote")
+          .register();
+  private static final LatencyHistogram REMOTE_RESPONSE_TIME =
+      new LatencyHistogram(
+          "vidarr_remote_vidarr_response_time",
+          "The response time of a remote instance to a metadata access request",
+          "remote");
+  private static final Duration TIMEOUT = Duration.ofMinutes(1);
+
+  private static FileMetadata toMetadata(ProvenanceAnalysisRecord<ExternalMultiVersionKey> record) {
+    final List<ExternalMultiVersionKey> keys = record.getExternalKeys();
+    final String path = record.getPath();
+    return new FileMetadata() {
+      @Override
+      public Stream<ExternalMultiVersionKey> externalKeys() {
+        return keys.stream();
+      }
+
+      @Override
+      public String path() {
+        return path;
+      }
+    };
+  }
+
+  private final Map<String, FileMetadata> cache =
+      Collections.synchronizedMap(
+          new LinkedHashMap<String, FileMetadata>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileMetadata> eldest) {
+              return size() > CACHE_SIZE;
+            }
+          });
+  private final Map<String, String> otherServers;
+
+  RemoteFileResolver(Map<String, String> otherServers) {
+    this.otherServers = otherServers;
+  }
+
+  private CompletableFuture<Void> fetchBatch(String instance, String remote, List<String> hashes) {
+    final String body;
+    try {
+      body = MAPPER.writeValueAsString(hashes);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    final AutoCloseable timer = REMOTE_RESPONSE_TIME.start(remote);
+    return CLIENT
+        .sendAsync(
+            HttpRequest.newBuilder()
+                .uri(URI.create(String.format("%s/api/files", remote)))
+                .header("Content-type", "application/json")
+                .timeout(TIMEOUT)
+                .POST(BodyPublishers.ofString(body))
+                .build(),
+            new JsonBodyHandler<>(
+                MAPPER,
+                new TypeReference<List<ProvenanceAnalysisRecord<ExternalMultiVersionKey>>>() {}))
+        .whenComplete((response, throwable) -> close(timer))
+        .thenCompose(
+            response -> {
+              if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+                for (final var record : response.body().get()) {
+                  cache.put(key(instance, record.getId()), toMetadata(record));
+                }
+                return CompletableFuture.completedFuture(null);
+              }
+              if (response.statusCode() == HttpURLConnection.HTTP_NOT_FOUND
+                  || response.statusCode() == HttpURLConnection.HTTP_BAD_METHOD) {
+                // An older instance that doesn't have the batch endpoint
+                return CompletableFuture.allOf(
+                    hashes.stream()
+                        .map(hash -> fetchOne(instance, remote, hash))
+                        .toArray(CompletableFuture[]::new));
+              }
+              REMOTE_ERROR_COUNT.labels(remote).inc();
+              return CompletableFuture.completedFuture(null);
+            });
+  }
+
+  private CompletableFuture<Optional<FileMetadata>> fetchOne(
+      String instance, String remote, String hash) {
+    final AutoCloseable timer = REMOTE_RESPONSE_TIME.start(remote);
+    return CLIENT
+        .sendAsync(
+            HttpRequest.newBuilder()
+                .uri(URI.create(String.format("%s/api/file/%s", remote, hash)))
+                .timeout(TIMEOUT)
+                .GET()
+                .build(),
+            new JsonBodyHandler<>(
+                MAPPER, new TypeReference<ProvenanceAnalysisRecord<ExternalMultiVersionKey>>() {}))
+        .whenComplete((response, throwable) -> close(timer))
+        .thenApply(
+            response -> {
+              if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+                final FileMetadata metadata = toMetadata(response.body().get());
+                cache.put(key(instance, hash), metadata);
+                return Optional.of(metadata);
+              } else {
+                return Optional.empty();
+              }
+            });
+  }
+
+  private void close(AutoCloseable timer) {
+    try {
+      timer.close();
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  private String key(String instance, String hash) {
+    return instance + "/" + hash;
+  }
+
+  /**
+   * Fetch the metadata for many files, waiting until all the requests have finished
+   *
+   * @param ids the Vidarr IDs to look up; IDs that are not files on another instance are ignored
+   */
+  void prefetch(Collection<String> ids) {
+    final Map<String, Set<String>> hashesByInstance = new TreeMap<>();
+    for (final String id : ids) {
+      final Matcher match = BaseProcessor.ANALYSIS_RECORD_ID.matcher(id);
+      if (match.matches()
+          && match.group("type").equals("file")
+          && otherServers.containsKey(match.group("instance"))
+          && !cache.containsKey(key(match.group("instance"), match.group("hash")))) {
+        hashesByInstance
+            .computeIfAbsent(match.group("instance"), k -> new TreeSet<>())
+            .add(match.group("hash"));
+      }
+    }
+    final List<CompletableFuture<?>> requests = new ArrayList<>();
+    for (final var entry : hashesByInstance.entrySet()) {
+      final String remote = otherServers.get(entry.getKey());
+      final List<String> hashes = new ArrayList<>(entry.getValue());
+      for (int start = 0; start < hashes.size(); start += MAX_BATCH_SIZE) {
+        requests.add(
+            fetchBatch(
+                    entry.getKey(),
+                    remote,
+                    hashes.subList(start, Math.min(hashes.size(), start + MAX_BATCH_SIZE)))
+                .exceptionally(
+                    e -> {
+                      e.printStackTrace();
+                      REMOTE_ERROR_COUNT.labels(remote).inc();
+                      return null;
+                    }));
+      }
+    }
+    try {
+      CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new))
+          .get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      // Anything that wasn't fetched will be looked up individually later
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Get the metadata for a file on another instance
+   *
+   * @param instance the name of the other instance
+   * @param hash the file's identifier
+   * @return the metadata, if the instance is known and has the file
+   */
+  Optional<FileMetadata> resolve(String instance, String hash) {
+    final String remote = otherServers.get(instance);
+    if (remote == null) {
+      return Optional.empty();
+    }
+    final FileMetadata cached = cache.get(key(instance, hash));
+    REMOTE_CACHE_REQUESTS.labels(remote, Boolean.toString(cached != null)).inc();
+    if (cached != null) {
+      return Optional.of(cached);
+    }
+    try {
+      return fetchOne(instance, remote, hash).get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Optional.empty();
+    } catch (Exception e) {
+      e.printStackTrace();
+      REMOTE_ERROR_COUNT.labels(remote).inc();
+      return Optional.empty();
+    }
+  }
+}
@@ -6,13 +6,11 @@ import ca.on.oicr.gsi.vidarr.core.Target;
 import ca.on.oicr.gsi.vidarr.server.DatabaseBackedProcessor.SubmissionResultHandler;
 import ca.on.oicr.gsi.vidarr.server.DatabaseBackedProcessor.WorkflowInformation;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.zaxxer.hikari.HikariDataSource;
 import java.sql.SQLException;
 import java.time.OffsetDateTime;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ScheduledExecutorService;
 import org.jooq.DSLContext;
 import org.jooq.Record;
 
@@ -37,7 +35,7 @@ public interface ReprovisionStrategy {
       OffsetDateTime originalCompleted,
       SubmissionResultHandler<T> handler,
       Target target,
-      HikariDataSource dataSource,
-      ScheduledExecutorService executor,
+      WaitingResourceWriter waitingResourceWriter,
+      ConsumableResourceDispatcher dispatcher,
       DatabaseBackedProcessor processor);
 }
@@ -10,7 +10,6 @@ import ca.on.oicr.gsi.vidarr.server.DatabaseBackedProcessor.SubmissionResultHand
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.zaxxer.hikari.HikariDataSource;
 import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.Iterator;
@@ -18,7 +17,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 import org.jooq.DSLContext;
 import org.jooq.Record;
@@ -86,13 +84,13 @@ public class ReprovisionStrategyNew implements ReprovisionStrategy {
       Map<ProvenanceAnalysisRecord<ExternalId>, JsonNode> analysis,
       OffsetDateTime originalCompleted,
       SubmissionResultHandler<T> handler, Target target,
-      HikariDataSource dataSource, ScheduledExecutorService executor,
+      WaitingResourceWriter waitingResourceWriter, ConsumableResourceDispatcher dispatcher,
       DatabaseBackedProcessor processor) {
     return handler.launched(record.get(WORKFLOW_RUN.HASH_ID),
         new ConsumableResourceChecker(
             target,
-            dataSource,
-            executor,
+            waitingResourceWriter,
+            dispatcher,
             dbWorkflow.dbId(),
             processor.liveness(dbWorkflow.dbId()),
             new MaxInFlightByWorkflow(),
@@ -112,6 +110,7 @@ public class ReprovisionStrategyNew implements ReprovisionStrategy {
                 }
                 launched = true;
                 processor.inTransaction(
+                    dbWorkflow,
                     runTransaction ->
                         processor.reprovision(
                             target, definition.definition(),
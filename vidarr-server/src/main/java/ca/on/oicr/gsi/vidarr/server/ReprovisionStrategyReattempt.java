@@ -14,7 +14,6 @@ import ca.on.oicr.gsi.vidarr.server.DatabaseBackedProcessor.WorkflowInformation;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.zaxxer.hikari.HikariDataSource;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.time.OffsetDateTime;
@@ -25,7 +24,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 import org.jooq.DSLContext;
 import org.jooq.Record;
@@ -79,13 +77,13 @@ public class ReprovisionStrategyReattempt implements ReprovisionStrategy {
       Map<ProvenanceAnalysisRecord<ExternalId>, JsonNode> analysis,
       OffsetDateTime originalCompleted,
       SubmissionResultHandler<T> handler, Target target,
-      HikariDataSource dataSource, ScheduledExecutorService executor,
+      WaitingResourceWriter waitingResourceWriter, ConsumableResourceDispatcher dispatcher,
       DatabaseBackedProcessor processor) {
     return handler.reinitialise(record.get(WORKFLOW_RUN.HASH_ID),
         new ConsumableResourceChecker(
             target,
-            dataSource,
-            executor,
+            waitingResourceWriter,
+            dispatcher,
             dbWorkflow.dbId(),
             processor.liveness(dbWorkflow.dbId()),
             new MaxInFlightByWorkflow(),
@@ -105,6 +103,7 @@ public class ReprovisionStrategyReattempt implements ReprovisionStrategy {
                 }
                 launched = true;
                 processor.inTransaction(
+                    dbWorkflow,
                     runTransaction ->
                         processor.reprovision(
                             target, definition.definition(),
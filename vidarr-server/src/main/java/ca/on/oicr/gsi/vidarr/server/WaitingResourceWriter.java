@@ -0,0 +1,133 @@
+package ca.on.oicr.gsi.vidarr.server;
+
+import static ca.on.oicr.gsi.vidarr.server.jooq.Tables.ACTIVE_WORKFLOW_RUN;
+
+import ca.on.oicr.gsi.vidarr.core.ExecutionLanes;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.zaxxer.hikari.HikariDataSource;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jooq.DSLContext;
+import org.jooq.Record3;
+import org.jooq.Row3;
+import org.jooq.SQLDialect;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+
+/**
+ * Collects the blocking resource and tracing information for workflow runs that are waiting for
+ * consumable resources and writes them to the database in batches
+ *
+ * <p>Only the most recent value for each workflow run is kept, so a workflow run that is evaluated
+ * several times between flushes is only written once. Any pending updates are also written when
+ * the server shuts down.
+ */
+final class WaitingResourceWriter {
+  private record Update(String waitingResource, JsonNode tracing) {}
+
+  private static final long FLUSH_PERIOD = 5;
+  private static final int ROWS_PER_STATEMENT = 1000;
+  private static final Histogram flushTime =
+      Histogram.build(
+              "vidarr_waiting_resource_flush_time",
+              "The time, in seconds, to write a batch of waiting resource information")
+          .register();
+  private static final Counter rowsSkipped =
+      Counter.build(
+              "vidarr_waiting_resource_rows_skipped",
+              "The number of waiting resource updates skipped because nothing changed")
+          .register();
+  private static final Counter rowsWritten =
+      Counter.build(
+              "vidarr_waiting_resource_rows_written",
+              "The number of waiting resource updates written to the database")
+          .register();
+
+  private final HikariDataSource dataSource;
+  private Map<Long, Update> pending = new HashMap<>();
+
+  WaitingResourceWriter(ExecutionLanes lanes, HikariDataSource dataSource) {
+    this.dataSource = dataSource;
+    lanes.repeat(lanes.blocking(), this::flush, FLUSH_PERIOD, TimeUnit.SECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "waiting-resource-flush"));
+  }
+
+  /** Write all pending updates to the database */
+  void flush() {
+    final Map<Long, Update> batch;
+    synchronized (this) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = pending;
+      pending = new HashMap<>();
+    }
+    final List<Row3<Long, String, JsonNode>> rows = new ArrayList<>();
+    for (final var entry : batch.entrySet()) {
+      rows.add(
+          DSL.row(
+              DSL.val(entry.getKey(), ACTIVE_WORKFLOW_RUN.ID.getDataType()),
+              DSL.val(
+                  entry.getValue().waitingResource(),
+                  ACTIVE_WORKFLOW_RUN.WAITING_RESOURCE.getDataType()),
+              DSL.val(entry.getValue().tracing(), ACTIVE_WORKFLOW_RUN.TRACING.getDataType())));
+    }
+    try (final var timer = flushTime.startTimer();
+        final Connection connection = dataSource.getConnection()) {
+      DSL.using(connection, SQLDialect.POSTGRES)
+          .transaction(
+              configuration -> {
+                final DSLContext dsl = DSL.using(configuration);
+                // Every value is a bind parameter, so large batches are split to stay well under
+                // the database's parameter limit
+                for (int start = 0; start < rows.size(); start += ROWS_PER_STATEMENT) {
+                  @SuppressWarnings("unchecked")
+                  final Table<Record3<Long, String, JsonNode>> updates =
+                      DSL.values(
+                              rows.subList(start, Math.min(rows.size(), start + ROWS_PER_STATEMENT))
+                                  .toArray(Row3[]::new))
+                          .as("u", "id", "waiting_resource", "tracing");
+                  dsl.update(ACTIVE_WORKFLOW_RUN)
+                      .set(
+                          ACTIVE_WORKFLOW_RUN.WAITING_RESOURCE,
+                          updates.field("waiting_resource", String.class))
+                      .set(
+                          ACTIVE_WORKFLOW_RUN.TRACING,
+                          updates.field("tracing", ACTIVE_WORKFLOW_RUN.TRACING.getDataType()))
+                      .from(updates)
+                      .where(ACTIVE_WORKFLOW_RUN.ID.eq(updates.field("id", Long.class)))
+                      .execute();
+                }
+              });
+      rowsWritten.inc(batch.size());
+    } catch (Exception e) {
+      e.printStackTrace();
+      // Put the failed updates back unless a newer value has arrived in the meantime
+      synchronized (this) {
+        batch.forEach(pending::putIfAbsent);
+      }
+    }
+  }
+
+  /** Record that a workflow run was re-evaluated, but its information has not changed */
+  void skip() {
+    rowsSkipped.inc();
+  }
+
+  /**
+   * Queue the blocking resource and tracing information for a workflow run
+   *
+   * @param dbId the database ID of the workflow run
+   * @param waitingResource the reason the workflow run is blocked or null if it is not blocked
+   * @param tracing the tracing information; this must not be modified afterwards
+   */
+  synchronized void write(long dbId, String waitingResource, JsonNode tracing) {
+    pending.put(dbId, new Update(waitingResource, tracing));
+  }
+}
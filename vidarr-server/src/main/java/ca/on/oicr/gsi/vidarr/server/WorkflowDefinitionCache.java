@@ -0,0 +1,109 @@
+package ca.on.oicr.gsi.vidarr.server;
+
+import ca.on.oicr.gsi.Pair;
+import ca.on.oicr.gsi.vidarr.WorkflowDefinition;
+import ca.on.oicr.gsi.vidarr.server.DatabaseBackedProcessor.WorkflowInformation;
+import io.prometheus.client.Counter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps workflow versions that have been read from the database, so they don't have to be read and
+ * parsed again for every submission and recovered workflow run
+ *
+ * <p>Workflow versions can be looked up by hash ID or by name and version. Both are bounded and
+ * discard the least recently used entries. Everything is discarded when a workflow is changed;
+ * values fetched while that was happening are not kept, since they may be out of date.
+ */
+final class WorkflowDefinitionCache {
+  private static final int CACHE_SIZE = 1000;
+  private static final Counter requests =
+      Counter.build(
+              "vidarr_workflow_definition_cache_requests",
+              "The number of workflow versions looked up and whether they were found in the cache")
+          .labelNames("key", "hit")
+          .register();
+
+  private static <K, V> Map<K, V> create() {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > CACHE_SIZE;
+      }
+    };
+  }
+
+  private final Map<String, WorkflowDefinition> byHash = create();
+  private final Map<Pair<String, String>, WorkflowInformation> byName = create();
+  private long generation;
+
+  /**
+   * Get a workflow version by its hash ID
+   *
+   * @param hash the hash ID of the workflow version
+   * @return the definition, if cached
+   */
+  synchronized Optional<WorkflowDefinition> definition(String hash) {
+    final WorkflowDefinition definition = byHash.get(hash);
+    requests.labels("hash", Boolean.toString(definition != null)).inc();
+    return Optional.ofNullable(definition);
+  }
+
+  /**
+   * The current generation, which must be read before fetching a value from the database
+   *
+   * @return the generation
+   */
+  synchronized long generation() {
+    return generation;
+  }
+
+  /** Discard everything, after a workflow has been changed */
+  synchronized void invalidate() {
+    generation++;
+    byHash.clear();
+    byName.clear();
+  }
+
+  /**
+   * Store a workflow version, by hash ID
+   *
+   * @param generation the generation from before the definition was fetched
+   * @param definition the definition
+   */
+  synchronized void put(long generation, WorkflowDefinition definition) {
+    if (this.generation == generation) {
+      byHash.put(definition.id(), definition);
+    }
+  }
+
+  /**
+   * Store a workflow version, by name and version
+   *
+   * @param generation the generation from before the workflow was fetched
+   * @param name the name of the workflow
+   * @param version the version of the workflow
+   * @param workflow the workflow version and its labels
+   */
+  synchronized void put(
+      long generation, String name, String version, WorkflowInformation workflow) {
+    if (this.generation == generation) {
+      byName.put(new Pair<>(name, version), workflow);
+      byHash.put(workflow.definition().id(), workflow.definition());
+    }
+  }
+
+  /**
+   * Get a workflow version by its name and version
+   *
+   * @param name the name of the workflow
+   * @param version the version of the workflow
+   * @return the workflow version and its labels, if cached
+   */
+  synchronized Optional<WorkflowInformation> workflow(String name, String version) {
+    final WorkflowInformation workflow = byName.get(new Pair<>(name, version));
+    requests.labels("name", Boolean.toString(workflow != null)).inc();
+    return Optional.ofNullable(workflow);
+  }
+}
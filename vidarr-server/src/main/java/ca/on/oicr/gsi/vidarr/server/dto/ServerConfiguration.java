@@ -25,6 +25,9 @@ public final class ServerConfiguration {
   private Map<String, String> otherServers;
   private Map<String, OutputProvisioner<?, ?>> outputProvisioners;
   private int port = 8080;
+  private int recoveryBurst = 20;
+  private long recoveryJitter = 1000;
+  private double recoveryRate = 10;
   private Map<String, RuntimeProvisioner<?>> runtimeProvisioners;
   private Map<String, TargetConfiguration> targets;
   private String unloadDirectory = ".";
@@ -83,6 +86,18 @@ public final class ServerConfiguration {
     return port;
   }
 
+  public int getRecoveryBurst() {
+    return recoveryBurst;
+  }
+
+  public long getRecoveryJitter() {
+    return recoveryJitter;
+  }
+
+  public double getRecoveryRate() {
+    return recoveryRate;
+  }
+
   public Map<String, RuntimeProvisioner<?>> getRuntimeProvisioners() {
     return runtimeProvisioners;
   }
@@ -155,6 +170,18 @@ public final class ServerConfiguration {
     this.port = port;
   }
 
+  public void setRecoveryBurst(int recoveryBurst) {
+    this.recoveryBurst = recoveryBurst;
+  }
+
+  public void setRecoveryJitter(long recoveryJitter) {
+    this.recoveryJitter = recoveryJitter;
+  }
+
+  public void setRecoveryRate(double recoveryRate) {
+    this.recoveryRate = recoveryRate;
+  }
+
   public void setRuntimeProvisioners(Map<String, RuntimeProvisioner<?>> runtimeProvisioners) {
     this.runtimeProvisioners = runtimeProvisioners;
   }
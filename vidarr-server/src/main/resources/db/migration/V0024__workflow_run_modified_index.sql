@@ -0,0 +1 @@
+CREATE INDEX workflow_run_modified_id ON workflow_run(modified, id) WHERE completed IS NOT NULL;
@@ -0,0 +1,87 @@
+CREATE TABLE workflow_run_provenance (
+  workflow_run_id bigint PRIMARY KEY REFERENCES workflow_run(id) ON DELETE CASCADE,
+  generation bigint NOT NULL DEFAULT 0,
+  built_generation bigint,
+  document jsonb
+);
+
+-- A stored document is only valid while built_generation matches generation. Anything that changes
+-- a completed workflow run's provenance bumps the generation rather than deleting the document, so
+-- a document built from an older snapshot can never be mistaken for a current one.
+CREATE FUNCTION workflow_run_provenance_invalidate(run_id bigint) RETURNS void AS $$
+  INSERT INTO workflow_run_provenance(workflow_run_id, generation)
+    SELECT id, 1 FROM workflow_run WHERE id = run_id AND completed IS NOT NULL
+  ON CONFLICT (workflow_run_id) DO UPDATE SET generation = workflow_run_provenance.generation + 1;
+$$ LANGUAGE sql;
+
+CREATE FUNCTION workflow_run_provenance_workflow_run() RETURNS trigger AS $$
+  BEGIN
+    PERFORM workflow_run_provenance_invalidate(NEW.id);
+    RETURN NULL;
+  END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER workflow_run_provenance AFTER UPDATE ON workflow_run FOR EACH ROW
+  WHEN (OLD.arguments IS DISTINCT FROM NEW.arguments
+    OR OLD.completed IS DISTINCT FROM NEW.completed
+    OR OLD.created IS DISTINCT FROM NEW.created
+    OR OLD.engine_parameters IS DISTINCT FROM NEW.engine_parameters
+    OR OLD.hash_id IS DISTINCT FROM NEW.hash_id
+    OR OLD.input_file_ids IS DISTINCT FROM NEW.input_file_ids
+    OR OLD.labels IS DISTINCT FROM NEW.labels
+    OR OLD.metadata IS DISTINCT FROM NEW.metadata
+    OR OLD.started IS DISTINCT FROM NEW.started
+    OR OLD.workflow_version_id IS DISTINCT FROM NEW.workflow_version_id)
+  EXECUTE FUNCTION workflow_run_provenance_workflow_run();
+
+CREATE FUNCTION workflow_run_provenance_child() RETURNS trigger AS $$
+  BEGIN
+    IF TG_OP <> 'INSERT' THEN
+      PERFORM workflow_run_provenance_invalidate(OLD.workflow_run_id);
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+      PERFORM workflow_run_provenance_invalidate(NEW.workflow_run_id);
+    END IF;
+    RETURN NULL;
+  END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER analysis_provenance AFTER INSERT OR UPDATE OR DELETE ON analysis
+  FOR EACH ROW EXECUTE FUNCTION workflow_run_provenance_child();
+
+CREATE TRIGGER external_id_provenance AFTER INSERT OR UPDATE OR DELETE ON external_id
+  FOR EACH ROW EXECUTE FUNCTION workflow_run_provenance_child();
+
+CREATE FUNCTION workflow_run_provenance_analysis_external_id() RETURNS trigger AS $$
+  BEGIN
+    IF TG_OP <> 'INSERT' THEN
+      PERFORM workflow_run_provenance_invalidate(workflow_run_id)
+        FROM analysis WHERE id = OLD.analysis_id;
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+      PERFORM workflow_run_provenance_invalidate(workflow_run_id)
+        FROM analysis WHERE id = NEW.analysis_id;
+    END IF;
+    RETURN NULL;
+  END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER analysis_external_id_provenance AFTER INSERT OR UPDATE OR DELETE ON analysis_external_id
+  FOR EACH ROW EXECUTE FUNCTION workflow_run_provenance_analysis_external_id();
+
+CREATE FUNCTION workflow_run_provenance_external_id_version() RETURNS trigger AS $$
+  BEGIN
+    IF TG_OP <> 'INSERT' THEN
+      PERFORM workflow_run_provenance_invalidate(workflow_run_id)
+        FROM external_id WHERE id = OLD.external_id_id;
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+      PERFORM workflow_run_provenance_invalidate(workflow_run_id)
+        FROM external_id WHERE id = NEW.external_id_id;
+    END IF;
+    RETURN NULL;
+  END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER external_id_version_provenance AFTER INSERT OR UPDATE OR DELETE ON external_id_version
+  FOR EACH ROW EXECUTE FUNCTION workflow_run_provenance_external_id_version();
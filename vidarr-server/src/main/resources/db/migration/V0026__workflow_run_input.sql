@@ -0,0 +1,49 @@
+CREATE TABLE workflow_run_input (
+  analysis_hash character varying NOT NULL,
+  workflow_run_id bigint NOT NULL REFERENCES workflow_run(id) ON DELETE CASCADE,
+  PRIMARY KEY (analysis_hash, workflow_run_id)
+);
+CREATE INDEX workflow_run_input_workflow_run ON workflow_run_input(workflow_run_id);
+
+INSERT INTO workflow_run_input(analysis_hash, workflow_run_id)
+  SELECT DISTINCT SPLIT_PART(UNNEST(input_file_ids), '/', 3)::VARCHAR, id FROM workflow_run;
+
+-- Every code path that creates a workflow run (submission, import, and load) goes through these
+-- triggers, so the edges cannot drift from input_file_ids
+CREATE FUNCTION workflow_run_input_update() RETURNS trigger AS $$
+  BEGIN
+    IF TG_OP = 'UPDATE' THEN
+      DELETE FROM workflow_run_input WHERE workflow_run_id = NEW.id;
+    END IF;
+    INSERT INTO workflow_run_input(analysis_hash, workflow_run_id)
+      SELECT DISTINCT SPLIT_PART(UNNEST(NEW.input_file_ids), '/', 3)::VARCHAR, NEW.id;
+    RETURN NULL;
+  END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER workflow_run_input_insert AFTER INSERT ON workflow_run
+  FOR EACH ROW EXECUTE FUNCTION workflow_run_input_update();
+
+CREATE TRIGGER workflow_run_input_update AFTER UPDATE ON workflow_run FOR EACH ROW
+  WHEN (OLD.input_file_ids IS DISTINCT FROM NEW.input_file_ids)
+  EXECUTE FUNCTION workflow_run_input_update();
+
+DROP FUNCTION get_ids_for_downstream_workflow_runs(bigint[]);
+CREATE FUNCTION get_ids_for_downstream_workflow_runs(wr_ids BIGINT[]) RETURNS table (wfr_id bigint, engine_phase int) AS $$
+BEGIN
+RETURN QUERY
+WITH RECURSIVE downstream(id) AS (
+    SELECT wri.workflow_run_id
+    FROM analysis a
+        JOIN workflow_run_input wri ON wri.analysis_hash = a.hash_id
+    WHERE a.workflow_run_id = ANY(wr_ids)
+  UNION
+    SELECT wri.workflow_run_id
+    FROM downstream d
+        JOIN analysis a ON a.workflow_run_id = d.id
+        JOIN workflow_run_input wri ON wri.analysis_hash = a.hash_id
+)
+SELECT d.id, awr.engine_phase FROM downstream d
+    LEFT JOIN active_workflow_run awr ON d.id = awr.id;
+END;
+$$ LANGUAGE plpgsql;
@@ -5,8 +5,14 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import ca.on.oicr.gsi.vidarr.InputProvisionFormat;
+import ca.on.oicr.gsi.vidarr.api.ExternalId;
+import ca.on.oicr.gsi.vidarr.core.LocalOutputProvisioner;
+import ca.on.oicr.gsi.vidarr.core.NoOpWorkflowEngine;
 import ca.on.oicr.gsi.vidarr.core.Phase;
+import ca.on.oicr.gsi.vidarr.core.RawInputProvisioner;
 import ca.on.oicr.gsi.vidarr.server.dto.ServerConfiguration;
+import ca.on.oicr.gsi.vidarr.server.dto.TargetConfiguration;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -31,6 +37,7 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +45,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.flywaydb.core.Flyway;
@@ -72,6 +80,18 @@ public class MainIntegrationTest {
   public static void setup() throws SQLException {
     TimeZone.setDefault(TimeZone.getTimeZone("America/Toronto"));
     config = DatabaseBackedTestConfiguration.getTestServerConfig(pg, unloadDirectory, 8999);
+    // A target that can accept submissions without running anything
+    ((RawInputProvisioner) config.getInputProvisioners().get("raw"))
+        .setFormats(EnumSet.allOf(InputProvisionFormat.class));
+    config.getWorkflowEngines().put("noop", new NoOpWorkflowEngine());
+    config.getOutputProvisioners().put("local", new LocalOutputProvisioner());
+    TargetConfiguration noopTarget = new TargetConfiguration();
+    noopTarget.setConsumableResources(List.of());
+    noopTarget.setInputProvisioners(List.of("raw"));
+    noopTarget.setOutputProvisioners(List.of("local"));
+    noopTarget.setRuntimeProvisioners(List.of());
+    noopTarget.setWorkflowEngine("noop");
+    config.getTargets().put("noop", noopTarget);
     main = new Main(config);
     main.startServer(main);
     RestAssured.baseURI = config.getUrl();
@@ -773,6 +793,30 @@ public class MainIntegrationTest {
     assertEquals(given, foundFile);
   }
 
+  @Test
+  public void whenGetFilesInBulk_thenOnlyKnownFilesAreReturned() throws JsonProcessingException {
+    ArrayNode foundFiles =
+        given()
+            .contentType(ContentType.JSON)
+            .body(
+                MAPPER.writeValueAsString(
+                    List.of(
+                        "916df707b105ddd88d8979e41208f2507a6d0c8d3ef57677750efa7857c4f6b2",
+                        "abcdefedcbabcdefedcba")))
+            .when()
+            .post("/api/files")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .and()
+            .extract()
+            .body()
+            .as(ArrayNode.class);
+
+    assertEquals(1, foundFiles.size());
+    assertEquals(getAnalysisFile(), foundFiles.get(0));
+  }
+
   @Test
   public void whenUnknownFileIsRequested_thenNoFileIsReturned() {
     get("/api/file/{hash}", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa")
@@ -1064,6 +1108,105 @@ public class MainIntegrationTest {
             .noneMatch(r -> targetWorkflow.equals(r.get("workflowName").asText())));
   }
 
+  @Test
+  public void whenGetProvenanceInPages_thenAllRecordsAreReturned() {
+    ObjectNode requestBody =
+        buildProvenanceRequestBody("NONE", Instant.ofEpochMilli(0), Instant.ofEpochMilli(0));
+    Set<String> allIds =
+        given()
+            .contentType(ContentType.JSON)
+            .body(requestBody)
+            .when()
+            .post("/api/provenance")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .and()
+            .extract()
+            .body()
+            .as(ProvenanceResponse.class)
+            .getResults()
+            .stream()
+            .map(r -> r.get("id").asText())
+            .collect(Collectors.toSet());
+
+    requestBody.put("pageSize", 2);
+    Set<String> pagedIds = new HashSet<>();
+    List<Map<String, Object>> results;
+    do {
+      JsonPath page =
+          given()
+              .contentType(ContentType.JSON)
+              .body(requestBody)
+              .when()
+              .post("/api/provenance")
+              .then()
+              .assertThat()
+              .statusCode(200)
+              .and()
+              .extract()
+              .jsonPath();
+      results = page.getList("results");
+      assertTrue(results.size() <= 2);
+      for (Map<String, Object> r : results) {
+        assertTrue(pagedIds.add((String) r.get("id")));
+      }
+      requestBody.put("afterId", page.getLong("afterId"));
+      requestBody.put("epoch", page.getLong("epoch"));
+      requestBody.put("timestamp", page.getLong("timestamp"));
+    } while (results.size() == 2);
+    assertEquals(allIds, pagedIds);
+  }
+
+  @Test
+  public void whenGetProvenanceAsNdjson_thenAllRecordsAndCheckpointsAreReturned()
+      throws JsonProcessingException {
+    ObjectNode requestBody =
+        buildProvenanceRequestBody("NONE", Instant.ofEpochMilli(0), Instant.ofEpochMilli(0));
+    int allRecordsSize =
+        given()
+            .contentType(ContentType.JSON)
+            .body(requestBody)
+            .when()
+            .post("/api/provenance")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .and()
+            .extract()
+            .body()
+            .as(ProvenanceResponse.class)
+            .getResults()
+            .size();
+
+    requestBody.put("pageSize", 2);
+    String body =
+        given()
+            .contentType(ContentType.JSON)
+            .accept("application/x-ndjson")
+            .body(requestBody)
+            .when()
+            .post("/api/provenance")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .and()
+            .contentType("application/x-ndjson")
+            .extract()
+            .asString();
+    int records = 0;
+    JsonNode last = null;
+    for (String line : body.split("\n")) {
+      last = MAPPER.readTree(line);
+      if (last.has("id")) {
+        records++;
+      }
+    }
+    assertEquals(allRecordsSize, records);
+    assertNotNull(last);
+    assertTrue(last.has("epoch") && last.has("timestamp") && last.has("afterId"));
+  }
+
   @Test
   public void whenGetWorkflowRun_thenReturnWorkflowRun() {
     get("/api/run/{hash}", "df7df7df7df7df7df7df7df7df7df70df7df7df7df7df7df7df7df7df7df7df7")
@@ -1703,6 +1846,191 @@ public class MainIntegrationTest {
         .body(equalTo("0")); // 0 records were updated
   }
 
+  @Test
+  public void whenSubmitBatchWithInvalidRequest_thenOtherRunsAreLaunched() {
+    addBatchWorkflow();
+    ArrayNode batch = MAPPER.createArrayNode();
+    batch.add(batchSubmission("LIB0001", 1));
+    ObjectNode invalid = batchSubmission("LIB0002", 2);
+    ((ObjectNode) invalid.get("arguments")).put("value", "not a number");
+    batch.add(invalid);
+    batch.add(batchSubmission("LIB0003", 3));
+
+    given()
+        .contentType(ContentType.JSON)
+        .body(batch)
+        .when()
+        .post("/api/submit-batch")
+        .then()
+        .assertThat()
+        .statusCode(207)
+        .body("result", contains("success", "failure", "success"))
+        .body("[0].id", equalTo(batchRunHash("LIB0001")))
+        .body("[2].id", equalTo(batchRunHash("LIB0003")));
+
+    get("/api/status/{hash}", batchRunHash("LIB0001")).then().assertThat().statusCode(200);
+    get("/api/status/{hash}", batchRunHash("LIB0002")).then().assertThat().statusCode(404);
+    get("/api/status/{hash}", batchRunHash("LIB0003")).then().assertThat().statusCode(200);
+  }
+
+  @Test
+  public void whenSubmitBatchRequestFailsInDatabase_thenOnlyThatRequestIsRolledBack() {
+    addBatchWorkflow();
+    ArrayNode batch = MAPPER.createArrayNode();
+    batch.add(batchSubmission("LIB0001", 1));
+    // A null version passes validation, but can't be written after the workflow run has been
+    // inserted, so the savepoint for this request has to be rolled back
+    ObjectNode broken = batchSubmission("LIB0002", 2);
+    ((ObjectNode) broken.get("externalKeys").get(0).get("versions")).putNull("test-version");
+    batch.add(broken);
+    batch.add(batchSubmission("LIB0003", 3));
+
+    given()
+        .contentType(ContentType.JSON)
+        .body(batch)
+        .when()
+        .post("/api/submit-batch")
+        .then()
+        .assertThat()
+        .statusCode(207)
+        .body("result", contains("success", "failure", "success"));
+
+    get("/api/status/{hash}", batchRunHash("LIB0001")).then().assertThat().statusCode(200);
+    get("/api/status/{hash}", batchRunHash("LIB0002")).then().assertThat().statusCode(404);
+    get("/api/status/{hash}", batchRunHash("LIB0003")).then().assertThat().statusCode(200);
+  }
+
+  @Test
+  public void whenSubmitBatchWithDuplicateRequests_thenOneRunIsLaunched() {
+    addBatchWorkflow();
+    ArrayNode batch = MAPPER.createArrayNode();
+    batch.add(batchSubmission("LIB0001", 1));
+    batch.add(batchSubmission("LIB0001", 1));
+
+    given()
+        .contentType(ContentType.JSON)
+        .body(batch)
+        .when()
+        .post("/api/submit-batch")
+        .then()
+        .assertThat()
+        .statusCode(200)
+        .body("result", contains("success", "success"))
+        .body("id", contains(batchRunHash("LIB0001"), batchRunHash("LIB0001")));
+  }
+
+  @Test
+  public void whenResubmitBatch_thenExistingRunsAreMatched() {
+    addBatchWorkflow();
+    ArrayNode batch = MAPPER.createArrayNode();
+    batch.add(batchSubmission("LIB0001", 1));
+    batch.add(batchSubmission("LIB0002", 2));
+
+    List<String> ids =
+        given()
+            .contentType(ContentType.JSON)
+            .body(batch)
+            .when()
+            .post("/api/submit-batch")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .extract()
+            .jsonPath()
+            .getList("id", String.class);
+
+    given()
+        .contentType(ContentType.JSON)
+        .body(batch)
+        .when()
+        .post("/api/submit-batch")
+        .then()
+        .assertThat()
+        .statusCode(200)
+        .body("result", contains("success", "success"))
+        .body("id", equalTo(ids));
+  }
+
+  @Test
+  public void whenSubmitBatchIsTooLarge_thenBatchIsRejected() {
+    ArrayNode batch = MAPPER.createArrayNode();
+    for (int i = 0; i <= 500; i++) {
+      batch.add(batchSubmission("LIB" + i, i));
+    }
+
+    given()
+        .contentType(ContentType.JSON)
+        .body(batch)
+        .when()
+        .post("/api/submit-batch")
+        .then()
+        .assertThat()
+        .statusCode(400);
+  }
+
+  private void addBatchWorkflow() {
+    given()
+        .contentType(ContentType.JSON)
+        .body(MAPPER.createObjectNode())
+        .when()
+        .post("/api/workflow/{name}", "batch_test")
+        .then()
+        .assertThat()
+        .statusCode(200);
+
+    ObjectNode body = MAPPER.createObjectNode();
+    body.put("language", "UNIX_SHELL");
+    body.putObject("outputs").put("output", "files");
+    ObjectNode parameters = body.putObject("parameters");
+    parameters.put("input", "file");
+    parameters.put("value", "integer");
+    body.put("workflow", "#!/bin/sh echo 'batch'");
+    given()
+        .contentType(ContentType.JSON)
+        .body(body)
+        .when()
+        .post("/api/workflow/{name}/{version}", "batch_test", "1.0")
+        .then()
+        .assertThat()
+        .statusCode(201);
+  }
+
+  private static ObjectNode batchSubmission(String externalId, int value) {
+    ObjectNode request = MAPPER.createObjectNode();
+    ObjectNode arguments = request.putObject("arguments");
+    ObjectNode input = arguments.putObject("input");
+    input.put("type", "EXTERNAL");
+    ObjectNode inputContents = input.putObject("contents");
+    inputContents.put("configuration", "/data/" + externalId);
+    ObjectNode inputId = inputContents.putArray("externalIds").addObject();
+    inputId.put("provider", "test");
+    inputId.put("id", externalId);
+    arguments.put("value", value);
+    request.putObject("consumableResources");
+    ObjectNode externalKey = request.putArray("externalKeys").addObject();
+    externalKey.put("provider", "test");
+    externalKey.put("id", externalId);
+    externalKey.putObject("versions").put("test-version", "1");
+    request.putObject("labels");
+    ObjectNode output = request.putObject("metadata").putObject("output");
+    output.put("type", "ALL");
+    output.putArray("contents").addObject().put("outputDirectory", "/tmp");
+    request.put("mode", "RUN");
+    request.put("target", "noop");
+    request.put("workflow", "batch_test");
+    request.put("workflowVersion", "1.0");
+    return request;
+  }
+
+  private static String batchRunHash(String externalId) {
+    return DatabaseBackedProcessor.computeWorkflowRunHashId(
+        "batch_test",
+        MAPPER.createObjectNode(),
+        List.of(),
+        new TreeSet<>(),
+        List.of(new ExternalId("test", externalId)));
+  }
+
   private ObjectNode getAnalysisFile() {
     ObjectNode on = MAPPER.createObjectNode();
     on.put("run", "2f52b25df0a20cf41b0476b9114ad40a7d8d2edbddf0bed7d2d1b01d3f2d2b56");